@@ -75,6 +75,8 @@ dependencies {
     implementation(libs.firebase.firestore)
     implementation(libs.firebase.auth)
     testImplementation(libs.junit)
+    //Local HTTP server used to inject API faults in unit tests (matches Retrofit's OkHttp).
+    testImplementation ("com.squareup.okhttp3:mockwebserver:3.14.9")
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
@@ -0,0 +1,106 @@
+package com.lujsom.booknest.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.lujsom.booknest.models.Book;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks the TTLs and the eviction of {@link QueryResultStore}, on an in-memory database with a fake clock.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryResultStoreTest {
+
+    private long now = TimeUnit.DAYS.toMillis(100);
+    private QueryResultStore store;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        store = new QueryResultStore(context, null, 2, () -> now);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void categoryResults_stayFreshLongerThanTypedSearches() throws InterruptedException {
+        store.put("bestsellers", QueryResultStore.QueryClass.CATEGORY, books("qrs-cat"));
+        store.put("dune", QueryResultStore.QueryClass.FREE_TEXT, books("qrs-text"));
+
+        now += TimeUnit.MINUTES.toMillis(31);
+
+        assertFalse(get("bestsellers").isStale());
+        assertTrue(get("dune").isStale());
+    }
+
+    @Test
+    public void resultsOlderThanTheMaxAge_areNotShown() throws InterruptedException {
+        store.put("bestsellers", QueryResultStore.QueryClass.CATEGORY, books("qrs-old"));
+
+        now += QueryResultStore.MAX_AGE_MS + 1;
+
+        assertNull(get("bestsellers"));
+    }
+
+    @Test
+    public void leastRecentlyUsedQuery_isDropped() throws InterruptedException {
+        store.put("a", QueryResultStore.QueryClass.FREE_TEXT, books("qrs-a"));
+        now++;
+        store.put("b", QueryResultStore.QueryClass.FREE_TEXT, books("qrs-b"));
+        now++;
+        assertNotNull(get("a"));
+        now++;
+
+        store.put("c", QueryResultStore.QueryClass.FREE_TEXT, books("qrs-c"));
+
+        assertNotNull(get("a"));
+        assertNull(get("b"));
+        assertNotNull(get("c"));
+    }
+
+    @Test
+    public void storedBooks_readBackWithTheSameContent() throws InterruptedException {
+        Book book = Book.restore("qrs-restore", "Title", null, "N/A", null, "N/A", null, null, null, null, null);
+        store.put("restore", QueryResultStore.QueryClass.FREE_TEXT, Collections.singletonList(book));
+
+        QueryResultStore.Entry entry = get("restore");
+
+        assertEquals(1, entry.getBooks().size());
+        assertTrue(book.hasSameContent(entry.getBooks().get(0)));
+        assertEquals(QueryResultStore.contentHash(Collections.singletonList(book)), entry.getContentHash());
+    }
+
+    private QueryResultStore.Entry get(String query) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<QueryResultStore.Entry> result = new AtomicReference<>();
+        store.get(query, entry -> {
+            result.set(entry);
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    private static List<Book> books(String id) {
+        return Collections.singletonList(Book.restore(id, "Title " + id, "Author", "2020", "Fiction", "4.0",
+                "Description", null, null, null, null));
+    }
+}
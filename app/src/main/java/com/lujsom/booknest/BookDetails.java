@@ -1,33 +1,31 @@
 package com.lujsom.booknest;
 
 import android.annotation.SuppressLint;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.widget.TextViewCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import com.lujsom.booknest.adapters.BookAdapter;
-import com.lujsom.booknest.api.BookApiService;
+import com.lujsom.booknest.api.VolumeRepository;
 import com.lujsom.booknest.models.Book;
-import com.lujsom.booknest.models.BookResponse;
-import com.lujsom.booknest.utils.FirestoreHelper;
-import java.util.ArrayList;
-import java.util.List;
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
+import com.lujsom.booknest.models.BookRegistry;
+import com.lujsom.booknest.utils.DetailsPrefetcher;
+import com.lujsom.booknest.utils.ListWriteQueue;
+import com.lujsom.booknest.utils.TextPrecomputer;
+import com.lujsom.booknest.utils.UserSession;
+import com.lujsom.booknest.utils.ViewHolderPrewarmer;
 
 
 /**
@@ -39,12 +37,16 @@ public class BookDetails extends AppCompatActivity {
 
     private Button buttonFavorite, buttonReadingList, buttonAddToCart;
     private BookAdapter bookAdapter;
-    private final List<Book> similarBooksList = new ArrayList<>();
     private String title, imageUrl, googleBooksUrl, bookId;
-    private FirestoreHelper firestoreHelper;
-    private boolean isFavorite = false, isInCart = false;
+    private boolean isFavorite = false, isInCart = false, isInReadingList = false;
+    private final ListWriteQueue listWriteQueue = UserSession.get().getListWriteQueue(); // Saves list toggles in batches
+    private final ListWriteQueue.Listener rollbackListener = this::onListChangeRolledBack;
 
-    private static final String API_KEY = BuildConfig.GOOGLE_BOOKS_API_KEY;
+    private DetailsPrefetcher.Prefetch prefetch; // Similar books and list membership of this book
+    private final ViewHolderPrewarmer viewHolderPrewarmer = new ViewHolderPrewarmer(); // Inflates similar book items while idle
+
+    // Similar books visible at once in the horizontal list
+    private static final int PREWARMED_SIMILAR_BOOKS = 3;
 
     @SuppressLint("SetTextI18n")
     @Override
@@ -52,8 +54,6 @@ public class BookDetails extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_book_details);
 
-        firestoreHelper = new FirestoreHelper();
-
         initUI(); // Initialize UI components
 
         // Retrieve book details from the intent
@@ -62,15 +62,11 @@ public class BookDetails extends AppCompatActivity {
             setupBookDetails(intent);
         }
 
-        // Fetch similar books if title is available
-        if (title != null) {
-            fetchSimilarBooks(title);
-        }
-
-        // Check if the book is in the user's favorites or shopping cart
-        if (bookId != null) {
-            checkBookStatus();
-        }
+        // Similar books, list membership and the cover were usually prefetched from the grid
+        prefetch = DetailsPrefetcher.getInstance(this).claim(bookId, title, imageUrl);
+        showSimilarBooks();
+        checkBookStatus();
+        listWriteQueue.addListener(rollbackListener);
     }
 
     /**
@@ -86,8 +82,10 @@ public class BookDetails extends AppCompatActivity {
 
         RecyclerView similarBooksRecyclerView = findViewById(R.id.similar_books_recycler_view);
         similarBooksRecyclerView.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
-        bookAdapter = new BookAdapter(this, similarBooksList);
+        bookAdapter = new BookAdapter(this);
         similarBooksRecyclerView.setAdapter(bookAdapter);
+        similarBooksRecyclerView.setRecycledViewPool(viewHolderPrewarmer.getPool());
+        viewHolderPrewarmer.prewarm(similarBooksRecyclerView, bookAdapter, BookAdapter.VIEW_TYPE, PREWARMED_SIMILAR_BOOKS);
 
         // Set button click listeners
         backButton.setOnClickListener(v -> finish());
@@ -120,48 +118,122 @@ public class BookDetails extends AppCompatActivity {
 
 
     /**
-     * Retrieves book details from the intent and updates the UI accordingly.
+     * Creates the intent that opens the details of a book. The book is handed over through
+     * {@link BookRegistry}, so the intent only carries its ID, title and cover; the rest is
+     * looked up again if the process was restarted in between.
      *
-     * @param intent The intent containing book details.
+     * @param context The context that starts the activity.
+     * @param book    The complete book to show.
+     * @return An intent carrying the book's ID.
+     */
+    public static Intent createIntent(Context context, Book book) {
+        BookRegistry.getInstance().register(book);
+        return createIntent(context, book.getBookId(), book.getTitle(), book.getImageUrl());
+    }
+
+    /**
+     * Creates the intent that opens a book known only by its ID, title and cover.
+     * The other fields are looked up when the screen opens.
+     *
+     * @param context  The context that starts the activity.
+     * @param bookId   The Google Books volume ID.
+     * @param title    The book's title.
+     * @param imageUrl The cover URL, may be null.
+     * @return An intent carrying the known fields.
+     */
+    public static Intent createIntent(Context context, String bookId, String title, String imageUrl) {
+        Intent intent = new Intent(context, BookDetails.class);
+        intent.putExtra("book_id", bookId);
+        intent.putExtra("book_title", title);
+        intent.putExtra("book_image", imageUrl != null && !imageUrl.trim().isEmpty() ? imageUrl : null);
+        return intent;
+    }
+
+    /**
+     * Retrieves the book handed over by ID and updates the UI accordingly.
+     * If the book is not in memory, the fields in the intent are shown and the rest is looked up by ID.
+     *
+     * @param intent The intent containing the book's ID.
      */
-    @SuppressLint("SetTextI18n")
     private void setupBookDetails(Intent intent) {
-        // Extract book details from the intent
         bookId = intent.getStringExtra("book_id");
-        title = intent.getStringExtra("book_title");
-        imageUrl = intent.getStringExtra("book_image");
-        String description = intent.getStringExtra("book_description");
-        String author = intent.getStringExtra("book_author");
-        String genre = intent.getStringExtra("book_genre");
-        String rating = intent.getStringExtra("book_rating");
-        String publishedYear = intent.getStringExtra("book_published_year");
+        Book book = BookRegistry.getInstance().get(bookId);
+        title = book != null ? book.getTitle() : intent.getStringExtra("book_title");
+        imageUrl = book != null ? book.getImageUrl() : intent.getStringExtra("book_image");
 
         // Generate Google Books URL based on the title
         googleBooksUrl = title != null ? "https://books.google.com/books?q=" + title.replace(" ", "+") : "https://books.google.com/";
 
-        ImageView bookImage = findViewById(R.id.book_image_details);
-        TextView bookTitle = findViewById(R.id.book_title_details);
-        TextView bookDescription = findViewById(R.id.book_description_details);
-        TextView bookAuthor = findViewById(R.id.book_authors_details);
-        TextView bookGenre = findViewById(R.id.book_genre_details);
-        TextView bookRating = findViewById(R.id.book_rating_details);
-        TextView bookPublishedYear = findViewById(R.id.book_published_date_details);
+        showCover(imageUrl);
+        if (book != null) {
+            showBookDetails(title, book.getDescription(), book.getAuthor(), book.getGenre(),
+                    book.getRating(), book.getPublishedYear());
+        } else {
+            showBookDetails(title, null, null, null, null, null);
+            VolumeRepository.getInstance().get(bookId, this::showHydratedBook);
+        }
+    }
+
+    /**
+     * Fills in the screen with a book looked up by ID.
+     *
+     * @param book The complete book, or null if it could not be loaded.
+     */
+    private void showHydratedBook(Book book) {
+        if (book == null || isDestroyed()) {
+            return;
+        }
+        if (imageUrl == null && book.getImageUrl() != null && !book.getImageUrl().trim().isEmpty()) {
+            imageUrl = book.getImageUrl();
+            showCover(imageUrl);
+        }
+        if (title == null) {
+            title = book.getTitle();
+        }
+        showBookDetails(title, book.getDescription(), book.getAuthor(),
+                book.getGenre(), book.getRating(), book.getPublishedYear());
+    }
 
-        // Load the book image using Glide
+    /**
+     * Loads the book's cover, or the default image if there is none.
+     *
+     * @param imageUrl The cover URL, may be null.
+     */
+    private void showCover(String imageUrl) {
+        ImageView bookImage = findViewById(R.id.book_image_details);
         if (imageUrl == null || imageUrl.trim().isEmpty()) {
             Glide.with(this)
                     .load(R.drawable.magazine)
                     .into(bookImage);
         } else {
-            Glide.with(this)
-                    .load(imageUrl)
+            DetailsPrefetcher.coverRequest(this, imageUrl) // Same request as the prefetch, so it hits the memory cache
                     .placeholder(R.drawable.loading)
                     .error(R.drawable.magazine)
                     .into(bookImage);
         }
+    }
+
+    /**
+     * Shows the book's text fields, hiding the ones that are missing.
+     * The description is converted from HTML and laid out in the background, and the view only waits for it when measured.
+     */
+    @SuppressLint("SetTextI18n")
+    private void showBookDetails(String title, String description, String author,
+                                 String genre, String rating, String publishedYear) {
+        TextView bookTitle = findViewById(R.id.book_title_details);
+        AppCompatTextView bookDescription = findViewById(R.id.book_description_details);
+        TextView bookAuthor = findViewById(R.id.book_authors_details);
+        TextView bookGenre = findViewById(R.id.book_genre_details);
+        TextView bookRating = findViewById(R.id.book_rating_details);
+        TextView bookPublishedYear = findViewById(R.id.book_published_date_details);
 
         bookTitle.setText(title != null ? title : "Title not available");
-        bookDescription.setText(description != null && !description.isEmpty() ? description : "No description available");
+        if (description != null && !description.isEmpty()) {
+            bookDescription.setTextFuture(TextPrecomputer.getInstance().prepareDescription(bookId, description,
+                    TextViewCompat.getTextMetricsParams(bookDescription)));
+        } else {
+            bookDescription.setText("No description available");
+        }
 
         if (author == null || author.trim().isEmpty()) {
             bookAuthor.setVisibility(View.GONE);
@@ -193,108 +265,76 @@ public class BookDetails extends AppCompatActivity {
     }
 
     /**
-     * Checks if the book is in the user's favorites or shopping cart and updates UI accordingly.
+     * Shows whether the book is in the user's favorites, shopping cart and reading list.
+     * The lookups usually finished while the user was still touching the book in the grid.
      */
     private void checkBookStatus() {
-        firestoreHelper.checkIfFavorite(bookId, isFavorite -> {
-            this.isFavorite = isFavorite;
-            buttonFavorite.setText(isFavorite ? "Remove From Favorites" : "Add to Favorites");
+        prefetch.whenMembershipReady(membership -> {
+            this.isFavorite = membership.favorite;
+            this.isInCart = membership.inCart;
+            this.isInReadingList = membership.inReadingList;
+            showListState(ListWriteQueue.UserList.FAVORITES, isFavorite);
+            showListState(ListWriteQueue.UserList.SHOPPING_CART, isInCart);
+            showListState(ListWriteQueue.UserList.READING_LIST, isInReadingList);
         });
+    }
 
-        firestoreHelper.isBookInCart(bookId, isInCart -> {
-            this.isInCart = isInCart;
-            buttonAddToCart.setText(isInCart ? "Remove From Cart" : "Add to Cart");
+    /**
+     * Shows books similar to the current book, found by its title.
+     */
+    private void showSimilarBooks() {
+        prefetch.whenSimilarBooksReady(books -> {
+            if (!books.isEmpty()) {
+                bookAdapter.submitList(books);
+            }
         });
     }
 
     /**
-     * Fetches similar books from the Google Books API based on the current book's title.
-     *
-     * @param bookTitle The title of the book to find similar books for.
+     * Saves the list changes made on this screen without waiting for the timer.
      */
-    private void fetchSimilarBooks(String bookTitle) {
-        if (bookTitle == null || bookTitle.isEmpty()) return;
-
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl("https://www.googleapis.com/books/v1/")
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-
-        BookApiService apiService = retrofit.create(BookApiService.class);
-        Call<BookResponse> call = apiService.getBooks(bookTitle, API_KEY);
-
-        call.enqueue(new Callback<>() {
-            @SuppressLint("NotifyDataSetChanged")
-            @Override
-            public void onResponse(@NonNull Call<BookResponse> call, @NonNull Response<BookResponse> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    List<Book> books = response.body().toBookList();
-                    if (books != null && !books.isEmpty()) {
-                        similarBooksList.clear();
-                        similarBooksList.addAll(books);
-                        bookAdapter.notifyItemRangeInserted(0, books.size());
-                    }
-                }
-            }
+    @Override
+    protected void onStop() {
+        super.onStop();
+        listWriteQueue.flush();
+    }
 
-            @Override
-            public void onFailure(@NonNull Call<BookResponse> call, @NonNull Throwable t) {
-                Log.e("BookDetails", "Failed to fetch similar books", t);
-            }
-        });
+    /**
+     * Stops the loads that are still running so they are not delivered to a destroyed activity.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        listWriteQueue.removeListener(rollbackListener);
+        if (prefetch != null) {
+            prefetch.cancel();
+        }
+        viewHolderPrewarmer.cancel();
     }
 
     /**
      * Toggles the book's status in the reading list. If the book is already in the reading list,
      * it will be removed; otherwise, it will be added.
      */
-    @SuppressLint("SetTextI18n")
     private void toggleReadingList() {
         if (isBookDataMissing()) return;
-
-        firestoreHelper.isBookInReadingList(bookId, isInList -> {
-            if (isInList) {
-                firestoreHelper.removeBookFromReadingList(bookId, success -> {
-                    if (success) {
-                        buttonReadingList.setText("Add to Reading List");
-                        showToast("Removed from Reading List");
-                    }
-                });
-            } else {
-                firestoreHelper.addBookToReadingList(bookId, title, imageUrl, success -> {
-                    if (success) {
-                        buttonReadingList.setText("Remove From Reading List");
-                        showToast("Added to Reading List!");
-                    }
-                });
-            }
-        });
+        if (listWriteQueue.set(ListWriteQueue.UserList.READING_LIST, bookId, !isInReadingList, title, imageUrl, googleBooksUrl)) {
+            isInReadingList = !isInReadingList;
+            showListState(ListWriteQueue.UserList.READING_LIST, isInReadingList);
+            showToast(isInReadingList ? "Added to Reading List!" : "Removed from Reading List");
+        }
     }
 
     /**
      * Toggles the book's status in the favorites list. If the book is already a favorite,
      * it will be removed; otherwise, it will be added.
      */
-    @SuppressLint("SetTextI18n")
     private void toggleFavorite() {
         if (isBookDataMissing()) return;
-
-        if (isFavorite) {
-            firestoreHelper.removeBookFromFavorites(bookId, success -> {
-                if (success) {
-                    isFavorite = false;
-                    buttonFavorite.setText("Add to Favorites");
-                    showToast("Removed from Favorites");
-                }
-            });
-        } else {
-            firestoreHelper.addBookToFavorites(bookId, title, imageUrl, success -> {
-                if (success) {
-                    isFavorite = true;
-                    buttonFavorite.setText("Remove From Favorites");
-                    showToast("Added to Favorites!");
-                }
-            });
+        if (listWriteQueue.set(ListWriteQueue.UserList.FAVORITES, bookId, !isFavorite, title, imageUrl, googleBooksUrl)) {
+            isFavorite = !isFavorite;
+            showListState(ListWriteQueue.UserList.FAVORITES, isFavorite);
+            showToast(isFavorite ? "Added to Favorites!" : "Removed from Favorites");
         }
     }
 
@@ -302,27 +342,56 @@ public class BookDetails extends AppCompatActivity {
      * Toggles the book's status in the shopping cart. If the book is already in the cart,
      * it will be removed; otherwise, it will be added.
      */
-    @SuppressLint("SetTextI18n")
     private void toggleCart() {
         if (isBookDataMissing()) return;
+        if (listWriteQueue.set(ListWriteQueue.UserList.SHOPPING_CART, bookId, !isInCart, title, imageUrl, googleBooksUrl)) {
+            isInCart = !isInCart;
+            showListState(ListWriteQueue.UserList.SHOPPING_CART, isInCart);
+            showToast(isInCart ? "Added to Cart" : "Removed from Cart");
+        }
+    }
 
-        if (isInCart) {
-            firestoreHelper.removeBookFromShoppingCart(bookId, success -> {
-                if (success) {
-                    isInCart = false;
-                    buttonAddToCart.setText("Add to Cart");
-                    showToast("Removed from Cart");
-                }
-            });
-        } else {
-            firestoreHelper.addBookToShoppingCart(bookId, title, imageUrl, googleBooksUrl, success -> {
-                if (success) {
-                    isInCart = true;
-                    buttonAddToCart.setText("Remove From Cart");
-                    showToast("Added to Cart");
-                }
-            });
+    /**
+     * Updates the button of a list to show whether the book is in it.
+     *
+     * @param list  The list.
+     * @param inList Whether the book is in the list.
+     */
+    @SuppressLint("SetTextI18n")
+    private void showListState(ListWriteQueue.UserList list, boolean inList) {
+        switch (list) {
+            case FAVORITES:
+                buttonFavorite.setText(inList ? "Remove From Favorites" : "Add to Favorites");
+                break;
+            case READING_LIST:
+                buttonReadingList.setText(inList ? "Remove From Reading List" : "Add to Reading List");
+                break;
+            case SHOPPING_CART:
+                buttonAddToCart.setText(inList ? "Remove From Cart" : "Add to Cart");
+                break;
+        }
+    }
+
+    /**
+     * Shows the saved state again after a change of this book could not be saved.
+     */
+    private void onListChangeRolledBack(ListWriteQueue.UserList list, String changedBookId, boolean saved) {
+        if (!changedBookId.equals(bookId)) {
+            return;
+        }
+        switch (list) {
+            case FAVORITES:
+                isFavorite = saved;
+                break;
+            case READING_LIST:
+                isInReadingList = saved;
+                break;
+            case SHOPPING_CART:
+                isInCart = saved;
+                break;
         }
+        showListState(list, saved);
+        showToast("Could not save your change, please try again");
     }
 
     private boolean isBookDataMissing() {
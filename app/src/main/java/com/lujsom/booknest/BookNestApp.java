@@ -0,0 +1,22 @@
+package com.lujsom.booknest;
+
+import android.app.Application;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.lujsom.booknest.api.ApiClient;
+import com.lujsom.booknest.utils.FirestoreConfig;
+import com.lujsom.booknest.utils.UserSession;
+
+/**
+ * BookNestApp is the application class of BookNest.
+ * It sets up process-wide services before any activity is created.
+ */
+public class BookNestApp extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ApiClient.init(this); // Enable the disk cache for Google Books responses
+        FirestoreConfig.apply(FirebaseFirestore.getInstance()); // Before anything reads Firestore
+        UserSession.install(this); // One session per signed-in user, shared by all screens
+    }
+}
@@ -1,21 +1,26 @@
 package com.lujsom.booknest;
 
-import android.annotation.SuppressLint;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.view.View;
 import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 import com.lujsom.booknest.adapters.FavoriteAdapter;
+import com.lujsom.booknest.api.VolumeRepository;
 import com.lujsom.booknest.models.Book;
+import com.lujsom.booknest.models.BookRegistry;
+import com.lujsom.booknest.utils.FirestoreHelper;
+import com.lujsom.booknest.utils.ListWriteQueue;
+import com.lujsom.booknest.utils.SavedListPager;
+import com.lujsom.booknest.utils.UserSession;
+import com.lujsom.booknest.utils.ViewHolderPrewarmer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +33,14 @@ public class FavoritesPage extends AppCompatActivity {
     private FavoriteAdapter adapter;
     private final List<Book> favoriteBooks = new ArrayList<>();
     private final List<Book> filteredFavorites = new ArrayList<>();
+    private EditText searchBar;
+    private TextView syncStatus; // Shown while the list is not confirmed by the server
+    private SavedListPager pager; // Loads the list a page at a time
+    private VolumeRepository.Hydration hydration; // Completes the saved books in the background
+    private final ViewHolderPrewarmer viewHolderPrewarmer = new ViewHolderPrewarmer(); // Inflates grid cells while idle
+
+    // Cells of a full screen of the grid, inflated while the favorites load
+    private static final int PREWARMED_CELLS = 6;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -39,7 +52,8 @@ public class FavoritesPage extends AppCompatActivity {
         recyclerView.setLayoutManager(new GridLayoutManager(this, 2));
 
         // Initialize search bar functionality
-        EditText searchBar = findViewById(R.id.search_bar);
+        searchBar = findViewById(R.id.search_bar);
+        syncStatus = findViewById(R.id.sync_status);
         searchBar.addTextChangedListener(new TextWatcher() {
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
@@ -58,44 +72,112 @@ public class FavoritesPage extends AppCompatActivity {
         backButton.setOnClickListener(v -> finish());
 
         // Initialize the adapter with the list of favorite books
-        adapter = new FavoriteAdapter(this, favoriteBooks);
+        adapter = new FavoriteAdapter(this);
         recyclerView.setAdapter(adapter);
+        recyclerView.setRecycledViewPool(viewHolderPrewarmer.getPool());
+        viewHolderPrewarmer.prewarm(recyclerView, adapter, FavoriteAdapter.VIEW_TYPE, PREWARMED_CELLS);
 
         // Load favorite books from Firestore
         loadFavorites();
+        if (pager != null) {
+            pager.loadMoreWhenNearEnd(recyclerView); // Next page when scrolled near the end
+        }
     }
 
     /**
-     * Loads the user's favorite books from Firestore and updates the RecyclerView.
+     * Loads the user's favorite books and updates the RecyclerView. The copy in Firestore's local
+     * cache is shown first and replaced when the server answers, so the list does not wait for the network.
      */
-    @SuppressLint("NotifyDataSetChanged")
     private void loadFavorites() {
-        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-        if (user == null) {
+        UserSession session = UserSession.get();
+        if (!session.isLoggedIn()) {
             showToast("No user logged in");
             return;
         }
 
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-        db.collection("users").document(user.getUid()).collection("favorites")
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    favoriteBooks.clear(); // Clear the list before adding new items
-                    for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
-                        // Retrieve book details from Firestore
-                        String bookId = doc.getString("bookId");
-                        String title = doc.getString("title");
-                        String imageUrl = doc.getString("imageUrl");
-
-                        // Create a Book object and add it to the list
-                        favoriteBooks.add(new Book(bookId, title, "Unknown", "N/A", "N/A", "N/A", "No description", imageUrl, "", "", ""));
+        // Show the favorites as last loaded while they are read again
+        List<Book> saved = session.getSavedBooks(ListWriteQueue.UserList.FAVORITES);
+        if (saved != null) {
+            favoriteBooks.addAll(saved);
+            filteredFavorites.addAll(saved);
+            adapter.updateList(filteredFavorites);
+        }
+
+        pager = session.getFirestoreHelper().watchList(ListWriteQueue.UserList.FAVORITES,
+                new FirestoreHelper.ListWatcher() {
+                    @Override
+                    public void onDocuments(List<DocumentSnapshot> documents) {
+                        favoriteBooks.clear(); // Clear the list before adding new items
+                        for (DocumentSnapshot doc : documents) {
+                            // Retrieve book details from Firestore
+                            String bookId = doc.getString("bookId");
+                            String title = doc.getString("title");
+                            String imageUrl = doc.getString("imageUrl");
+
+                            // Share the complete book if it is already in memory, otherwise show the saved fields
+                            Book known = BookRegistry.getInstance().get(bookId);
+                            favoriteBooks.add(known != null ? known
+                                    : new Book(bookId, title, "Unknown", "N/A", "N/A", "N/A", "No description", imageUrl, "", "", ""));
+                        }
+                        session.putSavedBooks(ListWriteQueue.UserList.FAVORITES, favoriteBooks);
+                        // Keep the search filter and show the result
+                        filterFavorites(searchBar.getText().toString());
+                        hydrateFavorites();
                     }
-                    // Update the filtered list and notify the adapter
-                    filteredFavorites.clear();
-                    filteredFavorites.addAll(favoriteBooks);
-                    adapter.notifyDataSetChanged();
-                })
-                .addOnFailureListener(e -> showToast("Failed to load favorites"));
+
+                    @Override
+                    public void onFreshness(boolean fromCache) {
+                        syncStatus.setVisibility(fromCache ? View.VISIBLE : View.GONE);
+                    }
+
+                    @Override
+                    public void onError() {
+                        showToast("Failed to load favorites");
+                    }
+                });
+    }
+
+    /**
+     * Looks up the full details of the saved books, which only hold an ID, title and cover,
+     * so opening one shows a complete details screen.
+     */
+    private void hydrateFavorites() {
+        if (hydration != null) {
+            hydration.cancel();
+        }
+        hydration = VolumeRepository.getInstance().hydrateAll(favoriteBooks, VolumeRepository.DEFAULT_MAX_CONCURRENT,
+                book -> {
+                    replaceById(favoriteBooks, book);
+                    replaceById(filteredFavorites, book);
+                },
+                () -> adapter.updateList(filteredFavorites)); // Only the completed rows are rebound
+    }
+
+    /**
+     * Replaces the book with the same ID in a list, keeping the saved cover if the complete book has none.
+     */
+    private static void replaceById(List<Book> books, Book complete) {
+        for (int i = 0; i < books.size(); i++) {
+            Book saved = books.get(i);
+            if (complete.getBookId().equals(saved.getBookId())) {
+                books.set(i, complete.getImageUrl() != null ? complete : saved);
+            }
+        }
+    }
+
+    /**
+     * Stops listening to the favorites and completing the saved books when the screen is closed.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (pager != null) {
+            pager.remove();
+        }
+        if (hydration != null) {
+            hydration.cancel();
+        }
+        viewHolderPrewarmer.cancel();
     }
 
     /**
@@ -103,7 +185,6 @@ public class FavoritesPage extends AppCompatActivity {
      *
      * @param query The search text entered by the user.
      */
-    @SuppressLint("NotifyDataSetChanged")
     private void filterFavorites(String query) {
         query = query.trim().toLowerCase();
         filteredFavorites.clear(); // Clear previous search results
@@ -21,19 +21,27 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.navigation.NavigationView;
-import com.google.firebase.auth.FirebaseAuth;
 import com.lujsom.booknest.adapters.BookAdapter;
 import com.lujsom.booknest.api.ApiClient;
-import com.lujsom.booknest.api.BookApiService;
+import com.lujsom.booknest.api.BookQueryCoalescer;
+import com.lujsom.booknest.api.BookQueryPipeline;
+import com.lujsom.booknest.api.HttpCachePolicy;
+import com.lujsom.booknest.api.RequestLane;
 import com.lujsom.booknest.models.Book;
-import com.lujsom.booknest.models.BookItem;
-import com.lujsom.booknest.models.BookResponse;
+import com.lujsom.booknest.utils.BookPageWindow;
+import com.lujsom.booknest.utils.CategoryPrefetcher;
+import com.lujsom.booknest.utils.DetailsPrefetcher;
 import com.lujsom.booknest.utils.FirestoreHelper;
+import com.lujsom.booknest.utils.MembershipIndex;
+import com.lujsom.booknest.utils.QueryResultStore;
+import com.lujsom.booknest.utils.UserProfileCache;
+import com.lujsom.booknest.utils.UserSession;
+import com.lujsom.booknest.utils.ViewHolderPrewarmer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
+import java.util.Map;
 
 
 /**
@@ -46,8 +54,33 @@ public class LibraryPage extends AppCompatActivity {
     private ProgressBar progressBar;
     private TextView usernameText;
     private FirestoreHelper firestoreHelper;
+    private MembershipIndex membershipIndex; // The logged-in user's lists
+    private UserProfileCache profileCache; // The logged-in user's profile
+    private BookQueryPipeline queryPipeline;
+    private GridLayoutManager layoutManager;
+    private BookAdapter bookAdapter;
+    private CategoryPrefetcher categoryPrefetcher;
+    private final ViewHolderPrewarmer viewHolderPrewarmer = new ViewHolderPrewarmer(); // Inflates grid cells while idle
+    private final BookPageWindow pageWindow = new BookPageWindow(MAX_PAGES_IN_MEMORY);
+    private boolean newQueryStarted = false; // The next first page replaces the current results
+    private boolean showingStoredResults = false; // The grid shows stored results of the current query
+    private final Map<Integer, Map<String, DetailsPrefetcher.Membership>> pageBadges = new HashMap<>(); // Badges of the current query, by page
+    private int badgeGeneration = 0; // Incremented per query, so late lookups of an old query are dropped
+    private final Runnable membershipChanged = this::reloadBadges;
+    private final Runnable profileChanged = this::showUserName;
     private static final String TAG = "LibraryPage";
-    private static final String API_KEY = BuildConfig.GOOGLE_BOOKS_API_KEY;
+
+    // Paging settings
+    private static final int PAGE_SIZE = BookQueryPipeline.DEFAULT_PAGE_SIZE; // Books requested per page
+    private static final int PREFETCH_DISTANCE = 6; // Load the next page when this many books are left to scroll
+    private static final int MAX_PAGES_IN_MEMORY = 5; // Older pages are dropped and fetched again if needed
+    private static final int PREWARMED_CELLS = 8; // Cells of a full screen of the grid, inflated before the first results
+
+    // Category filters, the first one is shown when the page opens
+    private static final String DEFAULT_CATEGORY = "bestsellers";
+    private static final String[] CATEGORIES = {
+            DEFAULT_CATEGORY, "science fiction", "drama", "non-fiction", "self-help", "romance"
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -55,13 +88,19 @@ public class LibraryPage extends AppCompatActivity {
         setContentView(R.layout.activity_library_page);
 
         initUI();
-        loadUserName();
+        membershipIndex = UserSession.get().getMembershipIndex();
+        membershipIndex.start(); // Ready before a book is opened
+        membershipIndex.addListener(membershipChanged);
+        profileCache = UserSession.get().getProfileCache();
+        profileCache.addListener(profileChanged); // Shows a renamed user without reading the profile again
+        showUserName();
         setupNavigation();
         setupSearchBar();
         setupFilters();
+        setupPaging();
         setupBackButtonHandler();
 
-        loadBooks("bestsellers"); // Default book category
+        loadBooks(DEFAULT_CATEGORY); // Default book category
     }
 
 
@@ -73,20 +112,33 @@ public class LibraryPage extends AppCompatActivity {
         bookGrid = findViewById(R.id.book_grid);
         usernameText = findViewById(R.id.username_text);
         progressBar = findViewById(R.id.progressBar);
-        firestoreHelper = new FirestoreHelper();
+        firestoreHelper = UserSession.get().getFirestoreHelper();
+        queryPipeline = createQueryPipeline();
+        categoryPrefetcher = new CategoryPrefetcher(this, QueryResultStore.getInstance(this), PAGE_SIZE);
 
         ImageButton menuButton = findViewById(R.id.menu_button);
         menuButton.setOnClickListener(v -> drawerLayout.openDrawer(GravityCompat.START));
 
-        bookGrid.setLayoutManager(new GridLayoutManager(this, 2)); // Display books in a grid format
+        layoutManager = new GridLayoutManager(this, 2); // Display books in a grid format
+        bookGrid.setLayoutManager(layoutManager);
+        bookAdapter = new BookAdapter(this);
+        bookGrid.setAdapter(bookAdapter);
+        bookGrid.setRecycledViewPool(viewHolderPrewarmer.getPool());
+        viewHolderPrewarmer.prewarm(bookGrid, bookAdapter, BookAdapter.VIEW_TYPE, PREWARMED_CELLS);
     }
 
     /**
-     * Loads the user's name from Firestore and updates the UI.
+     * Shows the user's name from the profile cache. If it is not known yet, it is shown
+     * when the profile arrives.
      */
     @SuppressLint("SetTextI18n")
-    private void loadUserName() {
-        firestoreHelper.getUserName(userName -> usernameText.setText("HELLO, " + userName + "!"));
+    private void showUserName() {
+        String userName = profileCache.getUserName();
+        if (userName != null) {
+            usernameText.setText("HELLO, " + userName + "!");
+        } else if (!UserSession.get().isLoggedIn()) {
+            usernameText.setText("HELLO, Guest!");
+        }
     }
 
     /**
@@ -116,16 +168,19 @@ public class LibraryPage extends AppCompatActivity {
      * Logs out the current user and navigates to the main screen.
      */
     private void handleLogout() {
-        FirebaseAuth.getInstance().signOut();
-        Toast.makeText(this, "Logged out successfully", Toast.LENGTH_SHORT).show();
-        Intent intent = new Intent(this, MainActivity.class);
-        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-        startActivity(intent);
-        finish();
+        // Everything of the user is dropped, and the user is signed out once pending changes are saved
+        UserSession.logout(() -> {
+            Toast.makeText(this, "Logged out successfully", Toast.LENGTH_SHORT).show();
+            Intent intent = new Intent(this, MainActivity.class);
+            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            startActivity(intent);
+            finish();
+        });
     }
 
     /**
-     * Sets up the search bar to filter books in real-time as the user types.
+     * Sets up the search bar to filter books as the user types.
+     * Queries are debounced so only the text the user pauses on is sent to the API.
      */
     private void setupSearchBar() {
         EditText searchBar = findViewById(R.id.search_bar);
@@ -135,7 +190,13 @@ public class LibraryPage extends AppCompatActivity {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                loadBooks(s.length() > 0 ? s.toString() : "bestsellers");
+                String query = s.toString().trim();
+                if (query.isEmpty()) {
+                    // The default category, stored with the TTL of categories
+                    queryPipeline.submit(DEFAULT_CATEGORY, QueryResultStore.QueryClass.CATEGORY);
+                } else {
+                    searchBooks(query);
+                }
             }
 
             @Override
@@ -147,12 +208,34 @@ public class LibraryPage extends AppCompatActivity {
      * Sets up category filter buttons that load books by genre.
      */
     private void setupFilters() {
-        findViewById(R.id.filter_all).setOnClickListener(v -> loadBooks("bestsellers"));
-        findViewById(R.id.filter_scifi).setOnClickListener(v -> loadBooks("science fiction"));
-        findViewById(R.id.filter_drama).setOnClickListener(v -> loadBooks("drama"));
-        findViewById(R.id.filter_nonfiction).setOnClickListener(v -> loadBooks("non-fiction"));
-        findViewById(R.id.filter_selfhelp).setOnClickListener(v -> loadBooks("self-help"));
-        findViewById(R.id.filter_romance).setOnClickListener(v -> loadBooks("romance"));
+        int[] filterIds = {R.id.filter_all, R.id.filter_scifi, R.id.filter_drama,
+                R.id.filter_nonfiction, R.id.filter_selfhelp, R.id.filter_romance};
+        for (int i = 0; i < filterIds.length; i++) {
+            String category = CATEGORIES[i];
+            findViewById(filterIds[i]).setOnClickListener(v -> loadBooks(category));
+        }
+    }
+
+    /**
+     * Loads further pages while the user scrolls, a few rows before the end of the loaded books.
+     * Scrolling back up reloads pages that were dropped from memory.
+     */
+    private void setupPaging() {
+        bookGrid.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (pageWindow.isEmpty()) return;
+
+                int itemCount = layoutManager.getItemCount();
+                if (dy > 0 && !pageWindow.isEndReached()
+                        && layoutManager.findLastVisibleItemPosition() >= itemCount - PREFETCH_DISTANCE) {
+                    queryPipeline.loadPage(pageWindow.getLastPage() + 1);
+                } else if (dy < 0 && pageWindow.getFirstPage() > 0
+                        && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+                    queryPipeline.loadPage(pageWindow.getFirstPage() - 1);
+                }
+            }
+        });
     }
 
     /**
@@ -173,52 +256,216 @@ public class LibraryPage extends AppCompatActivity {
     }
 
     /**
-     * Fetches books from the API based on the search query or selected category.
+     * Creates the pipeline that sends queries to the API and delivers only the latest result.
      *
-     * @param searchQuery The search keyword or category name.
+     * @return A BookQueryPipeline bound to this activity's views.
      */
-    private void loadBooks(String searchQuery) {
-        progressBar.setVisibility(View.VISIBLE); // Show loading indicator
+    private BookQueryPipeline createQueryPipeline() {
+        return new BookQueryPipeline(BookQueryCoalescer.getInstance(), QueryResultStore.getInstance(this),
+                BookQueryPipeline.DEFAULT_DEBOUNCE_MS, PAGE_SIZE, new BookQueryPipeline.Listener() {
+            @Override
+            public void onQueryStarted(String query) {
+                progressBar.setVisibility(View.VISIBLE); // Show loading indicator
+                newQueryStarted = true;
+                showingStoredResults = false;
+                pageBadges.clear();
+                badgeGeneration++;
+            }
+
+            @Override
+            public void onCachedPageLoaded(String query, List<Book> books, boolean stale) {
+                progressBar.setVisibility(View.GONE); // The refresh, if any, runs without a spinner
+                showingStoredResults = true;
+                showFirstPageBatch(books);
+                loadBadges(0, books);
+                prefetchCategoriesAfter(query);
+                if (books.size() < PAGE_SIZE) {
+                    pageWindow.markEndReached();
+                }
+                if (books.isEmpty()) {
+                    showToast("No books found.");
+                }
+            }
 
-        BookApiService bookApiService = ApiClient.getClient().create(BookApiService.class);
-        Call<BookResponse> call = bookApiService.getBooks(searchQuery, API_KEY);
+            @Override
+            public void onPageRefreshed(String query, List<Book> books) {
+                replaceResults(books);
+                pageBadges.remove(0);
+                loadBadges(0, books);
+            }
 
-        call.enqueue(new Callback<>() {
             @Override
-            public void onResponse(@NonNull Call<BookResponse> call, @NonNull Response<BookResponse> response) {
+            public void onBooksParsed(String query, List<Book> batch) {
                 progressBar.setVisibility(View.GONE);
-                if (response.isSuccessful() && response.body() != null) {
-                    List<BookItem> bookItems = response.body().getItems();
-                    if (bookItems == null || bookItems.isEmpty()) {
-                        showToast("No books found.");
-                        return;
-                    }
-                    updateBookList(bookItems);
-                } else {
-                    logError("Error loading books: " + response.message());
+                showFirstPageBatch(batch);
+            }
+
+            @Override
+            public void onPageLoaded(String query, int pageIndex, List<Book> books, boolean streamed) {
+                progressBar.setVisibility(View.GONE);
+                if (newQueryStarted) {
+                    showFirstPageBatch(books); // Nothing was streamed, the page is empty
+                }
+                if (!streamed) {
+                    showPage(pageIndex, books);
+                }
+                loadBadges(pageIndex, books);
+                if (books.size() < PAGE_SIZE && pageIndex == pageWindow.getLastPage()) {
+                    pageWindow.markEndReached();
+                }
+                if (pageIndex == 0 && books.isEmpty()) {
+                    showToast("No books found.");
+                }
+                if (pageIndex == 0) {
+                    prefetchCategoriesAfter(query);
                 }
             }
 
             @Override
-            public void onFailure(@NonNull Call<BookResponse> call, @NonNull Throwable t) {
+            public void onQueryFailed(String query, int pageIndex, String message) {
                 progressBar.setVisibility(View.GONE);
-                logError("API Error: " + t.getMessage());
+                if (pageIndex == 0 && showingStoredResults) {
+                    Log.w(TAG, "Refresh failed, keeping stored results: " + message);
+                } else {
+                    logError(message);
+                }
             }
         });
     }
 
     /**
-     * Updates the book list in the RecyclerView with the fetched data.
+     * Warms the other categories once the default category is on screen and the main thread is idle.
      *
-     * @param bookItems The list of books retrieved from the API.
+     * @param shownQuery The query whose first page was just shown.
      */
-    private void updateBookList(List<BookItem> bookItems) {
-        List<Book> books = new ArrayList<>();
-        for (BookItem item : bookItems) {
-            books.add(new Book(item));
+    private void prefetchCategoriesAfter(String shownQuery) {
+        if (DEFAULT_CATEGORY.equals(shownQuery)) {
+            categoryPrefetcher.startWhenIdle(Arrays.copyOfRange(CATEGORIES, 1, CATEGORIES.length));
         }
-        BookAdapter bookAdapter = new BookAdapter(this, books);
-        bookGrid.setAdapter(bookAdapter);
+    }
+
+    /**
+     * Searches for books after the debounce window, used while the user is typing.
+     *
+     * @param searchQuery The search keyword.
+     */
+    private void searchBooks(String searchQuery) {
+        queryPipeline.submit(searchQuery);
+    }
+
+    /**
+     * Fetches books from the API right away based on the search query or selected category.
+     *
+     * @param searchQuery The search keyword or category name.
+     */
+    private void loadBooks(String searchQuery) {
+        queryPipeline.submitNow(searchQuery);
+    }
+
+    /**
+     * Shows books of the first page of a query as they are parsed.
+     * The first batch of a new query replaces the previous results.
+     *
+     * @param batch The books parsed since the last batch.
+     */
+    private void showFirstPageBatch(List<Book> batch) {
+        if (newQueryStarted) {
+            newQueryStarted = false;
+            pageWindow.reset();
+            pageWindow.addToLastPage(batch);
+            showWindow(() -> bookGrid.scrollToPosition(0));
+        } else {
+            pageWindow.addToLastPage(batch);
+            showWindow(null);
+        }
+    }
+
+    /**
+     * Replaces the results on screen with a refreshed first page.
+     *
+     * Books that did not change keep their rows and covers.
+     *
+     * @param books The books of the refreshed page.
+     */
+    private void replaceResults(List<Book> books) {
+        pageWindow.reset();
+        pageWindow.append(0, books);
+        if (books.size() < PAGE_SIZE) {
+            pageWindow.markEndReached();
+        }
+        showWindow(null);
+    }
+
+    /**
+     * Adds a complete page of results to the grid. Pages after the last one are appended and
+     * pages before the first one are prepended, either may evict the page at the other end.
+     *
+     * @param pageIndex The index of the page.
+     * @param books     The books of the page.
+     */
+    private void showPage(int pageIndex, List<Book> books) {
+        int evicted = pageIndex > pageWindow.getLastPage()
+                ? pageWindow.append(pageIndex, books)
+                : pageWindow.prepend(pageIndex, books);
+        if (evicted < 0) return; // The window moved while the page was loading
+        showWindow(null);
+    }
+
+    /**
+     * Hands a snapshot of the page window to the grid. The adapter works out the inserted,
+     * removed and changed rows on a background thread, so unchanged rows keep their covers.
+     *
+     * @param onShown Runs once the grid shows the snapshot, may be null.
+     */
+    private void showWindow(Runnable onShown) {
+        bookAdapter.submitList(new ArrayList<>(pageWindow.getBooks()), onShown);
+    }
+
+    /**
+     * Badges the books of a page that are in the user's favorites or cart. The membership of a page
+     * is looked up once per query, in one batched call, and reused when the page is shown again.
+     *
+     * @param pageIndex The index of the page.
+     * @param books     The books of the page.
+     */
+    private void loadBadges(int pageIndex, List<Book> books) {
+        Map<String, DetailsPrefetcher.Membership> cached = pageBadges.get(pageIndex);
+        if (cached != null) {
+            bookAdapter.mergeMemberships(cached);
+            return;
+        }
+        int generation = badgeGeneration;
+        firestoreHelper.getMemberships(bookIds(books), memberships -> {
+            if (isDestroyed() || generation != badgeGeneration) {
+                return;
+            }
+            pageBadges.put(pageIndex, memberships);
+            bookAdapter.mergeMemberships(memberships);
+        });
+    }
+
+    /**
+     * Looks up the badges of every book in memory again after the user's lists changed.
+     */
+    private void reloadBadges() {
+        pageBadges.clear();
+        if (pageWindow.isEmpty()) {
+            return;
+        }
+        int generation = badgeGeneration;
+        firestoreHelper.getMemberships(bookIds(pageWindow.getBooks()), memberships -> {
+            if (!isDestroyed() && generation == badgeGeneration) {
+                bookAdapter.mergeMemberships(memberships);
+            }
+        });
+    }
+
+    private static List<String> bookIds(List<Book> books) {
+        List<String> ids = new ArrayList<>(books.size());
+        for (Book book : books) {
+            ids.add(book.getBookId());
+        }
+        return ids;
     }
 
     /**
@@ -242,12 +489,53 @@ public class LibraryPage extends AppCompatActivity {
 
     /**
      * Called when the activity becomes visible again.
-     * This method ensures that the user's name is reloaded in case it was updated while the activity was in the background.
+     * The user's name is read from the profile cache, which the snapshot listener keeps up to date.
      */
     @Override
     protected void onResume() {
         super.onResume();
-        loadUserName(); // Refresh the displayed username
+        showUserName(); // No read, the cache is already current
     }
 
-}
\ No newline at end of file
+    /**
+     * Cancels any pending or in-flight search so its result is not delivered to a destroyed activity.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (BuildConfig.DEBUG) {
+            logStats();
+        }
+        categoryPrefetcher.cancel();
+        viewHolderPrewarmer.cancel();
+        membershipIndex.removeListener(membershipChanged);
+        profileCache.removeListener(profileChanged);
+        if (isChangingConfigurations()) {
+            queryPipeline.detach(); // The recreated activity can pick up the same calls
+        } else {
+            queryPipeline.cancel();
+        }
+    }
+
+    /**
+     * Logs the counters of the search pipeline, the HTTP cache and the request lanes, in debug builds.
+     */
+    private void logStats() {
+        Log.d(TAG, "Search requests issued: " + queryPipeline.getRequestsIssued()
+                + ", rendered: " + queryPipeline.getResponsesRendered()
+                + ", dropped: " + queryPipeline.getResponsesDropped()
+                + ", served from store: " + queryPipeline.getStoreHits()
+                + ", unchanged refreshes: " + queryPipeline.getRefreshesUnchanged());
+        HttpCachePolicy cachePolicy = ApiClient.getCachePolicy();
+        if (cachePolicy != null) {
+            Log.d(TAG, "HTTP cache hits: " + cachePolicy.getHitCount()
+                    + ", misses: " + cachePolicy.getMissCount()
+                    + ", stale: " + cachePolicy.getStaleHitCount()
+                    + ", offline: " + cachePolicy.getOfflineHitCount());
+        }
+        Log.d(TAG, ApiClient.getLaneStats(RequestLane.INTERACTIVE).toString());
+        Log.d(TAG, ApiClient.getLaneStats(RequestLane.BACKGROUND).toString());
+        Log.d(TAG, ApiClient.getResiliencePolicy().toString());
+        Log.d(TAG, "Query coalescing rate: " + BookQueryCoalescer.getInstance().getCoalescingRate());
+    }
+}
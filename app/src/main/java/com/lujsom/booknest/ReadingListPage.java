@@ -1,6 +1,5 @@
 package com.lujsom.booknest;
 
-import android.annotation.SuppressLint;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -12,11 +11,16 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.*;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.lujsom.booknest.adapters.ReadingListAdapter;
+import com.lujsom.booknest.api.VolumeRepository;
 import com.lujsom.booknest.models.Book;
+import com.lujsom.booknest.models.BookRegistry;
+import com.lujsom.booknest.utils.FirestoreHelper;
+import com.lujsom.booknest.utils.ListWriteQueue;
+import com.lujsom.booknest.utils.SavedListPager;
+import com.lujsom.booknest.utils.UserSession;
+import com.lujsom.booknest.utils.ViewHolderPrewarmer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -29,10 +33,15 @@ public class ReadingListPage extends AppCompatActivity {
 
     private ReadingListAdapter adapter;
     private List<Book> readingList;
-    private FirebaseFirestore db;
-    private FirebaseUser user;
+    private UserSession session;
     private EditText searchBar;
-    private ListenerRegistration listenerRegistration;
+    private TextView syncStatus; // Shown while the list is not confirmed by the server
+    private SavedListPager pager; // Loads the list a page at a time
+    private VolumeRepository.Hydration hydration; // Completes the saved books in the background
+    private final ViewHolderPrewarmer viewHolderPrewarmer = new ViewHolderPrewarmer(); // Inflates grid cells while idle
+
+    // Cells of a full screen of the grid, inflated while the reading list loads
+    private static final int PREWARMED_CELLS = 6;
 
     /**
      * Called when the activity is first created.
@@ -49,6 +58,7 @@ public class ReadingListPage extends AppCompatActivity {
         // Initialize UI components
         RecyclerView recyclerView = findViewById(R.id.reading_list_recycler);
         searchBar = findViewById(R.id.search_bar);
+        syncStatus = findViewById(R.id.sync_status);
         TextView emptyMessage = findViewById(R.id.empty_message);
         ImageButton backButton = findViewById(R.id.back_button);
 
@@ -58,13 +68,13 @@ public class ReadingListPage extends AppCompatActivity {
 
         // Initialize the reading list and adapter
         readingList = new ArrayList<>();
-        List<Book> filteredList = new ArrayList<>();
-        adapter = new ReadingListAdapter(this, filteredList);
+        adapter = new ReadingListAdapter(this);
         recyclerView.setAdapter(adapter);
+        recyclerView.setRecycledViewPool(viewHolderPrewarmer.getPool());
+        viewHolderPrewarmer.prewarm(recyclerView, adapter, ReadingListAdapter.VIEW_TYPE, PREWARMED_CELLS);
 
-        // Initialize Firebase Firestore and get the current user
-        db = FirebaseFirestore.getInstance();
-        user = FirebaseAuth.getInstance().getCurrentUser();
+        // Share the lists already loaded for the logged-in user
+        session = UserSession.get();
 
         // Back button functionality to return to the previous screen
         backButton.setOnClickListener(v -> finish());
@@ -84,50 +94,87 @@ public class ReadingListPage extends AppCompatActivity {
         });
 
         // If user is not logged in, show a message and do not load books
-        if (user == null) {
+        if (!session.isLoggedIn()) {
             showToast("You must be logged in to see your reading list.");
             emptyMessage.setVisibility(View.VISIBLE);
         } else {
+            // Show the reading list as last loaded while it is read again
+            List<Book> saved = session.getSavedBooks(ListWriteQueue.UserList.READING_LIST);
+            if (saved != null) {
+                readingList.addAll(saved);
+                filterReadingList("");
+            }
             loadReadingList(); // Load the reading list from Firestore
+            if (pager != null) {
+                pager.loadMoreWhenNearEnd(recyclerView); // Next page when scrolled near the end
+            }
         }
     }
 
     /**
      * Loads the user's reading list from Firestore and updates the UI in real-time.
-     * If there are changes in Firestore, the list updates dynamically.
+     * The locally cached copy is shown first, then the list follows the server as it changes.
      */
-    @SuppressLint("NotifyDataSetChanged")
     private void loadReadingList() {
-        listenerRegistration = db.collection("users")
-                .document(user.getUid())
-                .collection("reading_list")
-                .addSnapshotListener((value, error) -> {
-                    if (error != null) {
-                        showToast("Error loading reading list.");
-                        return;
-                    }
-
-                    readingList.clear(); // Clear the previous list before updating
-
-                    if (value != null && !value.isEmpty()) {
-                        for (DocumentSnapshot doc : value.getDocuments()) {
-                            Book book = doc.toObject(Book.class);
+        pager = session.getFirestoreHelper().watchList(ListWriteQueue.UserList.READING_LIST,
+                new FirestoreHelper.ListWatcher() {
+                    @Override
+                    public void onDocuments(List<DocumentSnapshot> documents) {
+                        readingList.clear(); // Clear the previous list before updating
+                        for (DocumentSnapshot doc : documents) {
+                            // Share the complete book if it is already in memory
+                            Book book = BookRegistry.getInstance().get(doc.getId());
+                            if (book == null) {
+                                book = doc.toObject(Book.class);
+                            }
                             if (book != null) {
                                 readingList.add(book);
                             }
                         }
+                        session.putSavedBooks(ListWriteQueue.UserList.READING_LIST, readingList);
+                        // Apply the search filter after loading the list
+                        filterReadingList(searchBar.getText().toString());
+                        hydrateReadingList();
+                    }
+
+                    @Override
+                    public void onFreshness(boolean fromCache) {
+                        syncStatus.setVisibility(fromCache ? View.VISIBLE : View.GONE);
+                    }
+
+                    @Override
+                    public void onError() {
+                        showToast("Error loading reading list.");
                     }
-                    // Apply the search filter after loading the list
-                    filterReadingList(searchBar.getText().toString());
                 });
     }
 
+    /**
+     * Looks up the full details of the saved books, which only hold an ID, title and cover,
+     * so opening one shows a complete details screen. A newer snapshot restarts the lookup,
+     * books that were already looked up come from the cache.
+     */
+    private void hydrateReadingList() {
+        if (hydration != null) {
+            hydration.cancel();
+        }
+        hydration = VolumeRepository.getInstance().hydrateAll(readingList, VolumeRepository.DEFAULT_MAX_CONCURRENT,
+                complete -> {
+                    for (int i = 0; i < readingList.size(); i++) {
+                        Book saved = readingList.get(i);
+                        if (complete.getBookId().equals(saved.getBookId()) && complete.getImageUrl() != null) {
+                            readingList.set(i, complete);
+                        }
+                    }
+                },
+                () -> filterReadingList(searchBar.getText().toString()));
+    }
+
     /**
      * Filters the reading list based on the user's search query and updates the RecyclerView.
      *
      * @param query The search text entered by the user.
      */
-    @SuppressLint("NotifyDataSetChanged")
     private void filterReadingList(String query) {
         List<Book> filteredList;
 
@@ -155,9 +202,13 @@ public class ReadingListPage extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (listenerRegistration != null) {
-            listenerRegistration.remove();
+        if (pager != null) {
+            pager.remove();
+        }
+        if (hydration != null) {
+            hydration.cancel();
         }
+        viewHolderPrewarmer.cancel();
     }
 
     /**
@@ -1,22 +1,26 @@
 package com.lujsom.booknest;
 
-import android.annotation.SuppressLint;
 import android.os.Bundle;
 import android.text.TextUtils;
+import android.view.View;
+import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.RatingBar;
+import android.widget.Spinner;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.*;
 import com.lujsom.booknest.adapters.ReviewAdapter;
 import com.lujsom.booknest.models.Review;
-import java.util.ArrayList;
+import com.lujsom.booknest.utils.ReviewFeed;
+import com.lujsom.booknest.utils.UserSession;
+import com.lujsom.booknest.utils.ViewHolderPrewarmer;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -24,19 +28,22 @@ import java.util.Map;
 /**
  * ReviewPage allows users to submit and view book reviews.
  * Users can enter a review, provide a rating, and submit it to Firestore.
- * Reviews are displayed in real-time using Firebase Firestore's snapshot listener.
+ * Reviews are shown a page at a time in the chosen order; the first page updates in real-time.
  */
 public class ReviewPage extends AppCompatActivity {
 
     private EditText reviewInput;
     private RatingBar ratingBar;
     private ReviewAdapter reviewAdapter;
-    private List<Review> reviewData;
     private FirebaseFirestore db;
-    private FirebaseAuth auth;
+    private UserSession session;
     private String bookId;
-    private String username = "Unknown User";
-    private ListenerRegistration listenerRegistration;
+    private ReviewFeed reviewFeed;
+    private ReviewFeed.SortMode sortMode;
+    private final ViewHolderPrewarmer viewHolderPrewarmer = new ViewHolderPrewarmer(); // Inflates review items while idle
+
+    // Reviews visible at once, inflated while they load
+    private static final int PREWARMED_REVIEWS = 4;
 
     /**
      * Called when the activity is first created.
@@ -50,9 +57,9 @@ public class ReviewPage extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_review_page);
 
-        // Initialize Firebase instances
+        // Initialize Firebase and the logged-in user's session
         db = FirebaseFirestore.getInstance();
-        auth = FirebaseAuth.getInstance();
+        session = UserSession.get();
         bookId = getIntent().getStringExtra("book_id"); // Get the book ID from the intent
 
 
@@ -62,65 +69,81 @@ public class ReviewPage extends AppCompatActivity {
         Button submitReview = findViewById(R.id.submit_review);
         RecyclerView reviewsList = findViewById(R.id.reviews_list);
 
-        // Initialize review list and set up RecyclerView
-        reviewData = new ArrayList<>();
-        reviewAdapter = new ReviewAdapter(this, reviewData, bookId);
-        reviewsList.setLayoutManager(new LinearLayoutManager(this));
+        // Set up the RecyclerView, which loads older reviews when scrolled near the end
+        reviewAdapter = new ReviewAdapter(this, bookId);
+        reviewAdapter.setOnReviewDeleted(review -> reviewFeed.forget(review.getReviewId()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        reviewsList.setLayoutManager(layoutManager);
+        reviewsList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= layoutManager.getItemCount() - ReviewFeed.PREFETCH_DISTANCE) {
+                    reviewFeed.loadMore();
+                }
+            }
+        });
         reviewsList.setAdapter(reviewAdapter);
+        reviewsList.setRecycledViewPool(viewHolderPrewarmer.getPool());
+        viewHolderPrewarmer.prewarm(reviewsList, reviewAdapter, ReviewAdapter.VIEW_TYPE, PREWARMED_REVIEWS);
 
         // Back button to return to the previous screen
         ImageButton backButton = findViewById(R.id.back);
         backButton.setOnClickListener(v -> finish());
 
-        // Load user's username and reviews
-        loadUserName();
-        loadReviews();
+        // Start loading the username, if it is not cached yet, and the reviews
+        session.getProfileCache().start();
+        loadReviews(ReviewFeed.SortMode.NEWEST);
+        setupSortModes();
 
         // Set up the submit review button
         submitReview.setOnClickListener(v -> submitReview());
     }
 
     /**
-     * Loads the username of the currently logged-in user from Firestore.
+     * Lets the user choose the order of the reviews. The choices follow {@link ReviewFeed.SortMode}.
      */
-    private void loadUserName() {
-        FirebaseUser user = auth.getCurrentUser();
-        if (user == null) return; // No user is logged in
-
-        db.collection("users").document(user.getUid())
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        username = documentSnapshot.getString("username"); // Retrieve the username
-                    }
-                });
+    private void setupSortModes() {
+        Spinner sortSpinner = findViewById(R.id.review_sort);
+        sortSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                loadReviews(ReviewFeed.SortMode.values()[position]);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
     }
 
     /**
-     * Loads reviews for the selected book from Firestore in real-time.
-     * Reviews are ordered by timestamp in descending order.
+     * Loads reviews for the selected book from Firestore, sorted on the server.
+     * The first page updates in real-time, older pages are loaded when the user scrolls down.
+     *
+     * @param mode The order of the reviews. Choosing the current order again does nothing.
      */
-    @SuppressLint("NotifyDataSetChanged")
-    private void loadReviews() {
-        listenerRegistration = db.collection("books").document(bookId).collection("reviews")
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .addSnapshotListener((querySnapshot, e) -> {
-                    if (e != null) {
-                        showToast("Error loading reviews");
-                        return;
+    private void loadReviews(ReviewFeed.SortMode mode) {
+        if (mode == sortMode) {
+            return;
+        }
+        if (reviewFeed != null) {
+            reviewFeed.stop();
+            reviewAdapter.updateList(Collections.emptyList()); // Reviews of another order are not mixed in
+        }
+        sortMode = mode;
+        reviewFeed = new ReviewFeed(db.collection("books").document(bookId).collection("reviews"),
+                mode, ReviewFeed.DEFAULT_PAGE_SIZE, new ReviewFeed.Listener() {
+                    @Override
+                    public void onReviews(List<Review> reviews) {
+                        reviewAdapter.updateList(reviews); // Only new, edited and removed reviews are rebound
                     }
-                    reviewData.clear(); // Clear the list before adding new reviews
-
-                    if (querySnapshot != null) {
-                        for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                            Review review = doc.toObject(Review.class);
-                            if (review != null) {
-                                reviewData.add(review);
-                            }
-                        }
+
+                    @Override
+                    public void onError() {
+                        showToast("Error loading reviews");
                     }
-                    reviewAdapter.notifyDataSetChanged(); // Refresh the RecyclerView
                 });
+        reviewFeed.start();
     }
 
     /**
@@ -129,9 +152,9 @@ public class ReviewPage extends AppCompatActivity {
      */
     private void submitReview() {
         // Ensure the username is loaded before submitting a review
-        if (TextUtils.isEmpty(username) || username.equals("Unknown User")) {
+        String username = session.getProfileCache().getUserName();
+        if (session.isLoggedIn() && TextUtils.isEmpty(username)) {
             showToast("Loading username, please try again");
-            loadUserName();
             return;
         }
 
@@ -143,15 +166,15 @@ public class ReviewPage extends AppCompatActivity {
             return;
         }
 
-        FirebaseUser user = auth.getCurrentUser();
-        if (user == null) {
+        String userId = session.getUserId();
+        if (userId == null) {
             showToast("You must be logged in to submit a review");
             return;
         }
 
         // Create a new review object
         Map<String, Object> review = new HashMap<>();
-        review.put("userId", user.getUid());
+        review.put("userId", userId);
         review.put("username", username);
         review.put("text", reviewText);
         review.put("rating", rating);
@@ -172,14 +195,15 @@ public class ReviewPage extends AppCompatActivity {
 
     /**
      * Cleans up Firestore resources when the activity is destroyed.
-     * Removes the snapshot listener to prevent memory leaks.
+     * Stops the review feed's snapshot listener to prevent memory leaks.
      */
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (listenerRegistration != null) {
-            listenerRegistration.remove();
+        if (reviewFeed != null) {
+            reviewFeed.stop();
         }
+        viewHolderPrewarmer.cancel();
     }
 
     /**
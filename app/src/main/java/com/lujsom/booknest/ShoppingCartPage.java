@@ -1,6 +1,5 @@
 package com.lujsom.booknest;
 
-import android.annotation.SuppressLint;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -12,9 +11,14 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.lujsom.booknest.adapters.ShoppingCartAdapter;
 import com.lujsom.booknest.models.Book;
 import com.lujsom.booknest.utils.FirestoreHelper;
+import com.lujsom.booknest.utils.ListWriteQueue;
+import com.lujsom.booknest.utils.SavedListPager;
+import com.lujsom.booknest.utils.UserSession;
+import com.lujsom.booknest.utils.ViewHolderPrewarmer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,9 +29,17 @@ import java.util.List;
 public class ShoppingCartPage extends AppCompatActivity {
     private ShoppingCartAdapter adapter;
     private List<Book> cartBooks, filteredCartBooks;
+    private UserSession session;
     private FirestoreHelper firestoreHelper;
     private TextView emptyMessage;
+    private TextView syncStatus; // Shown while the cart is not confirmed by the server
+    private EditText searchBar;
+    private SavedListPager pager; // Loads the list a page at a time
     private RecyclerView recyclerView;
+    private final ViewHolderPrewarmer viewHolderPrewarmer = new ViewHolderPrewarmer(); // Inflates grid cells while idle
+
+    // Cells of a full screen of the grid, inflated while the cart loads
+    private static final int PREWARMED_CELLS = 6;
 
     /**
      * Called when the activity is created.
@@ -40,19 +52,23 @@ public class ShoppingCartPage extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_shopping_cart_page);
 
-        // Initialize FirestoreHelper instance
-        firestoreHelper = new FirestoreHelper();
+        // Use the helper of the logged-in user's session
+        session = UserSession.get();
+        firestoreHelper = session.getFirestoreHelper();
 
         // Set up UI component
         recyclerView = findViewById(R.id.shopping_cart_recycler);
-        EditText searchBar = findViewById(R.id.search_bar);
+        searchBar = findViewById(R.id.search_bar);
+        syncStatus = findViewById(R.id.sync_status);
         emptyMessage = findViewById(R.id.empty_message);
         recyclerView.setLayoutManager(new GridLayoutManager(this, 2));
 
         cartBooks = new ArrayList<>();
         filteredCartBooks = new ArrayList<>();
-        adapter = new ShoppingCartAdapter(this, cartBooks, firestoreHelper);
+        adapter = new ShoppingCartAdapter(this, firestoreHelper);
         recyclerView.setAdapter(adapter);
+        recyclerView.setRecycledViewPool(viewHolderPrewarmer.getPool());
+        viewHolderPrewarmer.prewarm(recyclerView, adapter, ShoppingCartAdapter.VIEW_TYPE, PREWARMED_CELLS);
 
         // Back button to return to the previous screen
         ImageButton backButton = findViewById(R.id.back_button);
@@ -74,28 +90,47 @@ public class ShoppingCartPage extends AppCompatActivity {
 
         // Load books from Firestore shopping cart
         loadShoppingCart();
+        if (pager != null) {
+            pager.loadMoreWhenNearEnd(recyclerView); // Next page when scrolled near the end
+        }
     }
 
     /**
-     * Loads the user's shopping cart from Firestore.
+     * Loads the user's shopping cart from Firestore, showing the locally cached copy first.
      * Updates the UI to show the cart's contents or display a message if it's empty.
      */
-    @SuppressLint("NotifyDataSetChanged")
     private void loadShoppingCart() {
-        firestoreHelper.getShoppingCart(cartBooks -> {
-            this.cartBooks.clear();
-            this.cartBooks.addAll(cartBooks);
-            adapter.notifyDataSetChanged();
-
-            // Show or hide the empty message based on cart contents
-            if (cartBooks.isEmpty()) {
-                emptyMessage.setVisibility(View.VISIBLE);
-                recyclerView.setVisibility(View.GONE);
-            } else {
-                emptyMessage.setVisibility(View.GONE);
-                recyclerView.setVisibility(View.VISIBLE);
+        // Show the cart as last loaded while it is read again
+        List<Book> saved = session.getSavedBooks(ListWriteQueue.UserList.SHOPPING_CART);
+        if (saved != null) {
+            cartBooks.addAll(saved);
+            adapter.updateList(cartBooks);
+        }
+        pager = firestoreHelper.watchList(ListWriteQueue.UserList.SHOPPING_CART, new FirestoreHelper.ListWatcher() {
+            @Override
+            public void onDocuments(List<DocumentSnapshot> documents) {
+                cartBooks.clear();
+                for (DocumentSnapshot document : documents) {
+                    Book book = document.toObject(Book.class);
+                    if (book != null) {
+                        cartBooks.add(book);
+                    }
+                }
+                session.putSavedBooks(ListWriteQueue.UserList.SHOPPING_CART, cartBooks);
+                // Keep the search filter, which also shows or hides the empty message
+                filterShoppingCart(searchBar.getText().toString());
+            }
+
+            @Override
+            public void onFreshness(boolean fromCache) {
+                syncStatus.setVisibility(fromCache ? View.VISIBLE : View.GONE);
+            }
+
+            @Override
+            public void onError() {
+                showToast();
             }
-        }, this::showToast);
+        });
     }
 
     /**
@@ -104,7 +139,6 @@ public class ShoppingCartPage extends AppCompatActivity {
      *
      * @param query The search text entered by the user.
      */
-    @SuppressLint("NotifyDataSetChanged")
     private void filterShoppingCart(String query) {
         query = query.trim().toLowerCase();
         filteredCartBooks.clear();
@@ -133,6 +167,18 @@ public class ShoppingCartPage extends AppCompatActivity {
         }
     }
 
+    /**
+     * Stops listening to the cart and inflating cells when the screen is closed.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (pager != null) {
+            pager.remove();
+        }
+        viewHolderPrewarmer.cancel();
+    }
+
     /**
      * Displays a toast message when an error occurs.
      */
@@ -3,40 +3,89 @@ package com.lujsom.booknest.adapters;
 import static android.content.ContentValues.TAG;
 
 import android.content.Context;
-import android.content.Intent;
-import android.os.Bundle;
 import android.util.Log;
+import android.annotation.SuppressLint;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.ImageView;
-import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import com.lujsom.booknest.BookDetails;
 import com.lujsom.booknest.R;
 import com.lujsom.booknest.models.Book;
+import com.lujsom.booknest.utils.DetailsPrefetcher;
+import com.lujsom.booknest.utils.TextPrecomputer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * BookAdapter is a RecyclerView adapter responsible for displaying a list of books.
  * Each book is represented with an image, title, and a details button.
+ * New lists are compared with the shown one on a background thread, so only changed rows are rebound,
+ * and their titles are laid out in the background before the rows are bound.
+ * Books in the user's favorites or cart are badged once their membership is merged in.
  */
-public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder> {
+public class BookAdapter extends ListAdapter<Book, BookAdapter.BookViewHolder> {
+    // Item view type, unique per layout so lists of a screen can share prewarmed views
+    public static final int VIEW_TYPE = R.layout.item_book;
+
+    // How long the list must stay still before the details of the items in its middle are prefetched
+    private static final long DWELL_HINT_MS = 1500;
+    // Rebinds only the badges of a row
+    private static final Object PAYLOAD_BADGES = new Object();
+
     private final Context context;
-    private final List<Book> bookList;
+    private final DetailsPrefetcher detailsPrefetcher;
+    private final StableIds stableIds = new StableIds();
+    private final TextPrecomputer textPrecomputer = TextPrecomputer.getInstance();
+    private PrecomputedTextCompat.Params titleParams; // Style of the title views, known once one is created
+    private final Map<String, DetailsPrefetcher.Membership> memberships = new HashMap<>(); // Badges by book ID
+    private final Runnable dwellHint = this::hintCentralBooks;
+    private RecyclerView recyclerView; // The list showing the books, while attached
 
     /**
-     * Constructor for the BookAdapter.
+     * Constructor for the BookAdapter. Books are shown with {@link #submitList}.
      *
      * @param context The application or activity context.
-     * @param bookList A list of Book objects to display.
      */
-    public BookAdapter(Context context, List<Book> bookList) {
+    public BookAdapter(Context context) {
+        super(BookItemCallback.INSTANCE);
         this.context = context;
-        this.bookList = bookList;
+        this.detailsPrefetcher = DetailsPrefetcher.getInstance(context);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Returns the stable ID of the book at a position, derived from its book ID.
+     *
+     * @param position The position of the item in the list.
+     * @return The item's stable ID.
+     */
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idOf(BookItemCallback.keyOf(getItem(position)));
+    }
+
+    /**
+     * Returns the view type of every book row.
+     *
+     * @param position The position of the item in the list.
+     * @return The item layout of this adapter.
+     */
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE;
     }
 
     /**
@@ -51,7 +100,36 @@ public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder
     public BookViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         // Inflate the item layout (item_book.xml) and create a new ViewHolder
         View view = LayoutInflater.from(context).inflate(R.layout.item_book, parent, false);
-        return new BookViewHolder(view);
+        BookViewHolder holder = new BookViewHolder(view);
+        if (titleParams == null) {
+            titleParams = TextViewCompat.getTextMetricsParams(holder.bookTitle);
+            prepareTitles(getCurrentList());
+        }
+        return holder;
+    }
+
+    /**
+     * Starts laying out the titles of a new list before its rows are bound.
+     *
+     * @param previousList The list shown before.
+     * @param currentList  The list shown now.
+     */
+    @Override
+    public void onCurrentListChanged(@NonNull List<Book> previousList, @NonNull List<Book> currentList) {
+        prepareTitles(currentList);
+    }
+
+    private void prepareTitles(List<Book> books) {
+        if (titleParams == null) {
+            return; // No view created yet, the titles are prepared with the first one
+        }
+        for (Book book : books) {
+            textPrecomputer.prepareTitle(book.getBookId(), titleText(book), titleParams);
+        }
+    }
+
+    private static String titleText(Book book) {
+        return book.getTitle() != null ? book.getTitle() : "Unknown Title";
     }
 
     /**
@@ -60,12 +138,15 @@ public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder
      * @param holder The ViewHolder to bind data to.
      * @param position The position of the item in the list.
      */
+    @SuppressLint("ClickableViewAccessibility")
     @Override
     public void onBindViewHolder(@NonNull BookViewHolder holder, int position) {
-        Book book = bookList.get(position);
+        Book book = getItem(position);
+        holder.book = book;
 
-        // Set book title, fallback to "Unknown Title" if null
-        holder.bookTitle.setText(book.getTitle());
+        // Set book title, fallback to "Unknown Title" if null. It was laid out in the background
+        // and is only waited for when the row is measured.
+        holder.bookTitle.setTextFuture(textPrecomputer.prepareTitle(book.getBookId(), titleText(book), titleParams));
 
         // Load book image using Glide, with error and placeholder handling
         Glide.with(context)
@@ -78,55 +159,175 @@ public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder
         // Set click listeners to open book details
         holder.itemView.setOnClickListener(v -> openBookDetails(book));
         holder.detailsButton.setOnClickListener(v -> openBookDetails(book));
+
+        // A finger on the item is a strong sign it will be opened, start loading its details
+        View.OnTouchListener touchHint = (v, event) -> {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                detailsPrefetcher.hint(book);
+            } else if (event.getActionMasked() == MotionEvent.ACTION_CANCEL) {
+                detailsPrefetcher.cancelHint(book.getBookId()); // The touch became a scroll
+            }
+            return false; // Let the click go through
+        };
+        holder.itemView.setOnTouchListener(touchHint);
+        holder.detailsButton.setOnTouchListener(touchHint);
+
+        bindBadges(holder, book);
     }
 
     /**
-     * Opens the BookDetails activity with the selected book's data.
+     * Binds only the badges of a row when its membership changed, keeping its cover and title.
      *
-     * @param book The selected book object.
+     * @param holder   The ViewHolder to bind data to.
+     * @param position The position of the item in the list.
+     * @param payloads The partial updates, or empty for a full bind.
      */
-    private void openBookDetails(Book book) {
-        if (book == null) {
-            Log.e(TAG, "Book is null");
-            return;
+    @Override
+    public void onBindViewHolder(@NonNull BookViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && allBadges(payloads)) {
+            bindBadges(holder, getItem(position));
+        } else {
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+
+    private static boolean allBadges(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_BADGES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void bindBadges(BookViewHolder holder, Book book) {
+        DetailsPrefetcher.Membership membership = memberships.get(book.getBookId());
+        holder.badgeFavorite.setVisibility(membership != null && membership.favorite ? View.VISIBLE : View.GONE);
+        holder.badgeCart.setVisibility(membership != null && membership.inCart ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Merges the membership of some books into the badges, in one pass over the shown rows.
+     * Only rows whose badges change are rebound, without reloading their covers.
+     *
+     * @param update The membership of the books, by ID.
+     */
+    public void mergeMemberships(Map<String, DetailsPrefetcher.Membership> update) {
+        List<Book> books = getCurrentList();
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < books.size(); i++) {
+            String id = books.get(i).getBookId();
+            DetailsPrefetcher.Membership next = update.get(id);
+            DetailsPrefetcher.Membership previous = memberships.get(id);
+            if (next != null && (previous == null
+                    ? next.favorite || next.inCart
+                    : previous.favorite != next.favorite || previous.inCart != next.inCart)) {
+                changed.add(i);
+            }
         }
-        Intent intent = new Intent(context, BookDetails.class);
-        Bundle bundle = new Bundle();
-
-        // Add book details to the intent
-        bundle.putString("book_id", book.getBookId());
-        bundle.putString("book_title", book.getTitle());
-        bundle.putString("book_image", book.getImageUrl() != null && !book.getImageUrl().trim().isEmpty()
-                ? book.getImageUrl()
-                : null);
-        bundle.putString("book_description", book.getDescription());
-        bundle.putString("book_author", book.getAuthor());
-        bundle.putString("book_genre", book.getGenre());
-        bundle.putString("book_rating", book.getRating());
-        bundle.putString("book_published_year", book.getPublishedYear());
-        intent.putExtras(bundle);
-        context.startActivity(intent);
+        memberships.putAll(update);
+        for (int position : changed) {
+            notifyItemChanged(position, PAYLOAD_BADGES);
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        recyclerView.removeCallbacks(dwellHint);
+        this.recyclerView = null;
     }
 
     /**
-     * Returns the total number of books in the list.
+     * Restarts the dwell timer, since the list is still moving.
      *
-     * @return The size of the book list.
+     * @param holder The ViewHolder that became visible.
      */
     @Override
-    public int getItemCount() {
-        // Return the total number of books in the list
-        return bookList != null ? bookList.size() : 0;
+    public void onViewAttachedToWindow(@NonNull BookViewHolder holder) {
+        super.onViewAttachedToWindow(holder);
+        restartDwell();
+    }
+
+    /**
+     * Restarts the dwell timer and cancels the hint of a book that scrolled away.
+     *
+     * @param holder The ViewHolder that is no longer visible.
+     */
+    @Override
+    public void onViewDetachedFromWindow(@NonNull BookViewHolder holder) {
+        super.onViewDetachedFromWindow(holder);
+        restartDwell();
+        if (holder.book != null) {
+            detailsPrefetcher.cancelHint(holder.book.getBookId());
+        }
+    }
+
+    private void restartDwell() {
+        if (recyclerView != null) {
+            recyclerView.removeCallbacks(dwellHint);
+            recyclerView.postDelayed(dwellHint, DWELL_HINT_MS);
+        }
+    }
+
+    /**
+     * Prefetches the details of the books nearest the middle of the list, once it stayed still.
+     * Only as many books as the prefetcher runs at the same time are hinted.
+     */
+    private void hintCentralBooks() {
+        if (recyclerView == null) {
+            return;
+        }
+        int centerX = recyclerView.getWidth() / 2;
+        int centerY = recyclerView.getHeight() / 2;
+        List<BookViewHolder> shown = new ArrayList<>();
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            RecyclerView.ViewHolder holder = recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            if (holder instanceof BookViewHolder && ((BookViewHolder) holder).book != null) {
+                shown.add((BookViewHolder) holder);
+            }
+        }
+        // Items cut off at the edges are the furthest from the middle
+        shown.sort(Comparator.comparingInt(holder -> distance(holder.itemView, centerX, centerY)));
+        List<Book> books = new ArrayList<>(DetailsPrefetcher.MAX_PREFETCHES);
+        for (int i = 0; i < shown.size() && i < DetailsPrefetcher.MAX_PREFETCHES; i++) {
+            books.add(shown.get(i).book);
+        }
+        detailsPrefetcher.hintAll(books);
+    }
+
+    private static int distance(View item, int x, int y) {
+        return Math.abs((item.getLeft() + item.getRight()) / 2 - x) + Math.abs((item.getTop() + item.getBottom()) / 2 - y);
     }
 
+    /**
+     * Opens the BookDetails activity with the selected book's data.
+     *
+     * @param book The selected book object.
+     */
+    private void openBookDetails(Book book) {
+        if (book == null) {
+            Log.e(TAG, "Book is null");
+            return;
+        }
+        context.startActivity(BookDetails.createIntent(context, book));
+    }
 
     /**
      * ViewHolder class representing each item in the RecyclerView.
      */
     public static class BookViewHolder extends RecyclerView.ViewHolder {
         ImageView bookImage; // Image of the book
-        TextView bookTitle; // Book title text
+        AppCompatTextView bookTitle; // Book title text, set from precomputed text
         Button detailsButton; // Button to view more details about the book
+        ImageView badgeFavorite, badgeCart; // Shown for books in the user's favorites and cart
+        Book book; // The book currently bound
 
         /**
          * Constructor for BookViewHolder.
@@ -139,6 +340,8 @@ public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder
             bookImage = itemView.findViewById(R.id.book_image);
             bookTitle = itemView.findViewById(R.id.book_title);
             detailsButton = itemView.findViewById(R.id.details_button);
+            badgeFavorite = itemView.findViewById(R.id.badge_favorite);
+            badgeCart = itemView.findViewById(R.id.badge_cart);
         }
     }
 }
\ No newline at end of file
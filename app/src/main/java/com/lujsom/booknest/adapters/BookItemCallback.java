@@ -0,0 +1,40 @@
+package com.lujsom.booknest.adapters;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import com.lujsom.booknest.models.Book;
+import java.util.Objects;
+
+/**
+ * BookItemCallback tells the book adapters which rows of a new list are the same books as before
+ * and which of them changed. Books are matched by their ID, so a refreshed list only rebinds the
+ * rows whose content changed and leaves the other covers alone.
+ */
+class BookItemCallback extends DiffUtil.ItemCallback<Book> {
+
+    static final BookItemCallback INSTANCE = new BookItemCallback();
+
+    private BookItemCallback() {
+        // Stateless, shared by every adapter
+    }
+
+    @Override
+    public boolean areItemsTheSame(@NonNull Book oldItem, @NonNull Book newItem) {
+        return Objects.equals(keyOf(oldItem), keyOf(newItem));
+    }
+
+    @Override
+    public boolean areContentsTheSame(@NonNull Book oldItem, @NonNull Book newItem) {
+        return oldItem == newItem || oldItem.hasSameContent(newItem); // Shared instances skip the field checks
+    }
+
+    /**
+     * Returns the key that identifies a book across lists, see {@link Book#keyOf(Book)}.
+     *
+     * @param book The book.
+     * @return The book's key.
+     */
+    static String keyOf(Book book) {
+        return Book.keyOf(book);
+    }
+}
@@ -1,10 +1,6 @@
 package com.lujsom.booknest.adapters;
 
-import static android.content.ContentValues.TAG;
-
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,33 +8,65 @@ import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
+import com.lujsom.booknest.BookDetails;
 import com.lujsom.booknest.R;
+import com.lujsom.booknest.api.VolumeRepository;
 import com.lujsom.booknest.models.Book;
 import com.lujsom.booknest.utils.FirestoreHelper;
+import com.lujsom.booknest.utils.UserSession;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * FavoriteAdapter is a RecyclerView adapter for displaying a list of favorite books.
  * It allows users to view and remove books from their favorites.
+ * Updated lists are diffed against the shown one on a background thread, so only changed rows are rebound.
  */
-public class FavoriteAdapter extends RecyclerView.Adapter<FavoriteAdapter.ViewHolder> {
+public class FavoriteAdapter extends ListAdapter<Book, FavoriteAdapter.ViewHolder> {
+    // Item view type, unique per layout so lists of a screen can share prewarmed views
+    public static final int VIEW_TYPE = R.layout.item_favorite_book;
+
     private final Context context;
-    private List<Book> favoriteBooks;
     private final FirestoreHelper firestoreHelper;
+    private final StableIds stableIds = new StableIds();
 
     /**
-     * Constructor: Initializes the adapter with the application context and a list of favorite books.
-     * It also creates an instance of FirestoreHelper to handle database operations.
+     * Constructor: Initializes the adapter with the application context.
+     * Database operations go through the FirestoreHelper of the user's session.
+     * Books are shown with {@link #updateList}.
      *
      * @param context       The application or activity context.
-     * @param favoriteBooks A list of books marked as favorites.
      */
-    public FavoriteAdapter(Context context, List<Book> favoriteBooks) {
+    public FavoriteAdapter(Context context) {
+        super(BookItemCallback.INSTANCE);
         this.context = context;
-        this.favoriteBooks = favoriteBooks;
-        this.firestoreHelper = new FirestoreHelper();
+        this.firestoreHelper = UserSession.get().getFirestoreHelper();
+        setHasStableIds(true);
+    }
+
+    /**
+     * Returns the stable ID of the book at a position, derived from its book ID.
+     *
+     * @param position The position of the item in the list.
+     * @return The item's stable ID.
+     */
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idOf(BookItemCallback.keyOf(getItem(position)));
+    }
+
+    /**
+     * Returns the view type of every book row.
+     *
+     * @param position The position of the item in the list.
+     * @return The item layout of this adapter.
+     */
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE;
     }
 
     /**
@@ -62,15 +90,10 @@ public class FavoriteAdapter extends RecyclerView.Adapter<FavoriteAdapter.ViewHo
      * @param holder   The ViewHolder to bind data to.
      * @param position The position of the item in the list.
      */
-    @SuppressLint("NotifyDataSetChanged")
     @Override
     //Populates the view components (title and image) with book details.
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        if (favoriteBooks == null || position >= favoriteBooks.size()) {
-            Log.e(TAG, "Invalid favorite book list or position");
-            return;
-        }
-        Book book = favoriteBooks.get(position);
+        Book book = getItem(position);
 
         // Set book title, fallback to "Unknown Title" if null
         holder.bookTitle.setText(book.getTitle() != null ? book.getTitle() : "Unknown Title");
@@ -83,32 +106,37 @@ public class FavoriteAdapter extends RecyclerView.Adapter<FavoriteAdapter.ViewHo
                 .into(holder.bookImage);
 
         // Remove book from favorites when the remove button is clicked
-        holder.buttonRemove.setOnClickListener(v -> removeBookFromFavorites(position, book.getBookId()));
+        holder.buttonRemove.setOnClickListener(v -> removeBookFromFavorites(book));
+        holder.itemView.setOnClickListener(v -> openBookDetails(book));
     }
 
     /**
-     * Removes a book from the user's favorite list in Firestore and updates the UI.
+     * Opens the BookDetails activity for a favorite book.
      *
-     * @param position The position of the book in the list.
-     * @param bookId   The unique identifier of the book.
+     * @param book The selected book object.
      */
-    private void removeBookFromFavorites(int position, String bookId) {
-        firestoreHelper.removeBookFromFavorites(bookId, success -> {
-            if (success) {
-                favoriteBooks.remove(position);
-                notifyItemRemoved(position);
-            }
-        });
+    private void openBookDetails(Book book) {
+        // A book completed by the page's hydration opens fully populated
+        Book complete = VolumeRepository.getInstance().getCached(book.getBookId());
+        context.startActivity(complete != null
+                ? BookDetails.createIntent(context, complete)
+                : BookDetails.createIntent(context, book.getBookId(), book.getTitle(), book.getImageUrl()));
     }
 
     /**
-     * Returns the total number of books in the list.
+     * Removes a book from the user's favorite list in Firestore and updates the UI.
      *
-     * @return The size of the favoriteBooks list.
+     * @param book The book to remove.
      */
-    @Override
-    public int getItemCount() {
-        return favoriteBooks.size();
+    private void removeBookFromFavorites(Book book) {
+        firestoreHelper.removeBookFromFavorites(book.getBookId(), success -> {
+            if (success) {
+                // The list may have changed since the row was bound, so the book is looked up again
+                List<Book> remaining = new ArrayList<>(getCurrentList());
+                remaining.removeIf(b -> BookItemCallback.keyOf(b).equals(BookItemCallback.keyOf(book)));
+                submitList(remaining);
+            }
+        });
     }
 
     /**
@@ -134,13 +162,11 @@ public class FavoriteAdapter extends RecyclerView.Adapter<FavoriteAdapter.ViewHo
     }
 
     /**
-     * Updates the list of favorite books and refreshes the UI.
+     * Updates the list of favorite books. Only the rows that changed are refreshed.
      *
      * @param newList The updated list of favorite books.
      */
-    @SuppressLint("NotifyDataSetChanged")
     public void updateList(List<Book> newList) {
-        this.favoriteBooks = newList;
-        notifyDataSetChanged();
+        submitList(new ArrayList<>(newList));
     }
 }
\ No newline at end of file
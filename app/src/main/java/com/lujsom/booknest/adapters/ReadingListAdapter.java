@@ -2,7 +2,6 @@ package com.lujsom.booknest.adapters;
 
 import static android.content.ContentValues.TAG;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
@@ -16,44 +15,69 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
 import com.lujsom.booknest.BookDetails;
 import com.lujsom.booknest.R;
+import com.lujsom.booknest.api.VolumeRepository;
 import com.lujsom.booknest.models.Book;
+import com.lujsom.booknest.utils.UserSession;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * ReadingListAdapter is a RecyclerView adapter for displaying a list of books in the user's reading list.
  * It allows users to view book details, start reading, or remove books from the list.
+ * Updated lists are diffed against the shown one on a background thread, so only changed rows are rebound.
  */
-public class ReadingListAdapter extends RecyclerView.Adapter<ReadingListAdapter.ViewHolder> {
+public class ReadingListAdapter extends ListAdapter<Book, ReadingListAdapter.ViewHolder> {
+    // Item view type, unique per layout so lists of a screen can share prewarmed views
+    public static final int VIEW_TYPE = R.layout.item_reading_list;
 
     private final Context context;
-    private List<Book> bookList;
+    private final StableIds stableIds = new StableIds();
 
     /**
-     * Constructor: Initializes the adapter with the application context and a list of books.
+     * Constructor: Initializes the adapter with the application context. Books are shown with {@link #updateList}.
      *
      * @param context  The application or activity context.
-     * @param bookList A list of books in the reading list.
      */
-    public ReadingListAdapter(Context context, List<Book> bookList) {
+    public ReadingListAdapter(Context context) {
+        super(BookItemCallback.INSTANCE);
         this.context = context;
-        this.bookList = bookList;
+        setHasStableIds(true);
     }
 
     /**
-     * Updates the list of books in the reading list and refreshes the UI.
+     * Updates the list of books in the reading list. Only the rows that changed are refreshed.
      *
      * @param newList The updated list of books.
      */
-    @SuppressLint("NotifyDataSetChanged")
     public void updateList(List<Book> newList) {
-        this.bookList = newList;
-        notifyDataSetChanged();
+        submitList(new ArrayList<>(newList));
+    }
+
+    /**
+     * Returns the stable ID of the book at a position, derived from its book ID.
+     *
+     * @param position The position of the item in the list.
+     * @return The item's stable ID.
+     */
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idOf(BookItemCallback.keyOf(getItem(position)));
+    }
+
+    /**
+     * Returns the view type of every book row.
+     *
+     * @param position The position of the item in the list.
+     * @return The item layout of this adapter.
+     */
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE;
     }
 
     /**
@@ -78,11 +102,7 @@ public class ReadingListAdapter extends RecyclerView.Adapter<ReadingListAdapter.
      */
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        if (bookList == null || position >= bookList.size()) {
-            Log.e(TAG, "Invalid book list or position");
-            return;
-        }
-        Book book = bookList.get(position);
+        Book book = getItem(position);
 
         // Set book title, fallback to "Unknown Title" if null
         holder.bookTitle.setText(book.getTitle() != null ? book.getTitle() : "Unknown Title");
@@ -96,7 +116,7 @@ public class ReadingListAdapter extends RecyclerView.Adapter<ReadingListAdapter.
 
         // Set click listeners for viewing details, removing from the list, and starting to read
         holder.itemView.setOnClickListener(v -> openBookDetails(book));
-        holder.removeButton.setOnClickListener(v -> removeBookFromReadingList(position, book.getBookId()));
+        holder.removeButton.setOnClickListener(v -> removeBookFromReadingList(book));
         holder.startReadingButton.setOnClickListener(v -> startReading(book));
     }
 
@@ -110,36 +130,29 @@ public class ReadingListAdapter extends RecyclerView.Adapter<ReadingListAdapter.
             Log.e(TAG, "Book object is null");
             return;
         }
-        Intent intent = new Intent(context, BookDetails.class);
-        intent.putExtra("book_id", book.getBookId());
-        intent.putExtra("book_title", book.getTitle());
-        context.startActivity(intent);
+        // A book completed by the page's hydration opens fully populated
+        Book complete = VolumeRepository.getInstance().getCached(book.getBookId());
+        context.startActivity(complete != null
+                ? BookDetails.createIntent(context, complete)
+                : BookDetails.createIntent(context, book.getBookId(), book.getTitle(), book.getImageUrl()));
     }
 
     /**
      * Removes a book from the user's reading list in Firestore and updates the UI.
      *
-     * @param position The position of the book in the list.
-     * @param bookId   The unique identifier of the book.
+     * @param book The book to remove.
      */
-    private void removeBookFromReadingList(int position, String bookId) {
+    private void removeBookFromReadingList(Book book) {
+        String bookId = book.getBookId();
         if (bookId == null || bookId.trim().isEmpty()) {
             Log.e(TAG, "Invalid bookId for removal");
             return;
         }
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-        String userId = FirebaseAuth.getInstance().getUid();
-        if (userId == null) {
-            Log.e(TAG, "User ID is null, cannot remove book");
-            return;
-        }
-
-        db.collection("users").document(userId).collection("reading_list").document(bookId)
-                .delete()
-                .addOnSuccessListener(aVoid -> {
-                    bookList.remove(position);
-                    notifyItemRemoved(position);
-                });
+        UserSession.get().getFirestoreHelper().removeBookFromReadingList(bookId, success -> {
+            if (success) {
+                removeFromList(book);
+            }
+        });
     }
 
     /**
@@ -164,13 +177,15 @@ public class ReadingListAdapter extends RecyclerView.Adapter<ReadingListAdapter.
     }
 
     /**
-     * Returns the total number of books in the list.
+     * Removes a book from the shown list. The book is looked up again because the list may
+     * have changed since its row was bound.
      *
-     * @return The size of the bookList.
+     * @param book The removed book.
      */
-    @Override
-    public int getItemCount() {
-        return bookList != null ? bookList.size() : 0;
+    private void removeFromList(Book book) {
+        List<Book> remaining = new ArrayList<>(getCurrentList());
+        remaining.removeIf(b -> BookItemCallback.keyOf(b).equals(BookItemCallback.keyOf(book)));
+        submitList(remaining);
     }
 
     /**
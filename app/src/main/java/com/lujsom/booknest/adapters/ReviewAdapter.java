@@ -1,10 +1,6 @@
 package com.lujsom.booknest.adapters;
 
-import static android.content.ContentValues.TAG;
-
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -13,34 +9,110 @@ import android.widget.RatingBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
-import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.lujsom.booknest.R;
 import com.lujsom.booknest.models.Review;
+import com.lujsom.booknest.utils.UserSession;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * ReviewAdapter is a RecyclerView adapter for displaying user reviews.
  * It allows users to view book reviews and delete their own reviews.
+ * Updated lists are diffed against the shown one on a background thread, so only changed rows are rebound.
  */
-public class ReviewAdapter extends RecyclerView.Adapter<ReviewAdapter.ReviewViewHolder> {
+public class ReviewAdapter extends ListAdapter<Review, ReviewAdapter.ReviewViewHolder> {
+    // Item view type, unique per layout so lists of a screen can share prewarmed views
+    public static final int VIEW_TYPE = R.layout.item_review;
+
+    /**
+     * Matches reviews by their ID and compares the fields shown in a row.
+     */
+    private static final DiffUtil.ItemCallback<Review> DIFF_CALLBACK = new DiffUtil.ItemCallback<Review>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Review oldItem, @NonNull Review newItem) {
+            return keyOf(oldItem).equals(keyOf(newItem));
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Review oldItem, @NonNull Review newItem) {
+            return oldItem.getUserId().equals(newItem.getUserId())
+                    && oldItem.getUsername().equals(newItem.getUsername())
+                    && oldItem.getText().equals(newItem.getText())
+                    && oldItem.getRating() == newItem.getRating();
+        }
+    };
+
     private final Context context;
-    private final List<Review> reviewList;
     private final String bookId;
+    private final StableIds stableIds = new StableIds();
+    private Consumer<Review> onReviewDeleted; // Optional, told after a review was deleted
 
     /**
-     * Constructor: Initializes the adapter with the application context, a list of reviews, and the book ID.
+     * Constructor: Initializes the adapter with the application context and the book ID.
+     * Reviews are shown with {@link #updateList}.
      *
      * @param context    The application or activity context.
-     * @param reviewList A list of reviews for the book.
      * @param bookId     The ID of the book associated with these reviews.
      */
-    public ReviewAdapter(Context context, List<Review> reviewList, String bookId) {
+    public ReviewAdapter(Context context, String bookId) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.reviewList = reviewList;
         this.bookId = bookId;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Sets a callback that runs after the user deleted one of their reviews.
+     *
+     * @param onReviewDeleted The callback, or null.
+     */
+    public void setOnReviewDeleted(Consumer<Review> onReviewDeleted) {
+        this.onReviewDeleted = onReviewDeleted;
+    }
+
+    /**
+     * Updates the list of reviews. Only the rows that changed are refreshed.
+     *
+     * @param newList The updated list of reviews.
+     */
+    public void updateList(List<Review> newList) {
+        submitList(new ArrayList<>(newList));
+    }
+
+    /**
+     * Returns the stable ID of the review at a position, derived from its review ID.
+     *
+     * @param position The position of the item in the list.
+     * @return The item's stable ID.
+     */
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idOf(keyOf(getItem(position)));
+    }
+
+    /**
+     * Returns the view type of every review row.
+     *
+     * @param position The position of the item in the list.
+     * @return The item layout of this adapter.
+     */
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE;
+    }
+
+    /**
+     * Returns the key that identifies a review. A review that was just added has no ID yet
+     * and is identified by its author and text until the ID is written.
+     */
+    private static String keyOf(Review review) {
+        return !review.getReviewId().isEmpty() ? review.getReviewId() : review.getUserId() + "|" + review.getText();
     }
 
     /**
@@ -65,11 +137,7 @@ public class ReviewAdapter extends RecyclerView.Adapter<ReviewAdapter.ReviewView
      */
     @Override
     public void onBindViewHolder(@NonNull ReviewViewHolder holder, int position) {
-        if (reviewList == null || position >= reviewList.size()) {
-            Log.e(TAG, "Invalid review list or position");
-            return;
-        }
-        Review review = reviewList.get(position);
+        Review review = getItem(position);
 
         // Set review data, using fallback values if necessary
         holder.username.setText(review.getUsername());
@@ -77,7 +145,7 @@ public class ReviewAdapter extends RecyclerView.Adapter<ReviewAdapter.ReviewView
         holder.reviewRating.setRating(review.getRating());
 
         // Show delete button only if the logged-in user wrote the review
-        if (Objects.equals(FirebaseAuth.getInstance().getUid(), review.getUserId())) {
+        if (Objects.equals(UserSession.get().getUserId(), review.getUserId())) {
             holder.deleteButton.setVisibility(View.VISIBLE);
             holder.deleteButton.setOnClickListener(v -> deleteReview(review));
         } else {
@@ -90,7 +158,6 @@ public class ReviewAdapter extends RecyclerView.Adapter<ReviewAdapter.ReviewView
      *
      * @param review The review to be deleted.
      */
-    @SuppressLint("NotifyDataSetChanged")
     private void deleteReview(Review review) {
         if (review.getReviewId() == null) {
             Toast.makeText(context, "Cannot delete review without ID", Toast.LENGTH_SHORT).show();
@@ -102,23 +169,17 @@ public class ReviewAdapter extends RecyclerView.Adapter<ReviewAdapter.ReviewView
                 .collection("reviews").document(review.getReviewId())
                 .delete()
                 .addOnSuccessListener(aVoid -> {
-                    reviewList.remove(review);
-                    notifyDataSetChanged();
+                    List<Review> remaining = new ArrayList<>(getCurrentList());
+                    remaining.removeIf(r -> keyOf(r).equals(keyOf(review)));
+                    submitList(remaining);
+                    if (onReviewDeleted != null) {
+                        onReviewDeleted.accept(review);
+                    }
                     Toast.makeText(context, "Review deleted!", Toast.LENGTH_SHORT).show();
                 })
                 .addOnFailureListener(e -> Toast.makeText(context, "Failed to delete review: " + e.getMessage(), Toast.LENGTH_SHORT).show());
     }
 
-    /**
-     * Returns the total number of reviews in the list.
-     *
-     * @return The size of the reviewList.
-     */
-    @Override
-    public int getItemCount() {
-        return reviewList != null ? reviewList.size() : 0;
-    }
-
     /**
      * ViewHolder class representing each item in the RecyclerView.
      * Contains TextView, RatingBar, and ImageButton elements that represent each review.
@@ -1,12 +1,8 @@
 package com.lujsom.booknest.adapters;
 
-import static android.content.ContentValues.TAG;
-
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,6 +12,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
@@ -23,39 +20,65 @@ import com.lujsom.booknest.R;
 import com.lujsom.booknest.models.Book;
 import com.lujsom.booknest.utils.FirestoreHelper;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * ShoppingCartAdapter is a RecyclerView adapter for displaying books in the shopping cart.
  * It allows users to view books, purchase them, or remove them from the cart.
+ * Updated lists are diffed against the shown one on a background thread, so only changed rows are rebound.
  */
-public class ShoppingCartAdapter extends RecyclerView.Adapter<ShoppingCartAdapter.CartViewHolder> {
+public class ShoppingCartAdapter extends ListAdapter<Book, ShoppingCartAdapter.CartViewHolder> {
+    // Item view type, unique per layout so lists of a screen can share prewarmed views
+    public static final int VIEW_TYPE = R.layout.item_shopping_cart;
+
     private final Context context;
-    private List<Book> cartBooks;
     private final FirestoreHelper firestoreHelper;
+    private final StableIds stableIds = new StableIds();
 
     /**
-     * Constructor: Initializes the adapter with the application context, list of books, and Firestore helper.
+     * Constructor: Initializes the adapter with the application context and Firestore helper.
+     * Books are shown with {@link #updateList}.
      *
      * @param context         The application or activity context.
-     * @param cartBooks       A list of books in the shopping cart.
      * @param firestoreHelper An instance of FirestoreHelper for managing cart operations.
      */
-    public ShoppingCartAdapter(Context context, List<Book> cartBooks, FirestoreHelper firestoreHelper) {
+    public ShoppingCartAdapter(Context context, FirestoreHelper firestoreHelper) {
+        super(BookItemCallback.INSTANCE);
         this.context = context;
-        this.cartBooks = cartBooks;
         this.firestoreHelper = firestoreHelper;
+        setHasStableIds(true);
     }
 
     /**
-     * Updates the list of books in the cart and refreshes the UI.
+     * Updates the list of books in the cart. Only the rows that changed are refreshed.
      *
      * @param newList The updated list of books.
      */
-    @SuppressLint("NotifyDataSetChanged")
     public void updateList(List<Book> newList) {
-        this.cartBooks = newList;
-        notifyDataSetChanged();
+        submitList(new ArrayList<>(newList));
+    }
+
+    /**
+     * Returns the stable ID of the book at a position, derived from its book ID.
+     *
+     * @param position The position of the item in the list.
+     * @return The item's stable ID.
+     */
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idOf(BookItemCallback.keyOf(getItem(position)));
+    }
+
+    /**
+     * Returns the view type of every book row.
+     *
+     * @param position The position of the item in the list.
+     * @return The item layout of this adapter.
+     */
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE;
     }
 
     /**
@@ -80,11 +103,7 @@ public class ShoppingCartAdapter extends RecyclerView.Adapter<ShoppingCartAdapte
      */
     @Override
     public void onBindViewHolder(@NonNull CartViewHolder holder, int position) {
-        if (cartBooks == null || position >= cartBooks.size()) {
-            Log.e(TAG, "Invalid cart book list or position");
-            return;
-        }
-        Book book = cartBooks.get(position);
+        Book book = getItem(position);
 
         // Display book title, fallback to "Unknown Title" if null
         holder.bookTitle.setText(book.getTitle());
@@ -110,13 +129,12 @@ public class ShoppingCartAdapter extends RecyclerView.Adapter<ShoppingCartAdapte
 
         // Handle remove from cart button click
         holder.removeButton.setOnClickListener(v -> {
-            if (position < 0 || position >= cartBooks.size()) return;
             firestoreHelper.removeBookFromShoppingCart(book.getBookId(), success -> {
                 if (success) {
-                    // Remove book from local list and update UI
-                    cartBooks.remove(position);
-                    notifyItemRemoved(position);
-                    notifyItemRangeChanged(position, cartBooks.size());
+                    // Remove book from the shown list, the list may have changed since the row was bound
+                    List<Book> remaining = new ArrayList<>(getCurrentList());
+                    remaining.removeIf(b -> BookItemCallback.keyOf(b).equals(BookItemCallback.keyOf(book)));
+                    submitList(remaining);
                     Toast.makeText(context, "Book removed from cart", Toast.LENGTH_SHORT).show();
                 } else {
                     Toast.makeText(context, "Failed to remove book", Toast.LENGTH_SHORT).show();
@@ -125,16 +143,6 @@ public class ShoppingCartAdapter extends RecyclerView.Adapter<ShoppingCartAdapte
         });
     }
 
-    /**
-     * Returns the total number of books in the cart.
-     *
-     * @return The size of the cartBooks list.
-     */
-    @Override
-    public int getItemCount() {
-        return cartBooks != null ? cartBooks.size() : 0;
-    }
-
     /**
      * ViewHolder class representing each item in the RecyclerView.
      * Contains TextView, ImageView, and Button elements for each book in the cart.
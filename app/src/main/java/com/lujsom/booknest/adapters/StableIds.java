@@ -0,0 +1,28 @@
+package com.lujsom.booknest.adapters;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * StableIds hands out a RecyclerView item ID for each key, such as a book or review ID.
+ * The same key always gets the same ID for the lifetime of the adapter, so RecyclerView
+ * can keep a row's view (and its loaded cover) when the row moves.
+ */
+class StableIds {
+    private final Map<String, Long> ids = new HashMap<>();
+
+    /**
+     * Returns the item ID of a key, assigning the next free one on first use.
+     *
+     * @param key The key of the item.
+     * @return The item's stable ID.
+     */
+    long idOf(String key) {
+        Long id = ids.get(key);
+        if (id == null) {
+            id = (long) ids.size();
+            ids.put(key, id);
+        }
+        return id;
+    }
+}
@@ -1,44 +1,212 @@
 package com.lujsom.booknest.api;
 
+import android.content.Context;
+import android.os.Process;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.lujsom.booknest.models.BookItem;
+import com.lujsom.booknest.models.BookResponse;
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import okhttp3.Cache;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
- * ApiClient is a singleton class responsible for creating and providing a Retrofit instance.
+ * ApiClient is a singleton registry responsible for creating and providing Retrofit instances.
  * It is used to interact with the Google Books API.
+ * Requests are split into {@link RequestLane}s so background work never delays user-visible searches.
+ * Responses are kept in a bounded disk cache once {@link #init(Context)} has been called,
+ * and failed requests are retried or answered from that cache by a {@link ResiliencePolicy}.
  */
 public class ApiClient {
 
     // Base URL for Google Books API
     private static final String BASE_URL = "https://www.googleapis.com/books/v1/"; // The API address
-    // Retrofit instance (singleton)
-    private static Retrofit retrofit = null;
+
+    // Default disk cache settings
+    public static final long DEFAULT_CACHE_SIZE_BYTES = 10L * 1024 * 1024; // 10 MB
+    public static final int DEFAULT_MAX_AGE_SECONDS = 5 * 60; // Served from disk without asking the server
+    public static final int DEFAULT_STALE_WHILE_REVALIDATE_SECONDS = 24 * 60 * 60; // Served while refreshed in background
+    public static final int DEFAULT_MAX_STALE_OFFLINE_SECONDS = 7 * 24 * 60 * 60; // Served when there is no network
+
+    // One Retrofit instance and service per lane
+    private static final Map<RequestLane, Retrofit> lanes = new EnumMap<>(RequestLane.class);
+    private static final Map<RequestLane, BookApiService> services = new EnumMap<>(RequestLane.class);
+    private static final Map<RequestLane, LaneStats> laneStats = new EnumMap<>(RequestLane.class);
+    private static OkHttpClient baseClient = null;
+    // Shared by the converters and the stream parser, maps the models without reflection
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(BookResponse.class, new BookResponse.JsonAdapter())
+            .registerTypeAdapter(BookItem.class, new BookItem.JsonAdapter())
+            .create();
+    private static Cache cache = null;
+    private static HttpCachePolicy cachePolicy = null;
+    // Shared by every lane, so one degraded API trips one breaker
+    private static final ResiliencePolicy resiliencePolicy = new ResiliencePolicy();
+
+    /**
+     * Enables the disk cache with the default settings. Must be called before the first request.
+     *
+     * @param context Any context, used to locate the cache directory.
+     */
+    public static void init(Context context) {
+        init(context, DEFAULT_CACHE_SIZE_BYTES, new HttpCachePolicy(context, DEFAULT_MAX_AGE_SECONDS,
+                DEFAULT_STALE_WHILE_REVALIDATE_SECONDS, DEFAULT_MAX_STALE_OFFLINE_SECONDS));
+    }
 
     /**
-     * Provides a Retrofit client instance.
-     * If the instance is null, it initializes a new one with an OkHttpClient.
+     * Enables the disk cache with custom settings. Must be called before the first request.
      *
+     * @param context        Any context, used to locate the cache directory.
+     * @param cacheSizeBytes Maximum size of the disk cache.
+     * @param policy         The freshness rules applied to cached responses.
+     */
+    public static synchronized void init(Context context, long cacheSizeBytes, HttpCachePolicy policy) {
+        if (baseClient != null) {
+            return; // Client already built, the cache can no longer be changed
+        }
+        cache = new Cache(new File(context.getCacheDir(), "google_books_http"), cacheSizeBytes);
+        cachePolicy = policy;
+    }
+
+    /**
+     * Provides the Retrofit instance of a lane.
+     * All lanes share one connection pool and disk cache, but each lane has its own dispatcher.
+     *
+     * @param lane The lane the requests belong to.
      * @return A Retrofit instance configured for API communication.
      */
-    public static Retrofit getClient() {
+    public static synchronized Retrofit getClient(RequestLane lane) {
+        Retrofit retrofit = lanes.get(lane);
         if (retrofit == null) {
-            // Create an OkHttpClient with custom timeout settings
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(15, TimeUnit.SECONDS) // Maximum time to establish a connection
-                    .readTimeout(15, TimeUnit.SECONDS) // Maximum time to wait for response data
-                    .writeTimeout(15, TimeUnit.SECONDS) // Maximum time for sending data
-                    .build();
+            Dispatcher dispatcher = new Dispatcher(createExecutor(lane));
+            dispatcher.setMaxRequests(lane.getMaxRequests());
+            dispatcher.setMaxRequestsPerHost(lane.getMaxRequests()); // Every call goes to the same host
+            LaneStats stats = new LaneStats(lane, dispatcher);
+
+            OkHttpClient.Builder builder = getBaseClient().newBuilder()
+                    .dispatcher(dispatcher)
+                    .eventListenerFactory(stats.eventListenerFactory());
+            // The wait must be measured before any other interceptor runs
+            builder.interceptors().add(0, stats.waitInterceptor());
+            OkHttpClient client = builder.build();
+
+            if (lane == RequestLane.BACKGROUND && cachePolicy != null) {
+                cachePolicy.attach(client, cache); // Revalidations are background work
+            }
 
             // Build the Retrofit instance
             retrofit = new Retrofit.Builder()
                     .baseUrl(BASE_URL) // Set the base URL for API requests
                     .client(client) // Use the configured OkHttpClient
-                    .addConverterFactory(GsonConverterFactory.create()) // Convert JSON responses to Java objects
+                    .addConverterFactory(GsonConverterFactory.create(gson)) // Convert JSON responses to Java objects
                     .build();
+            lanes.put(lane, retrofit);
+            services.put(lane, retrofit.create(BookApiService.class));
+            laneStats.put(lane, stats);
         }
         return retrofit;
     }
+
+    /**
+     * Provides the shared BookApiService of a lane.
+     *
+     * @param lane The lane the requests belong to.
+     * @return A BookApiService bound to the lane's dispatcher.
+     */
+    public static synchronized BookApiService getService(RequestLane lane) {
+        getClient(lane);
+        return services.get(lane);
+    }
+
+    /**
+     * Returns the queue statistics of a lane.
+     *
+     * @param lane The lane to inspect.
+     * @return The lane's statistics.
+     */
+    public static synchronized LaneStats getLaneStats(RequestLane lane) {
+        getClient(lane);
+        return laneStats.get(lane);
+    }
+
+    /**
+     * Builds the client that holds the settings shared by every lane.
+     */
+    private static OkHttpClient getBaseClient() {
+        if (baseClient == null) {
+            // Create an OkHttpClient with custom timeout settings
+            OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                    .connectTimeout(15, TimeUnit.SECONDS) // Maximum time to establish a connection
+                    .readTimeout(15, TimeUnit.SECONDS) // Maximum time to wait for response data
+                    .writeTimeout(15, TimeUnit.SECONDS); // Maximum time for sending data
+
+            if (cache != null && cachePolicy != null) {
+                builder.cache(cache)
+                        .addInterceptor(cachePolicy.requestInterceptor()) // Chooses fresh, stale or offline copy
+                        .addNetworkInterceptor(cachePolicy.responseInterceptor()); // Makes responses cacheable
+            }
+            // Runs below the cache policy, so every retry and breaker fallback still sees the disk cache
+            builder.addInterceptor(resiliencePolicy.interceptor());
+            baseClient = builder.build();
+            if (cachePolicy != null) {
+                cachePolicy.attach(baseClient, cache);
+            }
+        }
+        return baseClient;
+    }
+
+    /**
+     * Creates the thread pool a lane's dispatcher runs its calls on.
+     */
+    private static ExecutorService createExecutor(RequestLane lane) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(() -> {
+                if (lane.isLowPriority()) {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                }
+                runnable.run();
+            }, "BookNest " + lane.name().toLowerCase() + " " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the Gson instance used to map API responses.
+     *
+     * @return The shared Gson instance.
+     */
+    public static Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * Returns the cache policy, which exposes hit and miss statistics.
+     *
+     * @return The active HttpCachePolicy, or null if the cache was never enabled.
+     */
+    public static HttpCachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * Returns the retry and circuit breaker policy, which exposes its statistics.
+     *
+     * @return The shared ResiliencePolicy.
+     */
+    public static ResiliencePolicy getResiliencePolicy() {
+        return resiliencePolicy;
+    }
 }
@@ -0,0 +1,21 @@
+package com.lujsom.booknest.api;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the {@link CircuitBreaker} is open and the
+ * disk cache holds no copy of the response.
+ */
+public class ApiUnavailableException extends IOException {
+    private final long retryAfterMillis;
+
+    public ApiUnavailableException(long retryAfterMillis) {
+        super("Google Books is unavailable, try again in " + Math.max(1, (retryAfterMillis + 999) / 1000) + " s");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return How long until the API is tried again.
+     */
+    public long getRetryAfterMillis() { return retryAfterMillis; }
+}
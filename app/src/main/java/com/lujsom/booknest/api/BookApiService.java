@@ -1,9 +1,12 @@
 package com.lujsom.booknest.api;
 
-import com.lujsom.booknest.models.BookResponse;
+import com.lujsom.booknest.models.BookItem;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.GET;
+import retrofit2.http.Path;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 /**
  * BookApiService defines the API endpoints for fetching books from the Google Books API.
@@ -12,15 +15,38 @@ import retrofit2.http.Query;
 public interface BookApiService {
 
     /**
-     * Fetches books from the Google Books API based on the given search query.
+     * Fetches one page of books as a raw stream, so the caller can parse it incrementally
+     * with {@link BookStreamParser}. The body must be read off the main thread and closed.
      *
-     * @param query  The search query (e.g., book title, author, keyword).
-     * @param apiKey The API key required to authenticate the request.
-     * @return A Call object containing the response in the form of a BookResponse.
+     * @param query      The search query (e.g., book title, author, keyword).
+     * @param startIndex The position of the first result to return, starting at 0.
+     * @param maxResults The number of results to return (at most 40).
+     * @param fields     The partial-response mask, usually {@link VolumeFields#VOLUME_LIST}.
+     * @param apiKey     The API key required to authenticate the request.
+     * @return A Call object whose body is not read until the caller consumes it.
      */
-    @GET("volumes") // This corresponds to "https://www.googleapis.com/books/v1/volumes"
-    Call<BookResponse> getBooks(
-            @Query("q") String query, // The search term for books
-            @Query("key") String apiKey // The API key for authentication
+    @Streaming
+    @GET("volumes")
+    Call<ResponseBody> streamBooks(
+            @Query("q") String query,
+            @Query("startIndex") int startIndex,
+            @Query("maxResults") int maxResults,
+            @Query("fields") String fields,
+            @Query("key") String apiKey
     );
-}
\ No newline at end of file
+
+    /**
+     * Fetches a single volume by its ID, used to complete books that were saved with only a few fields.
+     *
+     * @param volumeId The Google Books volume ID.
+     * @param fields   The partial-response mask, usually {@link VolumeFields#VOLUME}.
+     * @param apiKey   The API key required to authenticate the request.
+     * @return A Call object containing the volume.
+     */
+    @GET("volumes/{id}")
+    Call<BookItem> getVolume(
+            @Path("id") String volumeId,
+            @Query("fields") String fields,
+            @Query("key") String apiKey
+    );
+}
@@ -0,0 +1,349 @@
+package com.lujsom.booknest.api;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import com.lujsom.booknest.BuildConfig;
+import com.lujsom.booknest.models.Book;
+import com.lujsom.booknest.models.BookRegistry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * BookQueryCoalescer sits in front of the Google Books volumes endpoint and makes sure
+ * identical queries that are in flight at the same time share one network call and one
+ * parsed result. Queries are keyed by their normalized text and page parameters.
+ * A call sent in the background lane is moved to the interactive lane when a caller that the
+ * user is waiting for joins it before the server has answered.
+ * Responses are parsed in the background with {@link BookStreamParser} and handed to every
+ * subscriber in batches. All methods must be called from the main thread, and callbacks are
+ * delivered on the main thread.
+ */
+public class BookQueryCoalescer {
+
+    // Books per batch while a page is parsed (two rows of the library grid)
+    private static final int STREAM_BATCH_SIZE = 4;
+    // How long a call with no subscribers left is kept alive after a detach, e.g. during a rotation
+    static final long DETACH_GRACE_MS = 2000;
+
+    private static BookQueryCoalescer instance;
+
+    /**
+     * Receives the books of a query. Callbacks are delivered on the main thread.
+     */
+    public interface Subscriber {
+        /**
+         * Books parsed since the last batch. A subscriber that joins late first receives
+         * everything parsed so far as one batch.
+         */
+        void onBooks(List<Book> batch);
+
+        /**
+         * The page has been fully parsed.
+         *
+         * @param books All books of the page, shared with the other subscribers (read only).
+         */
+        void onComplete(List<Book> books);
+
+        void onError(String message);
+    }
+
+    /**
+     * A subscription to a query, used to stop receiving its results.
+     */
+    public class Handle {
+        private final Flight flight;
+        private final Subscriber subscriber;
+
+        private Handle(Flight flight, Subscriber subscriber) {
+            this.flight = flight;
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Stops receiving results. If no subscriber is left, the network call is cancelled.
+         */
+        public void cancel() {
+            unsubscribe(flight, subscriber, false);
+        }
+
+        /**
+         * Stops receiving results but keeps the call alive for a short while, so a subscriber
+         * that re-joins right away (such as a recreated activity) does not start over.
+         */
+        public void detach() {
+            unsubscribe(flight, subscriber, true);
+        }
+    }
+
+    /**
+     * Runs work on the main thread. Replaced in tests so they decide when posted work runs.
+     */
+    interface MainThread {
+        void post(Runnable task);
+
+        void postDelayed(Runnable task, long delayMs);
+
+        void removeCallbacks(Runnable task);
+    }
+
+    /**
+     * One network call and the subscribers waiting for it.
+     */
+    private class Flight {
+        final String key;
+        final String query;
+        final int startIndex;
+        final int maxResults;
+        final List<Subscriber> subscribers = new ArrayList<>();
+        final List<Book> books = new ArrayList<>();
+        RequestLane lane;
+        Call<ResponseBody> call;
+        boolean responded = false; // The headers arrived, the call can no longer change lanes
+        boolean finished = false;
+        Runnable pendingCancel;
+
+        Flight(String key, String query, int startIndex, int maxResults, RequestLane lane) {
+            this.key = key;
+            this.query = query;
+            this.startIndex = startIndex;
+            this.maxResults = maxResults;
+            this.lane = lane;
+        }
+    }
+
+    private final Map<String, Flight> flights = new HashMap<>();
+    private final String apiKey;
+    private final Function<RequestLane, BookApiService> services;
+    private final MainThread mainThread;
+    private final Executor parseExecutor;
+
+    // Counters for the coalescing rate
+    private int subscriptions = 0;
+    private int networkCalls = 0;
+
+    /**
+     * Returns the shared coalescer.
+     *
+     * @return The BookQueryCoalescer instance.
+     */
+    public static BookQueryCoalescer getInstance() {
+        if (instance == null) {
+            instance = new BookQueryCoalescer(BuildConfig.GOOGLE_BOOKS_API_KEY);
+        }
+        return instance;
+    }
+
+    private BookQueryCoalescer(String apiKey) {
+        this(apiKey, ApiClient::getService, mainLooper(), Executors.newSingleThreadExecutor());
+    }
+
+    BookQueryCoalescer(String apiKey, Function<RequestLane, BookApiService> services,
+                       MainThread mainThread, Executor parseExecutor) {
+        this.apiKey = apiKey;
+        this.services = services;
+        this.mainThread = mainThread;
+        this.parseExecutor = parseExecutor;
+    }
+
+    private static MainThread mainLooper() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        return new MainThread() {
+            @Override
+            public void post(Runnable task) {
+                handler.post(task);
+            }
+
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+        };
+    }
+
+    /**
+     * Fetches a page of books, joining an identical query that is already in flight.
+     *
+     * @param query      The search text.
+     * @param startIndex The position of the first result, starting at 0.
+     * @param maxResults The number of results (at most 40).
+     * @param lane       The lane used if a new call has to be sent. An interactive fetch moves a
+     *                   background call it joins to the interactive lane, unless the server already answered.
+     * @param subscriber Receiver of the books.
+     * @return A handle to stop receiving the results.
+     */
+    public Handle fetch(String query, int startIndex, int maxResults, RequestLane lane, Subscriber subscriber) {
+        String normalized = normalize(query);
+        String key = normalized + "|" + startIndex + "|" + maxResults;
+        subscriptions++;
+
+        Flight flight = flights.get(key);
+        if (flight != null) {
+            if (flight.pendingCancel != null) {
+                mainThread.removeCallbacks(flight.pendingCancel);
+                flight.pendingCancel = null;
+            }
+            if (lane == RequestLane.INTERACTIVE && flight.lane != RequestLane.INTERACTIVE && !flight.responded) {
+                // Still queued or waiting behind background work, send it again where the user is not kept waiting
+                flight.call.cancel();
+                flight.lane = lane;
+                start(flight);
+            }
+            flight.subscribers.add(subscriber);
+            if (!flight.books.isEmpty()) {
+                subscriber.onBooks(new ArrayList<>(flight.books)); // Catch up on what was parsed so far
+            }
+            return new Handle(flight, subscriber);
+        }
+
+        flight = new Flight(key, normalized, startIndex, maxResults, lane);
+        flight.subscribers.add(subscriber);
+        flights.put(key, flight);
+        start(flight);
+        return new Handle(flight, subscriber);
+    }
+
+    /**
+     * Sends the network call of a flight in the flight's lane.
+     */
+    private void start(Flight flight) {
+        networkCalls++;
+        BookApiService service = services.apply(flight.lane);
+        flight.call = service.streamBooks(flight.query, flight.startIndex, flight.maxResults, VolumeFields.VOLUME_LIST, apiKey);
+        flight.call.enqueue(new Callback<>() {
+            @Override
+            public void onResponse(@NonNull Call<ResponseBody> call, @NonNull Response<ResponseBody> response) {
+                ResponseBody body = response.body();
+                if (call != flight.call) {
+                    if (body != null) body.close(); // Answered just before it was replaced
+                    return;
+                }
+                flight.responded = true;
+                if (!response.isSuccessful() || body == null) {
+                    if (body != null) body.close();
+                    fail(flight, ResiliencePolicy.describe(response.code()));
+                    return;
+                }
+                // Only the headers have arrived, the body is read in the background
+                parseExecutor.execute(() -> parse(flight, body));
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<ResponseBody> call, @NonNull Throwable t) {
+                if (call == flight.call && !call.isCanceled()) {
+                    fail(flight, ResiliencePolicy.describe(t));
+                }
+            }
+        });
+    }
+
+    /**
+     * Parses a response body on the parse thread and posts the books to the main thread.
+     */
+    private void parse(Flight flight, ResponseBody body) {
+        BookStreamParser parser = new BookStreamParser(ApiClient.getGson(), STREAM_BATCH_SIZE);
+        try (ResponseBody ignored = body) {
+            parser.parse(body.charStream(), parsed -> mainThread.post(() -> {
+                // Screens share the registered instance of a book already shown elsewhere
+                List<Book> batch = BookRegistry.getInstance().registerAll(parsed);
+                flight.books.addAll(batch);
+                for (Subscriber subscriber : new ArrayList<>(flight.subscribers)) {
+                    subscriber.onBooks(batch);
+                }
+            }));
+        } catch (IOException | RuntimeException e) {
+            if (!flight.call.isCanceled()) {
+                mainThread.post(() -> fail(flight, ResiliencePolicy.describe(e)));
+            }
+            return;
+        }
+
+        mainThread.post(() -> {
+            flight.finished = true;
+            flights.remove(flight.key, flight); // A newer call for the same query may have replaced it
+            List<Book> books = Collections.unmodifiableList(flight.books);
+            for (Subscriber subscriber : new ArrayList<>(flight.subscribers)) {
+                subscriber.onComplete(books);
+            }
+        });
+    }
+
+    /**
+     * Reports a failure to every subscriber of a flight.
+     */
+    private void fail(Flight flight, String message) {
+        flight.finished = true;
+        flights.remove(flight.key, flight);
+        for (Subscriber subscriber : new ArrayList<>(flight.subscribers)) {
+            subscriber.onError(message);
+        }
+    }
+
+    /**
+     * Removes a subscriber and cancels the call once nobody is waiting for it.
+     */
+    private void unsubscribe(Flight flight, Subscriber subscriber, boolean graceful) {
+        flight.subscribers.remove(subscriber);
+        if (!flight.subscribers.isEmpty() || flight.finished) {
+            return;
+        }
+        if (graceful) {
+            if (flight.pendingCancel == null) {
+                flight.pendingCancel = () -> cancelFlight(flight);
+                mainThread.postDelayed(flight.pendingCancel, DETACH_GRACE_MS);
+            }
+        } else {
+            cancelFlight(flight);
+        }
+    }
+
+    private void cancelFlight(Flight flight) {
+        flight.pendingCancel = null;
+        if (!flight.subscribers.isEmpty() || flight.finished) {
+            return;
+        }
+        flights.remove(flight.key, flight);
+        flight.call.cancel();
+    }
+
+    /**
+     * Normalizes a query so that differences in case and spacing map to the same call.
+     *
+     * @param query The raw search text.
+     * @return The trimmed, lower-case text with single spaces.
+     */
+    public static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return The number of fetches that joined a call already in flight.
+     */
+    public int getCoalescedCount() { return subscriptions - networkCalls; }
+
+    /**
+     * @return The share of fetches, between 0 and 1, that did not need a network call of their own.
+     */
+    public float getCoalescingRate() {
+        return subscriptions > 0 ? (float) getCoalescedCount() / subscriptions : 0f;
+    }
+
+    public int getNetworkCallCount() { return networkCalls; }
+}
@@ -0,0 +1,337 @@
+package com.lujsom.booknest.api;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import com.lujsom.booknest.models.Book;
+import com.lujsom.booknest.utils.QueryResultStore;
+import java.util.List;
+
+/**
+ * BookQueryPipeline turns a stream of search inputs into Google Books requests.
+ * Keystrokes are debounced, a newer query cancels the calls of the query it replaces,
+ * and responses that belong to an older query are dropped instead of being rendered.
+ * Results are fetched in pages of a fixed size, and further pages of the current query
+ * can be requested with {@link #loadPage(int)}. Requests go through {@link BookQueryCoalescer},
+ * so a page that is already being fetched elsewhere is shared; the first page of a query
+ * is handed over in small batches while it is still being parsed.
+ * When a {@link QueryResultStore} is given, the stored first page of a query is shown before
+ * the network is asked, and a refresh is only sent once the stored page is stale.
+ * All methods must be called from the main thread.
+ */
+public class BookQueryPipeline {
+
+    // Quiet period after the last keystroke before a search is sent
+    public static final long DEFAULT_DEBOUNCE_MS = 350;
+    // Number of results per page (the API allows at most 40)
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * Receives the outcome of the latest query. Callbacks are delivered on the main thread
+     * and only for the query that is still current.
+     */
+    public interface Listener {
+        void onQueryStarted(String query);
+
+        /**
+         * Books of the first page of a query, delivered while the page is still being parsed.
+         */
+        void onBooksParsed(String query, List<Book> batch);
+
+        /**
+         * A page has been fully parsed.
+         *
+         * @param books    All books of the page.
+         * @param streamed True if the books were already delivered through {@link #onBooksParsed}.
+         */
+        void onPageLoaded(String query, int pageIndex, List<Book> books, boolean streamed);
+
+        /**
+         * The stored first page of a query, delivered before any network result.
+         *
+         * @param stale True if the page is older than its TTL and a refresh has been sent.
+         */
+        void onCachedPageLoaded(String query, List<Book> books, boolean stale);
+
+        /**
+         * A refresh returned a first page that differs from the stored page already shown.
+         * Not called when the refresh returned the same books.
+         */
+        void onPageRefreshed(String query, List<Book> books);
+
+        void onQueryFailed(String query, int pageIndex, String message);
+    }
+
+    private final BookQueryCoalescer coalescer;
+    private final QueryResultStore store;
+    private final long debounceMs;
+    private final int pageSize;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private Runnable pendingQuery; // Debounced query waiting to be sent
+    private final SparseArray<BookQueryCoalescer.Handle> inFlight = new SparseArray<>(); // Fetches of the current query by page
+    private String currentQuery;
+    private QueryResultStore.QueryClass currentQueryClass;
+    private QueryResultStore.Entry shownEntry; // Stored page shown for the current query
+    private boolean lookupPending = false; // The store is being read for the current query
+    private int generation = 0; // Incremented every time a query supersedes the previous one
+
+    // Counters for monitoring how many requests actually reach the screen
+    private int requestsIssued = 0;
+    private int responsesRendered = 0;
+    private int responsesDropped = 0;
+    private int storeHits = 0;
+    private int refreshesUnchanged = 0;
+
+    /**
+     * Creates a pipeline with the default debounce window and page size.
+     *
+     * @param coalescer The coalescer used to send the requests.
+     * @param store     The store of previous results, or null to always use the network.
+     * @param listener  Receiver of the results.
+     */
+    public BookQueryPipeline(BookQueryCoalescer coalescer, QueryResultStore store, Listener listener) {
+        this(coalescer, store, DEFAULT_DEBOUNCE_MS, DEFAULT_PAGE_SIZE, listener);
+    }
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param coalescer  The coalescer used to send the requests.
+     * @param store      The store of previous results, or null to always use the network.
+     * @param debounceMs How long the input must stay unchanged before a query is sent.
+     * @param pageSize   Number of results per page, between 1 and 40.
+     * @param listener   Receiver of the results.
+     */
+    public BookQueryPipeline(BookQueryCoalescer coalescer, QueryResultStore store, long debounceMs, int pageSize,
+                             Listener listener) {
+        this.coalescer = coalescer;
+        this.store = store;
+        this.debounceMs = Math.max(0, debounceMs);
+        this.pageSize = Math.max(1, Math.min(40, pageSize));
+        this.listener = listener;
+    }
+
+    /**
+     * Schedules a query after the debounce window. A later call within the window replaces it.
+     * Its stored results use the TTL of typed searches.
+     *
+     * @param query The search text.
+     */
+    public void submit(String query) {
+        submit(query, QueryResultStore.QueryClass.FREE_TEXT);
+    }
+
+    /**
+     * Schedules a query after the debounce window, like {@link #submit(String)}, for a query
+     * that is not typed text, such as the default category shown when the search bar is cleared.
+     *
+     * @param query      The search text or category.
+     * @param queryClass Decides how long the stored results stay fresh.
+     */
+    public void submit(String query, QueryResultStore.QueryClass queryClass) {
+        if (pendingQuery != null) {
+            handler.removeCallbacks(pendingQuery);
+        }
+        pendingQuery = () -> {
+            pendingQuery = null;
+            execute(query, queryClass);
+        };
+        handler.postDelayed(pendingQuery, debounceMs);
+    }
+
+    /**
+     * Sends a query right away, skipping the debounce window (used for filter buttons).
+     * Its stored results use the TTL of categories.
+     *
+     * @param query The search text or category.
+     */
+    public void submitNow(String query) {
+        if (pendingQuery != null) {
+            handler.removeCallbacks(pendingQuery);
+            pendingQuery = null;
+        }
+        execute(query, QueryResultStore.QueryClass.CATEGORY);
+    }
+
+    /**
+     * Requests another page of the current query. Does nothing if that page is already loading.
+     *
+     * @param pageIndex The page to load, starting at 0.
+     */
+    public void loadPage(int pageIndex) {
+        if (currentQuery == null || pageIndex < 0 || inFlight.get(pageIndex) != null) {
+            return;
+        }
+        fetch(currentQuery, pageIndex, false);
+    }
+
+    /**
+     * Checks whether a page of the current query is being fetched.
+     *
+     * @param pageIndex The page to check.
+     * @return True if the page is in flight.
+     */
+    public boolean isLoading(int pageIndex) {
+        return inFlight.get(pageIndex) != null;
+    }
+
+    /**
+     * Cancels the pending and in-flight queries. Results that are still on their way are dropped.
+     */
+    public void cancel() {
+        if (pendingQuery != null) {
+            handler.removeCallbacks(pendingQuery);
+            pendingQuery = null;
+        }
+        cancelInFlight();
+        currentQuery = null;
+        lookupPending = false;
+        generation++;
+    }
+
+    /**
+     * Like {@link #cancel()}, but lets the in-flight calls finish for a short while so that a
+     * recreated activity submitting the same query can pick them up.
+     */
+    public void detach() {
+        if (pendingQuery != null) {
+            handler.removeCallbacks(pendingQuery);
+            pendingQuery = null;
+        }
+        for (int i = 0; i < inFlight.size(); i++) {
+            inFlight.valueAt(i).detach();
+        }
+        inFlight.clear();
+        currentQuery = null;
+        lookupPending = false;
+        generation++;
+    }
+
+    /**
+     * Starts a new query, superseding any query that is still in flight.
+     * The stored first page is looked up first; the network is only asked if it is missing or stale.
+     *
+     * @param query      The normalized search text.
+     * @param queryClass Decides how long the results of the query stay fresh.
+     */
+    private void execute(String query, QueryResultStore.QueryClass queryClass) {
+        // The same query is already on its way, no need to send it twice
+        if (query.equals(currentQuery) && (inFlight.get(0) != null || lookupPending)) {
+            return;
+        }
+        cancelInFlight();
+        generation++;
+        currentQuery = query;
+        currentQueryClass = queryClass;
+        shownEntry = null;
+        listener.onQueryStarted(query);
+        if (store == null) {
+            fetch(query, 0, true);
+            return;
+        }
+
+        final int lookupGeneration = generation;
+        lookupPending = true;
+        store.get(query, entry -> {
+            if (lookupGeneration != generation) {
+                return; // Superseded while the store was read
+            }
+            lookupPending = false;
+            if (entry != null) {
+                storeHits++;
+                shownEntry = entry;
+                listener.onCachedPageLoaded(query, entry.getBooks(), entry.isStale());
+                if (!entry.isStale()) {
+                    return;
+                }
+            }
+            // Nothing to stream into when stored books are already on screen
+            fetch(query, 0, entry == null);
+        });
+    }
+
+    /**
+     * Sends the request for one page of the current query.
+     *
+     * @param stream True to deliver the books in batches while the page is parsed.
+     */
+    private void fetch(String query, int pageIndex, boolean stream) {
+        final int requestGeneration = generation;
+        requestsIssued++;
+
+        BookQueryCoalescer.Handle handle = coalescer.fetch(query, pageIndex * pageSize, pageSize,
+                RequestLane.INTERACTIVE, new BookQueryCoalescer.Subscriber() {
+                    @Override
+                    public void onBooks(List<Book> batch) {
+                        if (stream && requestGeneration == generation) {
+                            listener.onBooksParsed(query, batch);
+                        }
+                    }
+
+                    @Override
+                    public void onComplete(List<Book> books) {
+                        if (requestGeneration != generation) {
+                            responsesDropped++; // A newer query has already replaced this one
+                            return;
+                        }
+                        inFlight.remove(pageIndex);
+                        if (pageIndex == 0 && store != null) {
+                            store.put(query, currentQueryClass, books);
+                            if (shownEntry != null) {
+                                deliverRefresh(query, books);
+                                return;
+                            }
+                        }
+                        responsesRendered++;
+                        listener.onPageLoaded(query, pageIndex, books, stream);
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        if (requestGeneration != generation) {
+                            responsesDropped++;
+                            return;
+                        }
+                        inFlight.remove(pageIndex);
+                        listener.onQueryFailed(query, pageIndex, message);
+                    }
+                });
+        inFlight.put(pageIndex, handle);
+    }
+
+    /**
+     * Hands over a refreshed first page, unless it holds the same books as the stored page on screen.
+     */
+    private void deliverRefresh(String query, List<Book> books) {
+        if (QueryResultStore.contentHash(books) == shownEntry.getContentHash()) {
+            refreshesUnchanged++;
+            return;
+        }
+        responsesRendered++;
+        listener.onPageRefreshed(query, books);
+    }
+
+    /**
+     * Cancels every call of the current query.
+     */
+    private void cancelInFlight() {
+        for (int i = 0; i < inFlight.size(); i++) {
+            inFlight.valueAt(i).cancel();
+        }
+        inFlight.clear();
+    }
+
+    public int getPageSize() { return pageSize; }
+
+    public int getRequestsIssued() { return requestsIssued; }
+
+    public int getResponsesRendered() { return responsesRendered; }
+
+    public int getResponsesDropped() { return responsesDropped; }
+
+    public int getStoreHits() { return storeHits; }
+
+    public int getRefreshesUnchanged() { return refreshesUnchanged; }
+}
@@ -0,0 +1,85 @@
+package com.lujsom.booknest.api;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.lujsom.booknest.models.Book;
+import com.lujsom.booknest.models.BookItem;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BookStreamParser reads a Google Books volumes response incrementally with a JsonReader.
+ * Each entry of {@code items} is mapped to a {@link Book} as soon as it has been read,
+ * and completed books are handed over in small batches, so the caller can start showing
+ * results before the rest of the response has arrived. Properties the app does not map
+ * are skipped without being materialized.
+ */
+public class BookStreamParser {
+
+    /**
+     * Receives parsed books. Called on the thread that runs {@link #parse}.
+     */
+    public interface BatchSink {
+        void onBatch(List<Book> batch);
+    }
+
+    private final TypeAdapter<BookItem> itemAdapter;
+    private final int batchSize;
+
+    /**
+     * Creates a parser.
+     *
+     * @param gson      The Gson instance whose adapter maps a single item.
+     * @param batchSize Number of books handed over at a time.
+     */
+    public BookStreamParser(Gson gson, int batchSize) {
+        this.itemAdapter = gson.getAdapter(BookItem.class);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Parses a volumes response.
+     *
+     * @param reader The response body.
+     * @param sink   Receiver of the parsed books.
+     * @return The total number of matches reported by the API.
+     * @throws IOException If the body cannot be read or is not valid JSON.
+     */
+    public int parse(Reader reader, BatchSink sink) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        int totalItems = 0;
+        List<Book> batch = new ArrayList<>(batchSize);
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if ("items".equals(name) && json.peek() == JsonToken.BEGIN_ARRAY) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    BookItem item = itemAdapter.read(json);
+                    if (item == null) continue;
+                    batch.add(new Book(item)); // Convert each BookItem to a Book object
+                    if (batch.size() >= batchSize) {
+                        sink.onBatch(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                json.endArray();
+            } else if ("totalItems".equals(name) && json.peek() == JsonToken.NUMBER) {
+                totalItems = json.nextInt();
+            } else {
+                json.skipValue(); // Unknown property, skipped without building objects
+            }
+        }
+        json.endObject();
+
+        if (!batch.isEmpty()) {
+            sink.onBatch(batch);
+        }
+        return totalItems;
+    }
+}
@@ -0,0 +1,117 @@
+package com.lujsom.booknest.api;
+
+import java.util.function.LongSupplier;
+
+/**
+ * CircuitBreaker tracks whether the Google Books API is healthy enough to be called.
+ * After a number of consecutive failures it opens and rejects calls for a cool-down period.
+ * Once the period is over a single probe call is let through: if it succeeds the breaker
+ * closes again, otherwise it stays open for another period. A probe that ends without telling
+ * either (cancelled, offline, answered from cache) is released so the next call can probe.
+ * The breaker is thread safe, since it is shared by the calls of every lane.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openUntil = 0;
+    private int timesOpened = 0;
+
+    /**
+     * Creates a closed breaker.
+     *
+     * @param failureThreshold Number of consecutive failures that opens the breaker.
+     * @param openMillis       How long the breaker stays open before a probe is allowed.
+     * @param clock            Source of the current time in milliseconds.
+     */
+    CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Checks whether a call may go to the network. When the cool-down is over the first
+     * caller is let through as the probe and the breaker moves to half-open.
+     *
+     * @return True if the call may be sent.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() >= openUntil) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false; // A probe is already on its way
+        }
+    }
+
+    /**
+     * Records a call that reached the API and got a usable answer.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a call that failed in a way that points at the API being degraded.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            open(openMillis);
+        }
+    }
+
+    /**
+     * Gives up the probe slot without an outcome, so the next call becomes the probe.
+     * Does nothing if the probe's success or failure was already recorded.
+     */
+    public synchronized void releaseProbe() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openUntil = clock.getAsLong(); // The cool-down is already over
+        }
+    }
+
+    /**
+     * Opens the breaker for at least the given time, used when the server asks
+     * the client to back off for longer than a retry is worth waiting.
+     *
+     * @param millis How long no call should be sent.
+     */
+    public synchronized void openFor(long millis) {
+        open(Math.max(millis, openMillis));
+    }
+
+    private void open(long millis) {
+        if (state != State.OPEN) {
+            timesOpened++;
+        }
+        state = State.OPEN;
+        openUntil = clock.getAsLong() + millis;
+    }
+
+    public synchronized State getState() { return state; }
+
+    /**
+     * @return Milliseconds until a probe is allowed, or 0 if the breaker is not open.
+     */
+    public synchronized long getRemainingOpenMillis() {
+        return state == State.OPEN ? Math.max(0, openUntil - clock.getAsLong()) : 0;
+    }
+
+    public synchronized int getTimesOpened() { return timesOpened; }
+}
@@ -0,0 +1,201 @@
+package com.lujsom.booknest.api;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * HttpCachePolicy decides how long Google Books responses stay in the OkHttp disk cache.
+ * Fresh responses are served straight from disk, stale responses are served while a
+ * background request revalidates them, and when the device is offline any cached copy is used.
+ */
+public class HttpCachePolicy {
+
+    private static final String TAG = "HttpCachePolicy";
+    // Marks the background request that refreshes a stale entry so it is not intercepted again
+    private static final String REVALIDATE_HEADER = "X-BookNest-Revalidate";
+
+    private final Context appContext;
+    private final int maxAgeSeconds;
+    private final int staleWhileRevalidateSeconds;
+    private final int maxStaleOfflineSeconds;
+    private final Set<String> revalidating = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicInteger staleHits = new AtomicInteger();
+    private final AtomicInteger offlineHits = new AtomicInteger();
+    private OkHttpClient client; // Client used for background revalidation
+    private Cache cache;
+
+    /**
+     * Creates a cache policy.
+     *
+     * @param context                     Any context, used to check network connectivity.
+     * @param maxAgeSeconds               How long a response is served without contacting the server.
+     * @param staleWhileRevalidateSeconds How long after expiry a response is still served while it is refreshed.
+     * @param maxStaleOfflineSeconds      How old a response may be when served with no network.
+     */
+    public HttpCachePolicy(Context context, int maxAgeSeconds, int staleWhileRevalidateSeconds, int maxStaleOfflineSeconds) {
+        this.appContext = context.getApplicationContext();
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.staleWhileRevalidateSeconds = staleWhileRevalidateSeconds;
+        this.maxStaleOfflineSeconds = maxStaleOfflineSeconds;
+    }
+
+    /**
+     * Binds the policy to the client and cache it is installed in.
+     *
+     * @param client The client used to send revalidation requests.
+     * @param cache  The disk cache, used for statistics.
+     */
+    void attach(OkHttpClient client, Cache cache) {
+        this.client = client;
+        this.cache = cache;
+    }
+
+    /**
+     * Interceptor that runs before the cache and chooses how much staleness the request accepts.
+     *
+     * @return An application interceptor.
+     */
+    public Interceptor requestInterceptor() {
+        return chain -> {
+            Request request = chain.request();
+            if (!"GET".equals(request.method())) {
+                return chain.proceed(request);
+            }
+            if (request.header(REVALIDATE_HEADER) != null) {
+                return chain.proceed(request.newBuilder().removeHeader(REVALIDATE_HEADER).build());
+            }
+
+            if (!isOnline()) {
+                // No network: serve whatever the cache holds instead of failing
+                Response response = chain.proceed(request.newBuilder()
+                        .cacheControl(new CacheControl.Builder()
+                                .onlyIfCached()
+                                .maxStale(maxStaleOfflineSeconds, TimeUnit.SECONDS)
+                                .build())
+                        .build());
+                if (response.isSuccessful()) {
+                    offlineHits.incrementAndGet();
+                }
+                return response;
+            }
+
+            Response response = chain.proceed(request.newBuilder()
+                    .cacheControl(new CacheControl.Builder()
+                            .maxStale(staleWhileRevalidateSeconds, TimeUnit.SECONDS)
+                            .build())
+                    .build());
+            if (isStale(response)) {
+                staleHits.incrementAndGet();
+                revalidate(request);
+            }
+            return response;
+        };
+    }
+
+    /**
+     * Interceptor that runs after the cache and replaces the server's caching headers
+     * with the app's own max-age, so responses can be stored and reused.
+     *
+     * @return A network interceptor.
+     */
+    public Interceptor responseInterceptor() {
+        return chain -> {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+            if (!"GET".equals(request.method()) || !response.isSuccessful()) {
+                return response;
+            }
+            return response.newBuilder()
+                    .removeHeader("Pragma")
+                    .removeHeader("Expires")
+                    .header("Cache-Control", "public, max-age=" + maxAgeSeconds)
+                    .build();
+        };
+    }
+
+    /**
+     * Checks whether a response came from the cache after its max-age had passed.
+     */
+    private boolean isStale(Response response) {
+        if (response.networkResponse() != null || response.cacheResponse() == null) {
+            return false;
+        }
+        for (String warning : response.headers("Warning")) {
+            if (warning.startsWith("110")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Refreshes a stale cache entry in the background. Only one refresh per URL runs at a time.
+     *
+     * @param request The request whose cached response is stale.
+     */
+    private void revalidate(Request request) {
+        final String url = request.url().toString();
+        if (client == null || !revalidating.add(url)) {
+            return;
+        }
+        Request refresh = request.newBuilder()
+                .cacheControl(CacheControl.FORCE_NETWORK)
+                .header(REVALIDATE_HEADER, "1")
+                .build();
+        client.newCall(refresh).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close(); // The network interceptor already stored the new body
+                revalidating.remove(url);
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.w(TAG, "Background revalidation failed for " + url, e);
+                revalidating.remove(url);
+            }
+        });
+    }
+
+    /**
+     * Checks whether the device currently has a network that can reach the internet.
+     */
+    private boolean isOnline() {
+        ConnectivityManager cm = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return true; // Assume online and let the request fail normally
+        }
+        Network network = cm.getActiveNetwork();
+        NetworkCapabilities capabilities = network != null ? cm.getNetworkCapabilities(network) : null;
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    // Statistics
+    public int getHitCount() { return cache != null ? cache.hitCount() : 0; }
+
+    public int getMissCount() { return cache != null ? cache.networkCount() : 0; }
+
+    public int getRequestCount() { return cache != null ? cache.requestCount() : 0; }
+
+    public int getStaleHitCount() { return staleHits.get(); }
+
+    public int getOfflineHitCount() { return offlineHits.get(); }
+}
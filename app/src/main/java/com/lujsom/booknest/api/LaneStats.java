@@ -0,0 +1,106 @@
+package com.lujsom.booknest.api;
+
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Call;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+
+/**
+ * LaneStats measures the queue of one {@link RequestLane}.
+ * It records when each call is enqueued and how long it waited for a free dispatcher slot.
+ */
+public class LaneStats {
+    private final RequestLane lane;
+    private final Dispatcher dispatcher;
+    private final Map<Call, Long> enqueuedAt = new ConcurrentHashMap<>();
+    private final AtomicInteger startedCalls = new AtomicInteger();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    LaneStats(RequestLane lane, Dispatcher dispatcher) {
+        this.lane = lane;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Records the time every call of the lane is enqueued and forgets it when the call ends.
+     *
+     * @return An event listener factory for the lane's client.
+     */
+    EventListener.Factory eventListenerFactory() {
+        EventListener listener = new EventListener() {
+            @Override
+            public void callStart(@NonNull Call call) {
+                enqueuedAt.put(call, SystemClock.elapsedRealtime());
+            }
+
+            @Override
+            public void callEnd(@NonNull Call call) {
+                enqueuedAt.remove(call);
+            }
+
+            @Override
+            public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+                enqueuedAt.remove(call);
+            }
+        };
+        return call -> listener;
+    }
+
+    /**
+     * Measures the wait of each call when the dispatcher finally starts it.
+     *
+     * @return An application interceptor that must run first in the chain.
+     */
+    Interceptor waitInterceptor() {
+        return chain -> {
+            Long queuedAt = enqueuedAt.get(chain.call());
+            if (queuedAt != null) {
+                long waited = SystemClock.elapsedRealtime() - queuedAt;
+                startedCalls.incrementAndGet();
+                totalWaitMillis.addAndGet(waited);
+                maxWaitMillis.accumulateAndGet(waited, Math::max);
+            }
+            return chain.proceed(chain.request());
+        };
+    }
+
+    public RequestLane getLane() { return lane; }
+
+    /**
+     * @return The number of calls waiting for a free slot in this lane.
+     */
+    public int getQueueDepth() { return dispatcher.queuedCallsCount(); }
+
+    /**
+     * @return The number of calls currently running in this lane.
+     */
+    public int getRunningCount() { return dispatcher.runningCallsCount(); }
+
+    /**
+     * @return The average time calls waited in the queue before starting.
+     */
+    public long getAverageWaitMillis() {
+        int started = startedCalls.get();
+        return started > 0 ? totalWaitMillis.get() / started : 0;
+    }
+
+    /**
+     * @return The longest time a call waited in the queue before starting.
+     */
+    public long getMaxWaitMillis() { return maxWaitMillis.get(); }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return lane + " lane: queued " + getQueueDepth() + ", running " + getRunningCount()
+                + ", avg wait " + getAverageWaitMillis() + " ms, max wait " + getMaxWaitMillis() + " ms";
+    }
+}
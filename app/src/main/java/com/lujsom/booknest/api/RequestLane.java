@@ -0,0 +1,31 @@
+package com.lujsom.booknest.api;
+
+/**
+ * RequestLane separates Google Books traffic by urgency.
+ * Each lane has its own dispatcher, so work in one lane never queues behind the other.
+ */
+public enum RequestLane {
+
+    // Requests the user is actively waiting for, such as searches and filter taps
+    INTERACTIVE(4, false),
+    // Speculative or secondary work, such as similar books and prefetching
+    BACKGROUND(2, true);
+
+    private final int maxRequests;
+    private final boolean lowPriority;
+
+    RequestLane(int maxRequests, boolean lowPriority) {
+        this.maxRequests = maxRequests;
+        this.lowPriority = lowPriority;
+    }
+
+    /**
+     * @return The maximum number of calls this lane runs at the same time.
+     */
+    public int getMaxRequests() { return maxRequests; }
+
+    /**
+     * @return True if the lane's threads run at background priority.
+     */
+    public boolean isLowPriority() { return lowPriority; }
+}
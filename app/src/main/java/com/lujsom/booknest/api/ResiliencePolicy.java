@@ -0,0 +1,346 @@
+package com.lujsom.booknest.api;
+
+import android.os.SystemClock;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLException;
+import okhttp3.CacheControl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * ResiliencePolicy decides what happens when a Google Books request fails.
+ * Failures that are likely to go away (timeouts, dropped connections, 429 and 5xx responses)
+ * are retried with exponential backoff and jitter, and a Retry-After header sent by the server
+ * is honored. The wait is slept in short slices, so a call that is cancelled meanwhile (a search
+ * replaced by a newer one) gives its dispatcher thread back right away. Repeated failures, or a
+ * Retry-After too long to wait for, open a {@link CircuitBreaker}; while it is open requests are
+ * answered from the disk cache, or fail right away when there is no cached copy.
+ */
+public class ResiliencePolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3; // First try plus two retries
+    public static final long DEFAULT_BASE_DELAY_MS = 500;
+    public static final long DEFAULT_MAX_DELAY_MS = 4000;
+    public static final long DEFAULT_MAX_RETRY_AFTER_MS = 5000; // Longer waits open the breaker instead
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MS = 30_000;
+    // Cancellation is checked this often while waiting for a retry
+    static final long CANCEL_CHECK_MS = 50;
+    // Error bodies kept when a response has to be closed before it is returned
+    private static final long MAX_BUFFERED_ERROR_BYTES = 64 * 1024;
+
+    /**
+     * Waits between two attempts. Replaced in tests so they do not have to sleep.
+     */
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final long maxRetryAfterMs;
+    private final CircuitBreaker breaker;
+    private final Sleeper sleeper;
+    private final Random random;
+
+    private final AtomicInteger retries = new AtomicInteger();
+    private final AtomicInteger cacheFallbacks = new AtomicInteger();
+    private final AtomicInteger failedFast = new AtomicInteger();
+
+    /**
+     * Creates a policy with the default settings.
+     */
+    public ResiliencePolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS, DEFAULT_MAX_RETRY_AFTER_MS,
+                new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MS, SystemClock::elapsedRealtime),
+                Thread::sleep, new Random());
+    }
+
+    /**
+     * Creates a policy.
+     *
+     * @param maxAttempts     Attempts per request, including the first one.
+     * @param baseDelayMs     Backoff before the first retry, doubled for every further retry.
+     * @param maxDelayMs      Upper bound of the backoff.
+     * @param maxRetryAfterMs Longest Retry-After that is waited for; a longer one opens the breaker.
+     * @param breaker         The breaker shared by every request of the API.
+     * @param sleeper         Waits between attempts.
+     * @param random          Source of the jitter.
+     */
+    ResiliencePolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, long maxRetryAfterMs,
+                     CircuitBreaker breaker, Sleeper sleeper, Random random) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.maxRetryAfterMs = maxRetryAfterMs;
+        this.breaker = breaker;
+        this.sleeper = sleeper;
+        this.random = random;
+    }
+
+    /**
+     * Interceptor that retries failed requests and guards the API with the circuit breaker.
+     * It must run after the cache policy's request interceptor, so each attempt still goes
+     * through the disk cache.
+     *
+     * @return An application interceptor.
+     */
+    public Interceptor interceptor() {
+        return chain -> {
+            Request request = chain.request();
+            if (!"GET".equals(request.method())) {
+                return chain.proceed(request); // Only idempotent requests are retried
+            }
+            if (!breaker.allowRequest()) {
+                return fromCacheOrFail(chain, request);
+            }
+            // A probe after the cool-down gets a single attempt
+            boolean probe = breaker.getState() == CircuitBreaker.State.HALF_OPEN;
+            try {
+                return proceedWithRetries(chain, request, probe ? 1 : maxAttempts);
+            } finally {
+                if (probe) {
+                    breaker.releaseProbe(); // No-op once an outcome was recorded
+                }
+            }
+        };
+    }
+
+    /**
+     * Sends a request, retrying failures that are likely to go away, and records the outcome in the breaker.
+     */
+    private Response proceedWithRetries(Interceptor.Chain chain, Request request, int attempts) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            if (chain.call().isCanceled()) {
+                if (response != null) return response;
+                throw failure;
+            }
+            if (failure != null && !isRetryable(failure)) {
+                throw failure; // Not the API's fault, e.g. no network at all
+            }
+            if (response != null && (response.networkResponse() == null || !isRetryable(response.code()))) {
+                if (response.networkResponse() != null) {
+                    breaker.recordSuccess();
+                }
+                return response; // Served from cache, or an answer retrying cannot change
+            }
+
+            long retryAfter = response != null
+                    ? parseRetryAfter(response.header("Retry-After"), System.currentTimeMillis())
+                    : -1;
+            if (retryAfter > maxRetryAfterMs) {
+                breaker.openFor(retryAfter); // The server asked for a long pause, stop sending
+                // Answered like any request while the breaker is open, and the rate limit
+                // response only if nothing is cached. It is buffered and closed first,
+                // since the chain cannot proceed while a response is open.
+                Response limited = response.newBuilder()
+                        .body(response.peekBody(MAX_BUFFERED_ERROR_BYTES))
+                        .build();
+                response.close();
+                Response cached = fromCache(chain, request);
+                return cached != null ? cached : limited;
+            }
+            if (attempt >= attempts) {
+                breaker.recordFailure();
+                if (response != null) return response;
+                throw failure;
+            }
+
+            if (response != null) {
+                response.close();
+            }
+            retries.incrementAndGet();
+            waitForRetry(chain, retryAfter >= 0 ? retryAfter : backoffDelay(attempt));
+        }
+    }
+
+    /**
+     * Waits before a retry in short slices, and gives up as soon as the call is cancelled,
+     * which does not interrupt a sleeping thread.
+     */
+    private void waitForRetry(Interceptor.Chain chain, long delayMs) throws IOException {
+        long remaining = delayMs;
+        while (remaining > 0) {
+            long slice = Math.min(CANCEL_CHECK_MS, remaining);
+            try {
+                sleeper.sleep(slice);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Retry interrupted");
+            }
+            remaining -= slice;
+            if (chain.call().isCanceled()) {
+                throw new IOException("Canceled");
+            }
+        }
+    }
+
+    /**
+     * Answers a request from the disk cache while the breaker is open.
+     */
+    private Response fromCacheOrFail(Interceptor.Chain chain, Request request) throws IOException {
+        Response cached = fromCache(chain, request);
+        if (cached != null) {
+            return cached;
+        }
+        failedFast.incrementAndGet();
+        throw new ApiUnavailableException(breaker.getRemainingOpenMillis());
+    }
+
+    /**
+     * Looks a request up in the disk cache only, however old the cached copy is.
+     *
+     * @return The cached response, or null if there is none.
+     */
+    private Response fromCache(Interceptor.Chain chain, Request request) throws IOException {
+        Response cached = chain.proceed(request.newBuilder()
+                .cacheControl(new CacheControl.Builder()
+                        .onlyIfCached()
+                        .maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS)
+                        .build())
+                .build());
+        if (cached.isSuccessful()) {
+            cacheFallbacks.incrementAndGet();
+            return cached;
+        }
+        cached.close();
+        return null;
+    }
+
+    /**
+     * Computes the wait before a retry: an exponentially growing window, of which a random
+     * half is used so that clients that failed together do not retry together.
+     *
+     * @param attempt The attempt that just failed, starting at 1.
+     * @return The delay in milliseconds.
+     */
+    long backoffDelay(int attempt) {
+        long window = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 20));
+        return window / 2 + (long) (random.nextDouble() * (window / 2));
+    }
+
+    /**
+     * Checks whether a response code is worth retrying.
+     *
+     * @param code The HTTP status code.
+     * @return True for request timeouts, rate limiting and server errors.
+     */
+    public static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * Checks whether a network failure is worth retrying.
+     *
+     * @param e The failure.
+     * @return True for timeouts and dropped connections, false when the device is offline,
+     * the connection is not trusted or the call was cancelled.
+     */
+    public static boolean isRetryable(IOException e) {
+        if (e instanceof ApiUnavailableException || e instanceof UnknownHostException || e instanceof SSLException) {
+            return false;
+        }
+        if (e instanceof InterruptedIOException) {
+            return e instanceof SocketTimeoutException; // Other interruptions are cancellations
+        }
+        return true;
+    }
+
+    /**
+     * Parses a Retry-After header, given either as seconds or as an HTTP date.
+     *
+     * @param value   The header value, may be null.
+     * @param nowWall The current wall clock time in milliseconds.
+     * @return The wait in milliseconds, or -1 if the header is missing or invalid.
+     */
+    static long parseRetryAfter(String value, long nowWall) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(trimmed)));
+        } catch (NumberFormatException ignored) {
+            // Not a number, try the date form
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            Date date = format.parse(trimmed);
+            return date != null ? Math.max(0, date.getTime() - nowWall) : -1;
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Turns a failed call into a message that can be shown to the user.
+     *
+     * @param t The failure reported by Retrofit or OkHttp.
+     * @return A short description of the problem.
+     */
+    public static String describe(Throwable t) {
+        if (t instanceof ApiUnavailableException) {
+            return t.getMessage();
+        }
+        if (t instanceof UnknownHostException) {
+            return "No internet connection";
+        }
+        if (t instanceof SocketTimeoutException) {
+            return "Google Books took too long to answer, please try again";
+        }
+        return "API Error: " + t.getMessage();
+    }
+
+    /**
+     * Turns an unsuccessful response into a message that can be shown to the user.
+     *
+     * @param code The HTTP status code.
+     * @return A short description of the problem.
+     */
+    public static String describe(int code) {
+        if (code == 429) {
+            return "Too many requests to Google Books, please try again in a moment";
+        }
+        if (code >= 500) {
+            return "Google Books is having problems, please try again later";
+        }
+        return "Error loading books (" + code + ")";
+    }
+
+    public CircuitBreaker getCircuitBreaker() { return breaker; }
+
+    public int getRetryCount() { return retries.get(); }
+
+    public int getCacheFallbackCount() { return cacheFallbacks.get(); }
+
+    public int getFailedFastCount() { return failedFast.get(); }
+
+    @Override
+    public String toString() {
+        return "Resilience: breaker " + breaker.getState()
+                + " (opened " + breaker.getTimesOpened() + "x)"
+                + ", retries: " + retries.get()
+                + ", cache fallbacks: " + cacheFallbacks.get()
+                + ", failed fast: " + failedFast.get();
+    }
+}
@@ -0,0 +1,23 @@
+package com.lujsom.booknest.api;
+
+/**
+ * VolumeFields holds the partial-response masks sent in the {@code fields} parameter of
+ * Google Books requests. Each mask lists exactly the properties mapped by
+ * {@link com.lujsom.booknest.models.BookItem} and {@link com.lujsom.booknest.models.BookResponse},
+ * so the API leaves out everything the app would parse and throw away.
+ * When a model gains or loses a field, the mask must be updated as well (VolumeFieldsTest checks this).
+ */
+public final class VolumeFields {
+
+    // Properties of one volume, matching BookItem
+    public static final String VOLUME = "id,"
+            + "volumeInfo(title,authors,publishedDate,categories,averageRating,description,imageLinks/thumbnail,previewLink),"
+            + "accessInfo/pdf(isAvailable,downloadLink)";
+
+    // Properties of a search result page, matching BookResponse
+    public static final String VOLUME_LIST = "totalItems,items(" + VOLUME + ")";
+
+    private VolumeFields() {
+        // Constants only
+    }
+}
@@ -0,0 +1,253 @@
+package com.lujsom.booknest.api;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+import com.lujsom.booknest.BuildConfig;
+import com.lujsom.booknest.models.Book;
+import com.lujsom.booknest.models.BookItem;
+import com.lujsom.booknest.models.BookRegistry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * VolumeRepository looks up complete books by their Google Books volume ID.
+ * Screens that only know a book's ID and title (such as saved favorites and the reading list)
+ * use it to fill in the rest. Looked up books are kept in memory for a while, concurrent
+ * lookups of the same ID share one request, and whole lists are completed a few books at a time.
+ * All methods must be called from the main thread, and callbacks are delivered on the main thread.
+ */
+public class VolumeRepository {
+
+    private static final String TAG = "VolumeRepository";
+
+    // How long a looked up book is reused without asking the API again
+    public static final long TTL_MS = TimeUnit.MINUTES.toMillis(30);
+    // Books kept in memory, the least recently used are dropped first
+    private static final int MAX_ENTRIES = 200;
+    // Lookups in flight while completing a list, leaving the interactive lane a free slot for searches
+    public static final int DEFAULT_MAX_CONCURRENT = 3;
+
+    private static VolumeRepository instance;
+
+    /**
+     * A cached book and the time it was fetched.
+     */
+    private static class Entry {
+        final Book book;
+        final long fetchedAt;
+
+        Entry(Book book, long fetchedAt) {
+            this.book = book;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * The completion of a list of books, which can be cancelled when the screen goes away.
+     */
+    public class Hydration {
+        private final Deque<String> queue;
+        private final int maxConcurrent;
+        private final Consumer<Book> onHydrated;
+        private final Runnable onFinished;
+        private int inFlight = 0;
+        private boolean cancelled = false;
+        private boolean running = false; // Inside the loop of next()
+        private boolean finished = false;
+
+        private Hydration(List<String> ids, int maxConcurrent, Consumer<Book> onHydrated, Runnable onFinished) {
+            this.queue = new ArrayDeque<>(ids);
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            this.onHydrated = onHydrated;
+            this.onFinished = onFinished;
+        }
+
+        /**
+         * Starts lookups until the concurrency limit is reached. Cached books are delivered right away.
+         * A lookup that answers synchronously calls back in here while the loop runs; it returns at
+         * once and the loop carries on, so onFinished runs a single time.
+         */
+        private void next() {
+            if (running) {
+                return;
+            }
+            running = true;
+            while (!cancelled && inFlight < maxConcurrent && !queue.isEmpty()) {
+                String id = queue.poll();
+                Book cached = getCached(id);
+                if (cached != null) {
+                    onHydrated.accept(cached);
+                    continue;
+                }
+                inFlight++;
+                get(id, book -> {
+                    inFlight--;
+                    if (cancelled) return;
+                    if (book != null) {
+                        onHydrated.accept(book);
+                    }
+                    next();
+                });
+            }
+            running = false;
+            if (!cancelled && !finished && inFlight == 0 && queue.isEmpty()) {
+                finished = true;
+                if (onFinished != null) {
+                    onFinished.run();
+                }
+            }
+        }
+
+        /**
+         * Stops delivering books. Lookups that are already on their way still fill the cache.
+         */
+        public void cancel() {
+            cancelled = true;
+            queue.clear();
+        }
+    }
+
+    private final LruCache<String, Entry> cache = new LruCache<>(MAX_ENTRIES);
+    private final Map<String, List<Consumer<Book>>> pending = new HashMap<>(); // Callbacks of lookups in flight, by ID
+    private final String apiKey;
+
+    // Counters for monitoring the cache
+    private int hits = 0;
+    private int requests = 0;
+
+    /**
+     * Returns the shared repository.
+     *
+     * @return The VolumeRepository instance.
+     */
+    public static VolumeRepository getInstance() {
+        if (instance == null) {
+            instance = new VolumeRepository(BuildConfig.GOOGLE_BOOKS_API_KEY);
+        }
+        return instance;
+    }
+
+    private VolumeRepository(String apiKey) {
+        this.apiKey = apiKey;
+    }
+
+    /**
+     * Returns a cached book if it is still fresh.
+     *
+     * @param volumeId The Google Books volume ID.
+     * @return The book, or null if it is not cached or has expired.
+     */
+    public Book getCached(String volumeId) {
+        Entry entry = volumeId != null ? cache.get(volumeId) : null;
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - entry.fetchedAt > TTL_MS) {
+            cache.remove(volumeId);
+            return null;
+        }
+        hits++;
+        return entry.book;
+    }
+
+    /**
+     * Looks up a book by its ID, from the cache if possible.
+     *
+     * @param volumeId The Google Books volume ID.
+     * @param callback Receives the book, or null if it could not be loaded.
+     */
+    public void get(String volumeId, Consumer<Book> callback) {
+        if (!isVolumeId(volumeId)) {
+            callback.accept(null);
+            return;
+        }
+        Book cached = getCached(volumeId);
+        if (cached != null) {
+            callback.accept(cached);
+            return;
+        }
+
+        List<Consumer<Book>> callbacks = pending.get(volumeId);
+        if (callbacks != null) {
+            callbacks.add(callback); // Already being looked up
+            return;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        pending.put(volumeId, callbacks);
+        requests++;
+
+        BookApiService service = ApiClient.getService(RequestLane.INTERACTIVE);
+        service.getVolume(volumeId, VolumeFields.VOLUME, apiKey).enqueue(new Callback<>() {
+            @Override
+            public void onResponse(@NonNull Call<BookItem> call, @NonNull Response<BookItem> response) {
+                Book book = null;
+                if (response.isSuccessful() && response.body() != null) {
+                    book = BookRegistry.getInstance().register(new Book(response.body()));
+                    cache.put(volumeId, new Entry(book, SystemClock.elapsedRealtime()));
+                } else {
+                    Log.w(TAG, "Could not load volume " + volumeId + ": " + ResiliencePolicy.describe(response.code()));
+                }
+                deliver(volumeId, book);
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<BookItem> call, @NonNull Throwable t) {
+                Log.w(TAG, "Could not load volume " + volumeId + ": " + ResiliencePolicy.describe(t));
+                deliver(volumeId, null);
+            }
+        });
+    }
+
+    /**
+     * Completes a list of books, looking up at most a few of them at the same time.
+     *
+     * @param books         The books to complete, only their IDs are used.
+     * @param maxConcurrent The most lookups in flight at once.
+     * @param onHydrated    Receives each completed book, in no particular order.
+     * @param onFinished    Called once every book was handled, may be null.
+     * @return A handle to stop the completion.
+     */
+    public Hydration hydrateAll(List<Book> books, int maxConcurrent, Consumer<Book> onHydrated, Runnable onFinished) {
+        List<String> ids = new ArrayList<>();
+        for (Book book : books) {
+            if (isVolumeId(book.getBookId()) && !ids.contains(book.getBookId())) {
+                ids.add(book.getBookId());
+            }
+        }
+        Hydration hydration = new Hydration(ids, maxConcurrent, onHydrated, onFinished);
+        hydration.next();
+        return hydration;
+    }
+
+    /**
+     * Checks whether an ID can be looked up. Books without one get the ID "N/A" from the parser.
+     */
+    private static boolean isVolumeId(String id) {
+        return id != null && !id.trim().isEmpty() && !"N/A".equals(id);
+    }
+
+    private void deliver(String volumeId, Book book) {
+        List<Consumer<Book>> callbacks = pending.remove(volumeId);
+        if (callbacks != null) {
+            for (Consumer<Book> callback : callbacks) {
+                callback.accept(book);
+            }
+        }
+    }
+
+    public int getHitCount() { return hits; }
+
+    public int getRequestCount() { return requests; }
+}
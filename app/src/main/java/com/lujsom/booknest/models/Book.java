@@ -1,5 +1,7 @@
 package com.lujsom.booknest.models;
 
+import java.util.Objects;
+
 /**
  * The Book class represents a book object in the application.
  * It includes details such as title, author, genre, rating, description, and URLs for images and reading.
@@ -45,10 +47,11 @@ public class Book {
                 String rating, String description, String imageUrl, String googleBooksUrl, String pdfUrl, String readingUrl) {
         this.bookId = bookId != null ? bookId : "N/A";
         this.title = title != null ? title : "Unknown Title";
-        this.author = author != null ? author : "Unknown Author";
-        this.publishedYear = publishedYear != null ? publishedYear : "N/A";
-        this.genre = genre != null ? genre : "Unknown";
-        this.rating = rating != null ? rating : "0.0";
+        // Values shared by many books are interned, see BookRegistry
+        this.author = BookRegistry.intern(author != null ? author : "Unknown Author");
+        this.publishedYear = BookRegistry.intern(publishedYear != null ? publishedYear : "N/A");
+        this.genre = BookRegistry.intern(genre != null ? genre : "Unknown");
+        this.rating = BookRegistry.intern(rating != null ? rating : "0.0");
         this.description = description != null ? description : "No description available.";
 
         // Ensure image URLs use HTTPS for security
@@ -60,6 +63,33 @@ public class Book {
         this.readingUrl = readingUrl != null ? readingUrl : "";
     }
 
+    /**
+     * Recreates a book from the values of a book that was saved before, such as a stored search result.
+     * Unlike the constructor, no defaults are filled in, so the copy has the same content as the
+     * book it was saved from, whichever way that book was created. The values are in the order of
+     * {@link #Book(String, String, String, String, String, String, String, String, String, String, String)}.
+     *
+     * @return The book.
+     */
+    public static Book restore(String bookId, String title, String author, String publishedYear, String genre,
+                               String rating, String description, String imageUrl, String googleBooksUrl,
+                               String pdfUrl, String readingUrl) {
+        Book book = new Book();
+        book.bookId = bookId;
+        book.title = title;
+        // Values shared by many books are interned, see BookRegistry
+        book.author = BookRegistry.intern(author);
+        book.publishedYear = BookRegistry.intern(publishedYear);
+        book.genre = BookRegistry.intern(genre);
+        book.rating = BookRegistry.intern(rating);
+        book.description = description;
+        book.imageUrl = imageUrl;
+        book.googleBooksUrl = googleBooksUrl;
+        book.pdfUrl = pdfUrl;
+        book.readingUrl = readingUrl;
+        return book;
+    }
+
     /**
      * Constructor that initializes a Book object using a BookItem retrieved from the API.
      *
@@ -68,10 +98,11 @@ public class Book {
     public Book(BookItem item) {
         this.bookId = item.getId();
         this.title = item.getVolumeInfo().getTitle();
-        this.author = item.getVolumeInfo().getAuthor();
-        this.publishedYear = item.getVolumeInfo().getPublishedDate();
-        this.genre = item.getVolumeInfo().getGenre();
-        this.rating = item.getVolumeInfo().getRating();
+        // Values shared by many books are interned, see BookRegistry
+        this.author = BookRegistry.intern(item.getVolumeInfo().getAuthor());
+        this.publishedYear = BookRegistry.intern(item.getVolumeInfo().getPublishedDate());
+        this.genre = BookRegistry.intern(item.getVolumeInfo().getGenre());
+        this.rating = BookRegistry.intern(item.getVolumeInfo().getRating());
         this.description = item.getVolumeInfo().getDescription();
         this.imageUrl = item.getVolumeInfo().getThumbnail();
 
@@ -103,5 +134,39 @@ public class Book {
     public String getImageUrl() {return imageUrl;}
 
     public String getGoogleBooksUrl() {return googleBooksUrl;}
+
+    public String getPdfUrl() {return pdfUrl;}
     public String getReadingUrl() { return readingUrl; }
+
+    /**
+     * Returns the key that identifies a book across lists. Books without an ID fall back to their title.
+     *
+     * @param book The book.
+     * @return The book's ID, or its title if it has none.
+     */
+    public static String keyOf(Book book) {
+        String id = book.getBookId();
+        return id != null && !id.isEmpty() && !"N/A".equals(id) ? id : "title:" + book.getTitle();
+    }
+
+    /**
+     * Compares every field of two books, used to tell whether a newer copy of a book changed anything.
+     *
+     * @param other The book to compare with, may be null.
+     * @return True if both books hold the same values.
+     */
+    public boolean hasSameContent(Book other) {
+        return other != null
+                && Objects.equals(bookId, other.bookId)
+                && Objects.equals(title, other.title)
+                && Objects.equals(author, other.author)
+                && Objects.equals(publishedYear, other.publishedYear)
+                && Objects.equals(genre, other.genre)
+                && Objects.equals(rating, other.rating)
+                && Objects.equals(description, other.description)
+                && Objects.equals(imageUrl, other.imageUrl)
+                && Objects.equals(googleBooksUrl, other.googleBooksUrl)
+                && Objects.equals(pdfUrl, other.pdfUrl)
+                && Objects.equals(readingUrl, other.readingUrl);
+    }
 }
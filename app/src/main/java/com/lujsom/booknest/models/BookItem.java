@@ -1,11 +1,19 @@
 package com.lujsom.booknest.models;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * BookItem represents a book object retrieved from the Google Books API.
  * It includes metadata such as title, author, published date, rating, description, and access information.
+ * Instances are mapped by {@link JsonAdapter} instead of Gson's reflection; the @SerializedName
+ * annotations document the JSON names and are checked against the fields mask in tests.
  */
 public class BookItem {
     @SerializedName("id")
@@ -185,4 +193,234 @@ public class BookItem {
             return (isAvailable && downloadLink != null) ? downloadLink : "";
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * JsonAdapter maps a volume and its nested objects without reflection.
+     * Missing or null properties leave the fields null, so the getters apply the same fallbacks
+     * as with Gson's reflective adapter. Unknown properties are skipped.
+     */
+    public static class JsonAdapter extends TypeAdapter<BookItem> {
+
+        @Override
+        public BookItem read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            BookItem item = new BookItem();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        item.id = readString(in);
+                        break;
+                    case "volumeInfo":
+                        item.volumeInfo = readVolumeInfo(in);
+                        break;
+                    case "accessInfo":
+                        item.accessInfo = readAccessInfo(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return item;
+        }
+
+        private static VolumeInfo readVolumeInfo(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            VolumeInfo info = new VolumeInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "title":
+                        info.title = readString(in);
+                        break;
+                    case "authors":
+                        info.authors = readStringList(in);
+                        break;
+                    case "publishedDate":
+                        info.publishedDate = readString(in);
+                        break;
+                    case "categories":
+                        info.categories = readStringList(in);
+                        break;
+                    case "averageRating":
+                        info.averageRating = readDouble(in);
+                        break;
+                    case "description":
+                        info.description = readString(in);
+                        break;
+                    case "imageLinks":
+                        info.imageLinks = readImageLinks(in);
+                        break;
+                    case "previewLink":
+                        info.previewLink = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return info;
+        }
+
+        private static ImageLinks readImageLinks(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            ImageLinks links = new ImageLinks();
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("thumbnail".equals(in.nextName())) {
+                    links.thumbnail = readString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return links;
+        }
+
+        private static AccessInfo readAccessInfo(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            AccessInfo access = new AccessInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("pdf".equals(in.nextName())) {
+                    access.pdf = readPdfInfo(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return access;
+        }
+
+        private static PdfInfo readPdfInfo(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            PdfInfo pdf = new PdfInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "isAvailable":
+                        pdf.isAvailable = readBoolean(in);
+                        break;
+                    case "downloadLink":
+                        pdf.downloadLink = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return pdf;
+        }
+
+        // Value readers that accept the same inputs as Gson's built-in adapters
+        private static String readString(JsonReader in) throws IOException {
+            JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            if (token == JsonToken.BOOLEAN) {
+                return Boolean.toString(in.nextBoolean());
+            }
+            return in.nextString();
+        }
+
+        private static Double readDouble(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return in.nextDouble();
+        }
+
+        private static boolean readBoolean(JsonReader in) throws IOException {
+            JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return false;
+            }
+            if (token == JsonToken.STRING) {
+                return Boolean.parseBoolean(in.nextString());
+            }
+            return in.nextBoolean();
+        }
+
+        private static List<String> readStringList(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<String> values = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                values.add(readString(in));
+            }
+            in.endArray();
+            return values;
+        }
+
+        @Override
+        public void write(JsonWriter out, BookItem item) throws IOException {
+            if (item == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(item.id);
+            if (item.volumeInfo != null) {
+                VolumeInfo info = item.volumeInfo;
+                out.name("volumeInfo").beginObject();
+                out.name("title").value(info.title);
+                writeStringList(out.name("authors"), info.authors);
+                out.name("publishedDate").value(info.publishedDate);
+                writeStringList(out.name("categories"), info.categories);
+                out.name("averageRating").value(info.averageRating);
+                out.name("description").value(info.description);
+                if (info.imageLinks != null) {
+                    out.name("imageLinks").beginObject().name("thumbnail").value(info.imageLinks.thumbnail).endObject();
+                }
+                out.name("previewLink").value(info.previewLink);
+                out.endObject();
+            }
+            if (item.accessInfo != null) {
+                out.name("accessInfo").beginObject();
+                if (item.accessInfo.pdf != null) {
+                    out.name("pdf").beginObject()
+                            .name("isAvailable").value(item.accessInfo.pdf.isAvailable)
+                            .name("downloadLink").value(item.accessInfo.pdf.downloadLink)
+                            .endObject();
+                }
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        private static void writeStringList(JsonWriter out, List<String> values) throws IOException {
+            if (values == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (String value : values) {
+                out.value(value);
+            }
+            out.endArray();
+        }
+    }
+}
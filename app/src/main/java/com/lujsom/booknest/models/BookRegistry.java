@@ -0,0 +1,120 @@
+package com.lujsom.booknest.models;
+
+import android.util.LruCache;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * BookRegistry keeps one canonical {@link Book} instance per book ID for the whole process.
+ * Search results, stored results and looked up volumes are registered here, so every screen
+ * that shows the same book shares one object, and activities hand books to each other by ID
+ * instead of copying their fields into an Intent. The most recently used books are retained.
+ * Strings that repeat across many books, such as authors and genres, are interned.
+ * The registry is thread safe.
+ */
+public final class BookRegistry {
+
+    // Books retained, the least recently used are dropped first
+    private static final int MAX_BOOKS = 300;
+
+    private static BookRegistry instance;
+    private static final WeakHashMap<String, WeakReference<String>> strings = new WeakHashMap<>();
+
+    private final LruCache<String, Book> books = new LruCache<>(MAX_BOOKS);
+
+    /**
+     * Returns the shared registry.
+     *
+     * @return The BookRegistry instance.
+     */
+    public static synchronized BookRegistry getInstance() {
+        if (instance == null) {
+            instance = new BookRegistry();
+        }
+        return instance;
+    }
+
+    private BookRegistry() {
+        // Singleton
+    }
+
+    /**
+     * Registers a book and returns the canonical instance for its ID. If a book with the same
+     * content is already registered, that instance is returned and the new one can be dropped;
+     * otherwise the new book replaces the old one.
+     *
+     * @param book A complete book, such as one mapped from the API.
+     * @return The canonical instance.
+     */
+    public synchronized Book register(Book book) {
+        String id = book.getBookId();
+        if (id == null || "N/A".equals(id)) {
+            return book; // Cannot be identified
+        }
+        Book existing = books.get(id);
+        if (existing != null && existing.hasSameContent(book)) {
+            return existing;
+        }
+        books.put(id, book);
+        return book;
+    }
+
+    /**
+     * Registers a book only if no book with its ID is registered, used for copies that may be
+     * older than the instance the screens already share, such as stored search results.
+     *
+     * @param book A complete book.
+     * @return The registered instance if there is one, otherwise the book.
+     */
+    public synchronized Book registerIfAbsent(Book book) {
+        Book existing = get(book.getBookId());
+        return existing != null ? existing : register(book);
+    }
+
+    /**
+     * Registers every book of a list.
+     *
+     * @param list Complete books.
+     * @return The canonical instances, in the same order.
+     */
+    public synchronized List<Book> registerAll(List<Book> list) {
+        List<Book> canonical = new ArrayList<>(list.size());
+        for (Book book : list) {
+            canonical.add(register(book));
+        }
+        return canonical;
+    }
+
+    /**
+     * Returns the canonical instance of a book.
+     *
+     * @param bookId The book's ID.
+     * @return The book, or null if it is not registered (or was dropped).
+     */
+    public synchronized Book get(String bookId) {
+        return bookId != null ? books.get(bookId) : null;
+    }
+
+    /**
+     * Returns a shared copy of a string, so repeated values like author names are stored once.
+     *
+     * @param value The string, may be null.
+     * @return An equal string shared with other callers.
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (strings) {
+            WeakReference<String> ref = strings.get(value);
+            String shared = ref != null ? ref.get() : null;
+            if (shared == null) {
+                strings.put(value, new WeakReference<>(value));
+                shared = value;
+            }
+            return shared;
+        }
+    }
+}
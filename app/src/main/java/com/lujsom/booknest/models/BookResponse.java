@@ -1,6 +1,11 @@
 package com.lujsom.booknest.models;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -8,11 +13,25 @@ import java.util.List;
 /**
  * BookResponse represents the response from the Google Books API.
  * It contains a list of book items retrieved from the API.
+ * Instances are mapped by {@link JsonAdapter} instead of Gson's reflection.
  */
 public class BookResponse {
+    @SerializedName("totalItems")
+    private int totalItems;
+
     @SerializedName("items")
     private List<BookItem> items;
 
+    /**
+     * Retrieves the total number of matches reported by the API.
+     * The value is an estimate and may change from page to page.
+     *
+     * @return The number of matching volumes.
+     */
+    public int getTotalItems() {
+        return totalItems;
+    }
+
     /**
      * Retrieves the list of book items from the API response.
      *
@@ -39,4 +58,67 @@ public class BookResponse {
         }
         return bookList;
     }
-}
\ No newline at end of file
+
+    /**
+     * JsonAdapter maps a volumes response without reflection, delegating each item
+     * to {@link BookItem.JsonAdapter}. Unknown properties are skipped.
+     */
+    public static class JsonAdapter extends TypeAdapter<BookResponse> {
+        private final BookItem.JsonAdapter itemAdapter = new BookItem.JsonAdapter();
+
+        @Override
+        public BookResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            BookResponse response = new BookResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "totalItems":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            response.totalItems = in.nextInt();
+                        }
+                        break;
+                    case "items":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            break;
+                        }
+                        response.items = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            response.items.add(itemAdapter.read(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+
+        @Override
+        public void write(JsonWriter out, BookResponse response) throws IOException {
+            if (response == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("totalItems").value(response.totalItems);
+            if (response.items != null) {
+                out.name("items").beginArray();
+                for (BookItem item : response.items) {
+                    itemAdapter.write(out, item);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.lujsom.booknest.utils;
+
+import com.lujsom.booknest.models.Book;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * BookPageWindow keeps a bounded run of consecutive result pages in memory.
+ * When a page is added past the limit, the page at the opposite end is evicted,
+ * so long browsing sessions keep a flat memory footprint.
+ * The API can return the same volume on two pages, so a book that is already in the window is
+ * left out of the page that brings it again; the adapter relies on every row having its own key.
+ */
+public class BookPageWindow {
+    private final int maxPages;
+    private final Deque<List<Book>> pages = new ArrayDeque<>();
+    private final List<Book> books = new ArrayList<>(); // Flattened view of the pages, shown by the adapter
+    private final Set<String> keys = new HashSet<>(); // Keys of the books in the window, see Book.keyOf
+    private int firstPage = 0;
+    private boolean endReached = false;
+
+    /**
+     * Creates an empty window.
+     *
+     * @param maxPages The maximum number of pages kept at the same time.
+     */
+    public BookPageWindow(int maxPages) {
+        this.maxPages = Math.max(1, maxPages);
+    }
+
+    /**
+     * Clears the window so it can hold the pages of a new query.
+     */
+    public void reset() {
+        pages.clear();
+        books.clear();
+        keys.clear();
+        firstPage = 0;
+        endReached = false;
+    }
+
+    /**
+     * Adds a page after the last one. If the window is full, the first page is evicted.
+     *
+     * @param pageIndex The index of the page, must follow the current last page.
+     * @param pageBooks The books of the page.
+     * @return The number of books evicted from the start of the list, or -1 if the page was not adjacent.
+     */
+    public int append(int pageIndex, List<Book> pageBooks) {
+        if (!pages.isEmpty() && pageIndex != getLastPage() + 1) {
+            return -1;
+        }
+        if (pages.isEmpty()) {
+            firstPage = pageIndex;
+        }
+        if (pageBooks.isEmpty()) {
+            endReached = true;
+            return 0;
+        }
+        // Evicted first, so a book repeated from the evicted page stays on screen
+        int evicted = 0;
+        if (pages.size() >= maxPages) {
+            evicted = forget(pages.removeFirst());
+            books.subList(0, evicted).clear();
+            firstPage++;
+        }
+        List<Book> page = withoutShown(pageBooks);
+        pages.addLast(page);
+        books.addAll(page);
+        return evicted;
+    }
+
+    /**
+     * Adds books to the last page, used while a page is still arriving in batches.
+     * Starts the first page if the window is empty.
+     *
+     * @param batch The books to add.
+     */
+    public void addToLastPage(List<Book> batch) {
+        if (pages.isEmpty()) {
+            pages.addLast(new ArrayList<>());
+        }
+        List<Book> added = withoutShown(batch);
+        pages.getLast().addAll(added);
+        books.addAll(added);
+    }
+
+    /**
+     * Adds a page before the first one, used when scrolling back up. If the window is full,
+     * the last page is evicted.
+     *
+     * @param pageIndex The index of the page, must precede the current first page.
+     * @param pageBooks The books of the page.
+     * @return The number of books evicted from the end of the list, or -1 if the page was not adjacent.
+     */
+    public int prepend(int pageIndex, List<Book> pageBooks) {
+        if (pages.isEmpty() || pageIndex != firstPage - 1) {
+            return -1;
+        }
+        int evicted = 0;
+        if (pages.size() >= maxPages) {
+            evicted = forget(pages.removeLast());
+            books.subList(books.size() - evicted, books.size()).clear();
+            endReached = false; // The evicted page has to be fetched again
+        }
+        List<Book> page = withoutShown(pageBooks);
+        pages.addFirst(page);
+        books.addAll(0, page);
+        firstPage = pageIndex;
+        return evicted;
+    }
+
+    /**
+     * Records that the last page in the window is the final page of the results.
+     */
+    public void markEndReached() {
+        endReached = true;
+    }
+
+    /**
+     * @return The books of all pages in the window, in display order.
+     */
+    public List<Book> getBooks() { return books; }
+
+    public int getFirstPage() { return firstPage; }
+
+    public int getLastPage() { return firstPage + pages.size() - 1; }
+
+    public boolean isEmpty() { return pages.isEmpty(); }
+
+    /**
+     * @return True if the API returned an empty page, meaning there are no further results.
+     */
+    public boolean isEndReached() { return endReached; }
+
+    /**
+     * Returns the books of a page whose keys are not in the window yet, keeping the first of
+     * any key repeated within the page, and records their keys.
+     */
+    private List<Book> withoutShown(List<Book> pageBooks) {
+        List<Book> added = new ArrayList<>(pageBooks.size());
+        for (Book book : pageBooks) {
+            if (keys.add(Book.keyOf(book))) {
+                added.add(book);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Drops the keys of an evicted page, so its books can be shown again later.
+     *
+     * @return The number of books on the page.
+     */
+    private int forget(List<Book> page) {
+        for (Book book : page) {
+            keys.remove(Book.keyOf(book));
+        }
+        return page.size();
+    }
+}
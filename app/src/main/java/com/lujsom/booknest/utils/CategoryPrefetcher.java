@@ -0,0 +1,196 @@
+package com.lujsom.booknest.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.PowerManager;
+import android.util.Log;
+import com.bumptech.glide.Glide;
+import com.lujsom.booknest.api.BookQueryCoalescer;
+import com.lujsom.booknest.api.RequestLane;
+import com.lujsom.booknest.models.Book;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * CategoryPrefetcher warms the results of the category filters while the app is idle,
+ * so switching categories is answered from the {@link QueryResultStore} instead of the network.
+ * It waits until the main thread has nothing to do, then fetches one category at a time on the
+ * background lane and preloads the covers of its first row. Nothing is fetched on metered
+ * networks or in battery saver mode, and the work stops once the budget is spent.
+ * All methods must be called from the main thread.
+ */
+public class CategoryPrefetcher {
+
+    private static final String TAG = "CategoryPrefetcher";
+
+    // Default budget
+    public static final int DEFAULT_MAX_CATEGORIES = 5; // Category pages fetched per session, the filters not shown
+    public static final int DEFAULT_COVERS_PER_CATEGORY = 2; // One grid row
+
+    private final Context appContext;
+    private final QueryResultStore store;
+    private final int pageSize;
+    private final int maxCategories;
+    private final int coversPerCategory;
+    private final Deque<String> pending = new ArrayDeque<>();
+
+    private MessageQueue.IdleHandler idleHandler;
+    private BookQueryCoalescer.Handle inFlight;
+    private boolean started = false;
+    private boolean cancelled = false;
+    private int fetched = 0;
+    private int skippedFresh = 0;
+
+    /**
+     * Creates a prefetcher with the default budget.
+     *
+     * @param context  Any context, the application context is kept.
+     * @param store    The store the pages are written to.
+     * @param pageSize The page size the library requests, so prefetched pages match its queries.
+     */
+    public CategoryPrefetcher(Context context, QueryResultStore store, int pageSize) {
+        this(context, store, pageSize, DEFAULT_MAX_CATEGORIES, DEFAULT_COVERS_PER_CATEGORY);
+    }
+
+    /**
+     * Creates a prefetcher.
+     *
+     * @param context           Any context, the application context is kept.
+     * @param store             The store the pages are written to.
+     * @param pageSize          The page size the library requests, so prefetched pages match its queries.
+     * @param maxCategories     The most category pages fetched from the network.
+     * @param coversPerCategory Covers preloaded from the start of each page.
+     */
+    public CategoryPrefetcher(Context context, QueryResultStore store, int pageSize,
+                              int maxCategories, int coversPerCategory) {
+        this.appContext = context.getApplicationContext();
+        this.store = store;
+        this.pageSize = pageSize;
+        this.maxCategories = Math.max(0, maxCategories);
+        this.coversPerCategory = Math.max(0, coversPerCategory);
+    }
+
+    /**
+     * Schedules the prefetch for the next time the main thread is idle. Only the first call has an effect.
+     *
+     * @param categories The category queries to warm, in order of priority.
+     */
+    public void startWhenIdle(String... categories) {
+        if (started) {
+            return;
+        }
+        started = true;
+        pending.addAll(Arrays.asList(categories));
+        idleHandler = () -> {
+            idleHandler = null;
+            next();
+            return false; // Run once, the following categories chain on each other
+        };
+        Looper.myQueue().addIdleHandler(idleHandler);
+    }
+
+    /**
+     * Stops prefetching. A page that is already being fetched is abandoned.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (idleHandler != null) {
+            Looper.myQueue().removeIdleHandler(idleHandler);
+            idleHandler = null;
+        }
+        if (inFlight != null) {
+            inFlight.cancel();
+            inFlight = null;
+        }
+        pending.clear();
+    }
+
+    /**
+     * Prefetches the next category, unless the budget is spent or the device should be left alone.
+     */
+    private void next() {
+        if (pending.isEmpty() || fetched >= maxCategories) {
+            Log.d(TAG, "Prefetched " + fetched + " categories, " + skippedFresh + " already fresh");
+            return;
+        }
+        if (!canUseNetwork()) {
+            Log.d(TAG, "Prefetch stopped: metered network or battery saver");
+            pending.clear();
+            return;
+        }
+
+        String category = pending.poll();
+        store.get(category, entry -> {
+            if (cancelled) {
+                return;
+            }
+            if (entry != null && !entry.isStale()) {
+                skippedFresh++; // Already answered from the store, nothing to do
+                next();
+                return;
+            }
+            fetch(category);
+        });
+    }
+
+    private void fetch(String category) {
+        fetched++;
+        inFlight = BookQueryCoalescer.getInstance().fetch(category, 0, pageSize, RequestLane.BACKGROUND,
+                new BookQueryCoalescer.Subscriber() {
+                    @Override
+                    public void onBooks(List<Book> batch) {
+                        // The page is stored once complete
+                    }
+
+                    @Override
+                    public void onComplete(List<Book> books) {
+                        inFlight = null;
+                        store.put(category, QueryResultStore.QueryClass.CATEGORY, books);
+                        preloadCovers(books);
+                        next();
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        inFlight = null;
+                        Log.w(TAG, "Prefetch of " + category + " failed: " + message);
+                        pending.clear(); // The API is struggling, leave it to the user's own requests
+                    }
+                });
+    }
+
+    /**
+     * Loads the first covers of a page into Glide's disk cache.
+     */
+    private void preloadCovers(List<Book> books) {
+        for (int i = 0; i < Math.min(coversPerCategory, books.size()); i++) {
+            String imageUrl = books.get(i).getImageUrl();
+            if (imageUrl != null && !imageUrl.isEmpty()) {
+                // Only the file is fetched, no bitmap is decoded; the grid decodes it at its own size
+                Glide.with(appContext)
+                        .downloadOnly()
+                        .load(imageUrl)
+                        .submit();
+            }
+        }
+    }
+
+    /**
+     * Checks that prefetching would not cost the user money or battery.
+     */
+    private boolean canUseNetwork() {
+        PowerManager powerManager = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null && powerManager.isPowerSaveMode()) {
+            return false;
+        }
+        ConnectivityManager cm = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return cm != null && !cm.isActiveNetworkMetered()
+                && cm.getRestrictBackgroundStatus() != ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+    }
+
+    public int getFetchedCount() { return fetched; }
+}
@@ -0,0 +1,329 @@
+package com.lujsom.booknest.utils;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.request.target.Target;
+import com.lujsom.booknest.R;
+import com.lujsom.booknest.api.BookQueryCoalescer;
+import com.lujsom.booknest.api.BookQueryPipeline;
+import com.lujsom.booknest.api.RequestLane;
+import com.lujsom.booknest.models.Book;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * DetailsPrefetcher loads what the book details screen needs before the screen is opened.
+ * The book grid hints at books the user is likely to open (a finger touching an item, or the
+ * items nearest the middle of a list that stops scrolling for a while), and the prefetcher starts the similar books query,
+ * the favorites, cart and reading list lookups, the cover decode and the description layout right away.
+ * When the details screen opens it claims the prefetch and finds most of it already done.
+ * Hints that are not followed are cancelled after a short while.
+ * All methods must be called from the main thread.
+ */
+public class DetailsPrefetcher {
+
+    // Number of similar books shown on the details screen
+    public static final int SIMILAR_BOOKS_COUNT = 10;
+    // Hints that are not claimed within this time are cancelled
+    private static final long HINT_TTL_MS = 10_000;
+    // Most prefetches running at the same time, the oldest hint is dropped first
+    public static final int MAX_PREFETCHES = 4;
+
+    private static DetailsPrefetcher instance;
+
+    /**
+     * Whether the book is in the user's favorites, cart and reading list.
+     */
+    public static class Membership {
+        public final boolean favorite;
+        public final boolean inCart;
+        public final boolean inReadingList;
+
+        Membership(boolean favorite, boolean inCart, boolean inReadingList) {
+            this.favorite = favorite;
+            this.inCart = inCart;
+            this.inReadingList = inReadingList;
+        }
+    }
+
+    /**
+     * The data loaded for one book. Results are kept until the details screen asks for them.
+     */
+    public class Prefetch {
+        private final String bookId;
+        private final UserSession session = UserSession.get(); // Lists are looked up for the user of the hint
+        private BookQueryCoalescer.Handle similarBooksHandle;
+        private Target<Drawable> coverTarget;
+        private List<Book> similarBooks;
+        private Consumer<List<Book>> similarBooksCallback;
+        private Boolean favorite, inCart, inReadingList;
+        private Consumer<Membership> membershipCallback;
+        private final Runnable expiry = this::cancel;
+
+        private Prefetch(String bookId) {
+            this.bookId = bookId;
+        }
+
+        private void start(String title, String imageUrl) {
+            if (title != null && !title.isEmpty()) {
+                // The library's page size is used so a search for the same title shares this call
+                similarBooksHandle = BookQueryCoalescer.getInstance().fetch(title, 0,
+                        BookQueryPipeline.DEFAULT_PAGE_SIZE, RequestLane.BACKGROUND, new BookQueryCoalescer.Subscriber() {
+                            @Override
+                            public void onBooks(List<Book> batch) {
+                                // Shown all at once when the page is complete
+                            }
+
+                            @Override
+                            public void onComplete(List<Book> books) {
+                                similarBooksHandle = null;
+                                setSimilarBooks(new ArrayList<>(books.subList(0, Math.min(SIMILAR_BOOKS_COUNT, books.size()))));
+                            }
+
+                            @Override
+                            public void onError(String message) {
+                                similarBooksHandle = null;
+                                setSimilarBooks(Collections.emptyList());
+                            }
+                        });
+            } else {
+                similarBooks = Collections.emptyList();
+            }
+
+            if (bookId == null) {
+                favorite = inCart = inReadingList = false; // A book without an ID cannot be in a list
+            } else {
+                lookUpMembership();
+            }
+
+            if (imageUrl != null && !imageUrl.trim().isEmpty()) {
+                coverTarget = coverRequest(appContext, imageUrl).preload(); // Decoded into the memory cache
+            }
+        }
+
+        private void lookUpMembership() {
+            FirestoreHelper firestoreHelper = session.getFirestoreHelper();
+            firestoreHelper.checkIfFavorite(bookId, isFavorite -> {
+                favorite = isFavorite;
+                deliverMembership();
+            });
+            firestoreHelper.isBookInCart(bookId, isInCart -> {
+                inCart = isInCart;
+                deliverMembership();
+            });
+            firestoreHelper.isBookInReadingList(bookId, isInList -> {
+                inReadingList = isInList;
+                deliverMembership();
+            });
+        }
+
+        /**
+         * Receives the similar books, right away if they are already loaded.
+         * An empty list is delivered if they could not be loaded.
+         *
+         * @param callback Receiver of the books.
+         */
+        public void whenSimilarBooksReady(Consumer<List<Book>> callback) {
+            similarBooksCallback = callback;
+            if (similarBooks != null) {
+                callback.accept(similarBooks);
+            }
+        }
+
+        /**
+         * Receives the book's membership in the user's lists, right away if it is already known.
+         *
+         * @param callback Receiver of the membership.
+         */
+        public void whenMembershipReady(Consumer<Membership> callback) {
+            membershipCallback = callback;
+            deliverMembership();
+        }
+
+        /**
+         * Stops the work that is still running. Called when the details screen is destroyed
+         * or when a hint is not followed.
+         */
+        public void cancel() {
+            handler.removeCallbacks(expiry);
+            prefetches.remove(bookId, this);
+            if (similarBooksHandle != null) {
+                similarBooksHandle.cancel();
+                similarBooksHandle = null;
+            }
+            if (coverTarget != null) {
+                Glide.with(appContext).clear(coverTarget); // The decoded cover stays in the memory cache
+                coverTarget = null;
+            }
+            similarBooksCallback = null;
+            membershipCallback = null;
+        }
+
+        private void setSimilarBooks(List<Book> books) {
+            similarBooks = books;
+            if (similarBooksCallback != null) {
+                similarBooksCallback.accept(books);
+            }
+        }
+
+        private void deliverMembership() {
+            if (membershipCallback != null && favorite != null && inCart != null && inReadingList != null) {
+                // Changes that are not saved yet win over what Firestore returned
+                if (bookId == null) {
+                    membershipCallback.accept(new Membership(false, false, false));
+                    return;
+                }
+                ListWriteQueue queue = session.getListWriteQueue();
+                membershipCallback.accept(new Membership(
+                        orSaved(queue.getUnsavedState(ListWriteQueue.UserList.FAVORITES, bookId), favorite),
+                        orSaved(queue.getUnsavedState(ListWriteQueue.UserList.SHOPPING_CART, bookId), inCart),
+                        orSaved(queue.getUnsavedState(ListWriteQueue.UserList.READING_LIST, bookId), inReadingList)));
+            }
+        }
+
+        private boolean orSaved(Boolean unsaved, boolean saved) {
+            return unsaved != null ? unsaved : saved;
+        }
+    }
+
+    private final Context appContext;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Prefetch> prefetches = new LinkedHashMap<>(); // Unclaimed prefetches, oldest first
+    private int hints = 0;
+    private int claimedHits = 0;
+
+    /**
+     * Returns the shared prefetcher.
+     *
+     * @param context Any context, the application context is kept.
+     * @return The DetailsPrefetcher instance.
+     */
+    public static DetailsPrefetcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new DetailsPrefetcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DetailsPrefetcher(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    /**
+     * Builds the cover request of the details screen. The prefetch and the screen use the
+     * same request, so the decoded cover is found in Glide's memory cache.
+     *
+     * @param context  The context the request is bound to.
+     * @param imageUrl The cover URL.
+     * @return A request sized for the details screen.
+     */
+    public static RequestBuilder<Drawable> coverRequest(Context context, String imageUrl) {
+        return Glide.with(context)
+                .load(imageUrl)
+                .override(context.getResources().getDimensionPixelSize(R.dimen.details_cover_width),
+                        context.getResources().getDimensionPixelSize(R.dimen.details_cover_height))
+                .fitCenter();
+    }
+
+    /**
+     * Starts loading the details of a book the user may open. Repeated hints for the same book
+     * only extend its lifetime.
+     *
+     * @param book The book that was touched or looked at.
+     */
+    public void hint(Book book) {
+        if (book == null || book.getBookId() == null) {
+            return;
+        }
+        hints++;
+        Prefetch prefetch = prefetches.remove(book.getBookId());
+        if (prefetch == null) {
+            trimTo(MAX_PREFETCHES - 1); // Make room before the new work starts
+            prefetch = new Prefetch(book.getBookId());
+            prefetch.start(book.getTitle(), book.getImageUrl());
+            TextPrecomputer.getInstance().prewarmDescription(book); // Cached, so it outlives the prefetch
+        }
+        prefetches.put(book.getBookId(), prefetch); // Most recent hint last
+        handler.removeCallbacks(prefetch.expiry);
+        handler.postDelayed(prefetch.expiry, HINT_TTL_MS);
+    }
+
+    /**
+     * Hints several books at once, such as the items a list shows after it stopped scrolling.
+     * Only the first {@link #MAX_PREFETCHES} are hinted, so no prefetch is started just to be dropped.
+     *
+     * @param books The books, the most likely to be opened first.
+     */
+    public void hintAll(List<Book> books) {
+        for (int i = Math.min(books.size(), MAX_PREFETCHES) - 1; i >= 0; i--) {
+            hint(books.get(i)); // The most likely book is hinted last, so it is dropped last
+        }
+    }
+
+    /**
+     * Cancels the prefetch of a book whose hint was not followed, such as a touch that turned into a scroll.
+     *
+     * @param bookId The ID of the book.
+     */
+    public void cancelHint(String bookId) {
+        Prefetch prefetch = bookId != null ? prefetches.get(bookId) : null;
+        if (prefetch != null) {
+            prefetch.cancel();
+        }
+    }
+
+    /**
+     * Hands the prefetch of a book over to the details screen, starting one if there was no hint.
+     * The caller owns the returned prefetch and must cancel it when it is done.
+     *
+     * @param bookId   The ID of the book, may be null if the screen was opened without one.
+     * @param title    The title, used to find similar books.
+     * @param imageUrl The cover URL.
+     * @return The prefetch of the book.
+     */
+    public Prefetch claim(String bookId, String title, String imageUrl) {
+        Prefetch prefetch = bookId != null ? prefetches.remove(bookId) : null;
+        if (prefetch != null) {
+            claimedHits++;
+            handler.removeCallbacks(prefetch.expiry);
+            return prefetch;
+        }
+        prefetch = new Prefetch(bookId);
+        prefetch.start(title, imageUrl);
+        return prefetch;
+    }
+
+    /**
+     * Cancels every prefetch that was not claimed yet, used when the user logs out so no
+     * membership of the old user is handed to a later screen.
+     */
+    static void cancelAll() {
+        if (instance == null) {
+            return;
+        }
+        for (Prefetch prefetch : new ArrayList<>(instance.prefetches.values())) {
+            prefetch.cancel();
+        }
+    }
+
+    /**
+     * Cancels the oldest prefetches until at most the given number are left.
+     */
+    private void trimTo(int size) {
+        while (prefetches.size() > size) {
+            prefetches.values().iterator().next().cancel(); // Removes itself from the map
+        }
+    }
+
+    public int getHintCount() { return hints; }
+
+    public int getClaimedHitCount() { return claimedHits; }
+}
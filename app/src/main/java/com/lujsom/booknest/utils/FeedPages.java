@@ -0,0 +1,162 @@
+package com.lujsom.booknest.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * FeedPages keeps the pages of a feed whose newest entries change while it is shown, such as the
+ * reviews of a book. Only the first page is listened to; older pages are read once, after the last
+ * entry shown. Once an older page is loaded, the first page is pinned to the entries it holds,
+ * so a new entry grows it instead of pushing an entry out of it and out of sight.
+ * The queries are run by a {@link Source}, which is Firestore in {@link ReviewFeed} and a fake in tests.
+ * All methods must be called from the main thread.
+ *
+ * @param <D> The type of the documents, which are also the cursors of the queries.
+ */
+class FeedPages<D> {
+
+    /**
+     * Runs the queries of the feed.
+     */
+    interface Source<D> {
+        /**
+         * Listens to the first page.
+         *
+         * @param end      The last document of the page once it is pinned, or null for the first {@code limit} documents.
+         * @param limit    The number of documents of an unpinned page.
+         * @param onPage   Receives the documents of the page, in order.
+         * @param onError  Called if the page cannot be listened to.
+         * @return Stops listening.
+         */
+        Runnable listenFirstPage(D end, int limit, Consumer<List<D>> onPage, Runnable onError);
+
+        /**
+         * Reads the documents after a cursor once.
+         */
+        void readAfter(D cursor, int limit, Consumer<List<D>> onPage, Runnable onError);
+    }
+
+    private final Source<D> source;
+    private final Function<D, String> idOf;
+    private final int pageSize;
+    private final Consumer<List<D>> onDocuments;
+    private final Runnable onError;
+    private Runnable firstPageRegistration;
+    private List<D> firstPage = Collections.emptyList();
+    private D firstPageEnd; // Set once older pages are loaded
+    private final List<D> olderPages = new ArrayList<>();
+    private boolean firstPageLoaded = false;
+    private boolean loadingMore = false;
+    private boolean endReached = false;
+    private boolean stopped = false;
+
+    /**
+     * @param source      Runs the queries.
+     * @param idOf        Returns the ID of a document.
+     * @param pageSize    The number of documents per page.
+     * @param onDocuments Receives the documents of all loaded pages, in order and without duplicates.
+     * @param onError     Called if a page cannot be loaded.
+     */
+    FeedPages(Source<D> source, Function<D, String> idOf, int pageSize, Consumer<List<D>> onDocuments, Runnable onError) {
+        this.source = source;
+        this.idOf = idOf;
+        this.pageSize = pageSize;
+        this.onDocuments = onDocuments;
+        this.onError = onError;
+    }
+
+    void start() {
+        listenToFirstPage();
+    }
+
+    /**
+     * Reads the next older page, unless one is loading or every document is shown.
+     */
+    void loadMore() {
+        if (stopped || loadingMore || endReached || !firstPageLoaded) {
+            return;
+        }
+        D cursor;
+        if (olderPages.isEmpty()) {
+            if (firstPage.size() < pageSize) {
+                endReached = true; // The first page holds every document
+                return;
+            }
+            // Pin the first page so new documents cannot push one of its documents out of sight
+            firstPageEnd = firstPage.get(firstPage.size() - 1);
+            listenToFirstPage();
+            cursor = firstPageEnd;
+        } else {
+            cursor = olderPages.get(olderPages.size() - 1);
+        }
+
+        loadingMore = true;
+        source.readAfter(cursor, pageSize, page -> {
+            loadingMore = false;
+            if (stopped) {
+                return;
+            }
+            olderPages.addAll(page);
+            endReached = page.size() < pageSize;
+            deliver();
+        }, () -> {
+            loadingMore = false;
+            if (!stopped) {
+                onError.run();
+            }
+        });
+    }
+
+    /**
+     * Drops a document that was deleted from this device, in case it is on an older page,
+     * which has no listener to report it.
+     *
+     * @param id The ID of the deleted document.
+     */
+    void forget(String id) {
+        olderPages.removeIf(doc -> idOf.apply(doc).equals(id));
+    }
+
+    void stop() {
+        stopped = true;
+        if (firstPageRegistration != null) {
+            firstPageRegistration.run();
+            firstPageRegistration = null;
+        }
+    }
+
+    private void listenToFirstPage() {
+        if (firstPageRegistration != null) {
+            firstPageRegistration.run(); // Its documents are kept until the new listener answers
+        }
+        firstPageRegistration = source.listenFirstPage(firstPageEnd, pageSize, page -> {
+            if (stopped) {
+                return;
+            }
+            firstPage = page;
+            firstPageLoaded = true;
+            deliver();
+        }, () -> {
+            if (!stopped) {
+                onError.run();
+            }
+        });
+    }
+
+    private void deliver() {
+        // A document can briefly be in both parts while the first page is re-pinned
+        Map<String, D> loaded = new LinkedHashMap<>();
+        for (D doc : firstPage) {
+            loaded.putIfAbsent(idOf.apply(doc), doc);
+        }
+        for (D doc : olderPages) {
+            loaded.putIfAbsent(idOf.apply(doc), doc);
+        }
+        onDocuments.accept(new ArrayList<>(loaded.values()));
+    }
+}
@@ -0,0 +1,41 @@
+package com.lujsom.booknest.utils;
+
+import android.util.Log;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PersistentCacheSettings;
+
+/**
+ * FirestoreConfig sets up the Firestore client for the whole app in one place.
+ * The local cache is kept on disk, so the user's saved lists can be shown from it at once,
+ * before (or without) an answer from the server.
+ */
+public final class FirestoreConfig {
+
+    private static final String TAG = "FirestoreConfig";
+
+    // Disk space for cached documents; the saved lists and reviews of one user stay far below it
+    public static final long CACHE_SIZE_BYTES = 50L * 1024 * 1024;
+
+    private FirestoreConfig() {
+        // Static configuration only
+    }
+
+    /**
+     * Applies the app's settings. Must run before Firestore is used for anything else,
+     * which is why it is called from the application's onCreate.
+     *
+     * @param db The Firestore instance.
+     */
+    public static void apply(FirebaseFirestore db) {
+        try {
+            db.setFirestoreSettings(new FirebaseFirestoreSettings.Builder()
+                    .setLocalCacheSettings(PersistentCacheSettings.newBuilder()
+                            .setSizeBytes(CACHE_SIZE_BYTES)
+                            .build())
+                    .build());
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Firestore was used before it was configured, keeping the default settings", e);
+        }
+    }
+}
@@ -1,59 +1,55 @@
 package com.lujsom.booknest.utils;
 
 import android.util.Log;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseUser;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.lujsom.booknest.models.Book;
+import com.google.firebase.firestore.QuerySnapshot;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 /**
  * FirestoreHelper provides utility functions for managing user data in Firestore.
- * It handles user information, favorites, reading lists, and shopping cart operations.
+ * It handles favorites, reading lists, and shopping cart operations; the user's profile is
+ * kept by {@link UserProfileCache}.
+ * Membership checks are answered from the {@link MembershipIndex} once it is loaded.
+ * Each {@link UserSession} owns one helper, bound to the user that was logged in when it was created.
  */
 public class FirestoreHelper {
+    // Most document IDs a single "in" query may ask for
+    public static final int MAX_IDS_PER_QUERY = 10;
+
     private final FirebaseFirestore db;
     private final String userId;
+    private final MembershipIndex membershipIndex;
+    private final ListWriteQueue writeQueue;
 
     /**
-     * Initializes Firestore and gets the current user ID.
-     */
-    public FirestoreHelper() {
-        this.db = FirebaseFirestore.getInstance();
-        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-        this.userId = (user != null) ? user.getUid() : null;
-    }
-
-    /**
-     * Retrieves the username from Firestore. Uses caching to optimize performance.
+     * Creates the helper of a user session.
      *
-     * @param callback A function to handle the retrieved username.
+     * @param db              The Firestore instance.
+     * @param userId          The ID of the user, or null if no user is logged in.
+     * @param membershipIndex The session's index of the user's lists.
+     * @param writeQueue      The session's queue of list changes.
      */
-    public void getUserName(Consumer<String> callback) {
-        if (userId == null) {
-            callback.accept("Guest");
-            return;
-        }
-
-        db.collection("users").document(userId).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String userName = documentSnapshot.getString("username");
-                        callback.accept(userName != null ? userName : "Guest");
-                    } else {
-                        callback.accept("Guest");
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("FIRESTORE", "Error fetching user name", e);
-                    callback.accept("Guest");
-                });
+    FirestoreHelper(FirebaseFirestore db, String userId, MembershipIndex membershipIndex, ListWriteQueue writeQueue) {
+        this.db = db;
+        this.userId = userId;
+        this.membershipIndex = membershipIndex;
+        this.writeQueue = writeQueue;
     }
 
     /**
@@ -176,6 +172,7 @@ public class FirestoreHelper {
 
     /**
      * Checks if a book is in the user's reading list.
+     * The callback runs right away if the reading list is indexed.
      *
      * @param bookId   The unique ID of the book.
      * @param callback A function that returns true if the book is in the reading list, false otherwise.
@@ -186,6 +183,11 @@ public class FirestoreHelper {
             callback.accept(false);
             return;
         }
+        Boolean indexed = membershipIndex.contains(ListWriteQueue.UserList.READING_LIST, bookId);
+        if (indexed != null) {
+            callback.accept(indexed);
+            return;
+        }
 
         DocumentReference bookRef = db.collection("users").document(userId).collection("reading_list").document(bookId);
 
@@ -205,6 +207,7 @@ public class FirestoreHelper {
 
     /**
      * Checks if a book is in the user's favorites.
+     * The callback runs right away if the favorites are indexed.
      *
      * @param bookId   The book's unique ID.
      * @param callback A function to return true if the book is in favorites, false otherwise.
@@ -215,6 +218,11 @@ public class FirestoreHelper {
             callback.accept(false);
             return;
         }
+        Boolean indexed = membershipIndex.contains(ListWriteQueue.UserList.FAVORITES, bookId);
+        if (indexed != null) {
+            callback.accept(indexed);
+            return;
+        }
 
         DocumentReference favRef = db.collection("users").document(userId).collection("favorites").document(bookId);
 
@@ -295,37 +303,55 @@ public class FirestoreHelper {
     }
 
     /**
-     * Retrieves all books from the user's shopping cart.
+     * Receives a saved list loaded cache-first, and whether what is shown is confirmed by the server.
+     */
+    public interface ListWatcher {
+        /**
+         * Called with the documents of the list: first from the local cache, then whenever they change
+         * or another page is loaded.
+         *
+         * @param documents The documents of the loaded pages, ordered by ID.
+         */
+        void onDocuments(List<DocumentSnapshot> documents);
+
+        /**
+         * Called whenever it changes whether the documents come from the local cache only.
+         *
+         * @param fromCache True while the server has not confirmed the documents yet.
+         */
+        void onFreshness(boolean fromCache);
+
+        /**
+         * Called if the list cannot be loaded at all.
+         */
+        void onError();
+    }
+
+    /**
+     * Loads one of the user's lists a page at a time, without waiting for the network. The first
+     * page in Firestore's local cache is delivered first, then snapshot listeners on the loaded pages
+     * reconcile them with the server and report the change of freshness through the snapshot metadata.
+     * An empty cache is not delivered, so a list that was never loaded does not briefly look empty.
      *
-     * @param onSuccess A function to handle the retrieved list of books.
-     * @param onFailure A function to handle errors.
+     * @param list    The list.
+     * @param watcher Receives the documents of all loaded pages and their freshness on the main thread.
+     * @return The pager, which loads more pages and must be removed when the screen is closed, or null if no user is logged in.
      */
-    public void getShoppingCart(Consumer<List<Book>> onSuccess, Runnable onFailure) {
+    public SavedListPager watchList(ListWriteQueue.UserList list, ListWatcher watcher) {
         if (userId == null) {
-            Log.e("FIRESTORE", "❌ User not logged in – cannot fetch shopping cart.");
-            onFailure.run();
-            return;
+            Log.e("FIRESTORE", "❌ User not logged in – cannot load " + list.getCollection());
+            watcher.onError();
+            return null;
         }
-
-        db.collection("users").document(userId).collection("shopping_cart")
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<Book> cartBooks = new ArrayList<>();
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Book book = document.toObject(Book.class);
-                        cartBooks.add(book);
-                    }
-                    onSuccess.accept(cartBooks);
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("FIRESTORE", "❌ Error loading shopping cart", e);
-                    onFailure.run();
-                });
+        SavedListPager pager = new SavedListPager(db.collection("users").document(userId).collection(list.getCollection()),
+                SavedListPager.DEFAULT_PAGE_SIZE, watcher);
+        pager.start();
+        return pager;
     }
 
-
     /**
      * Checks if a book is in the user's shopping cart.
+     * The callback runs right away if the cart is indexed.
      *
      * @param bookId   The unique ID of the book.
      * @param callback A function that returns true if the book is in the shopping cart, false otherwise.
@@ -336,6 +362,11 @@ public class FirestoreHelper {
             callback.accept(false);
             return;
         }
+        Boolean indexed = membershipIndex.contains(ListWriteQueue.UserList.SHOPPING_CART, bookId);
+        if (indexed != null) {
+            callback.accept(indexed);
+            return;
+        }
 
         DocumentReference cartRef = db.collection("users").document(userId).collection("shopping_cart").document(bookId);
 
@@ -348,4 +379,78 @@ public class FirestoreHelper {
             callback.accept(false);
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Looks up whether each of a set of books is in the user's favorites, cart and reading list.
+     * Lists that are indexed are answered locally; the others are read with one query per
+     * {@value #MAX_IDS_PER_QUERY} books instead of one read per book. Changes that are not saved
+     * yet are taken into account.
+     *
+     * @param bookIds  The IDs of the books, such as the books of one result page.
+     * @param callback Receives the membership of every book, by ID. Books whose lookup failed count as not in the list.
+     */
+    public void getMemberships(Collection<String> bookIds, Consumer<Map<String, DetailsPrefetcher.Membership>> callback) {
+        List<String> ids = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(bookIds)) {
+            if (id != null && !id.isEmpty() && !"N/A".equals(id)) {
+                ids.add(id);
+            }
+        }
+        if (userId == null || ids.isEmpty()) {
+            callback.accept(Collections.emptyMap());
+            return;
+        }
+
+        MembershipIndex index = membershipIndex;
+        Map<ListWriteQueue.UserList, Set<String>> found = new EnumMap<>(ListWriteQueue.UserList.class);
+        List<Task<QuerySnapshot>> queries = new ArrayList<>();
+        List<ListWriteQueue.UserList> queriedLists = new ArrayList<>(); // The list of each query
+        for (ListWriteQueue.UserList list : ListWriteQueue.UserList.values()) {
+            Set<String> inList = new HashSet<>();
+            found.put(list, inList);
+            if (index.contains(list, ids.get(0)) != null) {
+                for (String id : ids) {
+                    if (Boolean.TRUE.equals(index.contains(list, id))) {
+                        inList.add(id);
+                    }
+                }
+                continue;
+            }
+            CollectionReference collection = db.collection("users").document(userId).collection(list.getCollection());
+            for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+                List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_QUERY));
+                queries.add(collection.whereIn(FieldPath.documentId(), new ArrayList<>(chunk)).get());
+                queriedLists.add(list);
+            }
+        }
+
+        Tasks.whenAllComplete(queries).addOnCompleteListener(done -> {
+            for (int i = 0; i < queries.size(); i++) {
+                Task<QuerySnapshot> query = queries.get(i);
+                if (!query.isSuccessful() || query.getResult() == null) {
+                    Log.e("FIRESTORE", "❌ Error looking up " + queriedLists.get(i).getCollection(), query.getException());
+                    continue;
+                }
+                for (DocumentSnapshot doc : query.getResult().getDocuments()) {
+                    found.get(queriedLists.get(i)).add(doc.getId());
+                }
+            }
+
+            ListWriteQueue queue = writeQueue;
+            Map<String, DetailsPrefetcher.Membership> memberships = new HashMap<>();
+            for (String id : ids) {
+                memberships.put(id, new DetailsPrefetcher.Membership(
+                        isIn(queue, found, ListWriteQueue.UserList.FAVORITES, id),
+                        isIn(queue, found, ListWriteQueue.UserList.SHOPPING_CART, id),
+                        isIn(queue, found, ListWriteQueue.UserList.READING_LIST, id)));
+            }
+            callback.accept(memberships);
+        });
+    }
+
+    private static boolean isIn(ListWriteQueue queue, Map<ListWriteQueue.UserList, Set<String>> found,
+                                ListWriteQueue.UserList list, String bookId) {
+        Boolean unsaved = queue.getUnsavedState(list, bookId);
+        return unsaved != null ? unsaved : found.get(list).contains(bookId);
+    }
+}
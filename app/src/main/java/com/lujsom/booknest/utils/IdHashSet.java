@@ -0,0 +1,68 @@
+package com.lujsom.booknest.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * IdHashSet is an immutable set of document IDs stored as a sorted array of 64-bit hashes.
+ * It takes 8 bytes per ID instead of a String and a hash table entry, and lookups are a
+ * binary search. Two IDs with the same 64-bit hash are indistinguishable, which for the few
+ * hundred IDs of a user list is practically impossible.
+ */
+final class IdHashSet {
+
+    static final IdHashSet EMPTY = new IdHashSet(new long[0]);
+
+    private final long[] hashes;
+
+    private IdHashSet(long[] hashes) {
+        this.hashes = hashes;
+    }
+
+    /**
+     * Builds a set from a collection of IDs.
+     *
+     * @param ids The IDs, duplicates are allowed.
+     * @return The set.
+     */
+    static IdHashSet of(Collection<String> ids) {
+        long[] hashes = new long[ids.size()];
+        int size = 0;
+        for (String id : ids) {
+            hashes[size++] = hash(id);
+        }
+        Arrays.sort(hashes);
+        // Drop duplicates in place
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || hashes[i] != hashes[unique - 1]) {
+                hashes[unique++] = hashes[i];
+            }
+        }
+        return new IdHashSet(unique == size ? hashes : Arrays.copyOf(hashes, unique));
+    }
+
+    /**
+     * @param id The ID to look up, may be null.
+     * @return True if the ID is in the set.
+     */
+    boolean contains(String id) {
+        return id != null && Arrays.binarySearch(hashes, hash(id)) >= 0;
+    }
+
+    int size() {
+        return hashes.length;
+    }
+
+    /**
+     * Hashes an ID with 64-bit FNV-1a.
+     */
+    static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
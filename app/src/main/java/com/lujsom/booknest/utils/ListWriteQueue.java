@@ -0,0 +1,357 @@
+package com.lujsom.booknest.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ListWriteQueue saves changes to the user's favorites, reading list and shopping cart behind the UI.
+ * A toggle only records the state the user wants, so the screen can update right away. Repeated
+ * toggles of the same book collapse into their net effect (adding and then removing a book writes
+ * nothing), and the remaining changes are committed together in a Firestore {@link WriteBatch}
+ * shortly after the first toggle, or when the screen is stopped. If a commit fails, listeners are
+ * told the real state of each book so they can roll the UI back. {@link #flush(Runnable)} tells when
+ * the commits in flight have finished, so a logout can wait for them.
+ * Each {@link UserSession} owns one queue, bound to the user that was logged in when it was created.
+ * All methods must be called from the main thread.
+ */
+public class ListWriteQueue {
+
+    private static final String TAG = "ListWriteQueue";
+
+    // How long changes are collected before they are committed
+    public static final long FLUSH_DELAY_MS = 1500;
+    // Firestore allows at most this many writes in one batch
+    private static final int MAX_BATCH_WRITES = 500;
+
+    /**
+     * The user lists a book can be saved to, with their Firestore collection names.
+     */
+    public enum UserList {
+        FAVORITES("favorites"),
+        READING_LIST("reading_list"),
+        SHOPPING_CART("shopping_cart");
+
+        private final String collection;
+
+        UserList(String collection) {
+            this.collection = collection;
+        }
+
+        public String getCollection() { return collection; }
+    }
+
+    /**
+     * Receives the state of books whose changes could not be saved, and optionally of those that were.
+     */
+    public interface Listener {
+        /**
+         * Called when a change failed and the UI should show the saved state again.
+         *
+         * @param list   The list the book belongs to.
+         * @param bookId The ID of the book.
+         * @param saved  Whether the book is in the list, as far as Firestore knows.
+         */
+        void onRolledBack(UserList list, String bookId, boolean saved);
+
+        /**
+         * Called when a change was saved.
+         *
+         * @param list   The list the book belongs to.
+         * @param bookId The ID of the book.
+         * @param saved  Whether the book is in the list now.
+         */
+        default void onSaved(UserList list, String bookId, boolean saved) {
+        }
+    }
+
+    /**
+     * Runs the delayed flush, on the main looper outside of tests.
+     */
+    interface MainThread {
+        void postDelayed(Runnable task, long delayMs);
+
+        void removeCallbacks(Runnable task);
+    }
+
+    /**
+     * Writes one batch of changes, to Firestore outside of tests.
+     */
+    interface Committer {
+        /**
+         * @param changes   The changes, at most one per book and list.
+         * @param onSuccess Run on the main thread when every change was saved.
+         * @param onFailure Run on the main thread when the batch failed.
+         */
+        void commit(List<Change> changes, Runnable onSuccess, Runnable onFailure);
+    }
+
+    /**
+     * The net change of one book in one list.
+     */
+    static class Change {
+        final UserList list;
+        final String bookId;
+        boolean saved; // The state in Firestore before the change
+        boolean wanted; // The state the user asked for
+        Map<String, Object> fields; // The document written when the book is added
+
+        Change(UserList list, String bookId, boolean saved) {
+            this.list = list;
+            this.bookId = bookId;
+            this.saved = saved;
+        }
+    }
+
+    private final String userId;
+    private final Committer committer;
+    private final MainThread mainThread;
+    private final Runnable flushTask = this::flush;
+    private final Map<String, Change> pending = new LinkedHashMap<>(); // Changes not committed yet, by key
+    private final Map<String, Change> committing = new HashMap<>(); // Changes of commits in flight, by key
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> flushCallbacks = new ArrayList<>(); // Waiting for the commits in flight
+    private boolean flushScheduled = false;
+
+    // Counters for monitoring the queue
+    private int toggles = 0;
+    private int writes = 0;
+    private int commits = 0;
+
+    /**
+     * Creates the queue of a user's list changes.
+     *
+     * @param db     The Firestore instance.
+     * @param userId The ID of the user, or null if no user is logged in.
+     */
+    ListWriteQueue(FirebaseFirestore db, String userId) {
+        this(userId, firestore(db, userId), mainLooper());
+    }
+
+    ListWriteQueue(String userId, Committer committer, MainThread mainThread) {
+        this.userId = userId;
+        this.committer = committer;
+        this.mainThread = mainThread;
+    }
+
+    private static MainThread mainLooper() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        return new MainThread() {
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+        };
+    }
+
+    private static Committer firestore(FirebaseFirestore db, String userId) {
+        return (changes, onSuccess, onFailure) -> {
+            WriteBatch batch = db.batch();
+            for (Change change : changes) {
+                DocumentReference ref = db.collection("users").document(userId)
+                        .collection(change.list.getCollection()).document(change.bookId);
+                if (change.wanted) {
+                    batch.set(ref, change.fields);
+                } else {
+                    batch.delete(ref);
+                }
+            }
+            batch.commit()
+                    .addOnSuccessListener(aVoid -> {
+                        Log.d(TAG, "Saved " + changes.size() + " list changes");
+                        onSuccess.run();
+                    })
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Error saving " + changes.size() + " list changes", e);
+                        onFailure.run();
+                    });
+        };
+    }
+
+    /**
+     * Records that a book should be added to or removed from a list. Nothing is written right away.
+     *
+     * @param list           The list.
+     * @param bookId         The ID of the book.
+     * @param add            True to add the book, false to remove it.
+     * @param title          The book's title, saved with the book.
+     * @param imageUrl       The book's cover URL, saved with the book.
+     * @param googleBooksUrl The purchase link, only saved in the shopping cart.
+     * @return False if no user is logged in and the change was dropped.
+     */
+    public boolean set(UserList list, String bookId, boolean add, String title, String imageUrl, String googleBooksUrl) {
+        if (userId == null || bookId == null || bookId.isEmpty()) {
+            Log.e(TAG, "User not logged in or bookId missing, change dropped");
+            return false;
+        }
+        toggles++;
+        String key = key(list, bookId);
+        Change change = pending.get(key);
+        if (change == null) {
+            change = new Change(list, bookId, !add); // A toggle starts from the opposite state
+            pending.put(key, change);
+        }
+        change.wanted = add;
+        if (add) {
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("bookId", bookId);
+            fields.put("title", title);
+            fields.put("imageUrl", imageUrl);
+            if (list == UserList.SHOPPING_CART) {
+                fields.put("googleBooksUrl", googleBooksUrl);
+            }
+            change.fields = fields;
+        }
+        if (change.wanted == change.saved) {
+            pending.remove(key); // Toggled back, nothing to write
+        }
+        scheduleFlush();
+        return true;
+    }
+
+    /**
+     * Returns the state of a book that is not saved yet, so reads from Firestore can be corrected.
+     *
+     * @param list   The list.
+     * @param bookId The ID of the book.
+     * @return True or false if a change is waiting or being committed, null if Firestore is up to date.
+     */
+    public Boolean getUnsavedState(UserList list, String bookId) {
+        String key = key(list, bookId);
+        Change change = pending.get(key);
+        if (change == null) {
+            change = committing.get(key);
+        }
+        return change != null ? change.wanted : null;
+    }
+
+    /**
+     * Commits the waiting changes now, used when the screen that made them is stopped.
+     */
+    public void flush() {
+        mainThread.removeCallbacks(flushTask);
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Change> changes = new ArrayList<>(pending.values());
+        pending.clear();
+        for (int start = 0; start < changes.size(); start += MAX_BATCH_WRITES) {
+            commit(changes.subList(start, Math.min(changes.size(), start + MAX_BATCH_WRITES)));
+        }
+    }
+
+    /**
+     * Commits the waiting changes now and tells when they, and any commit already in flight, have finished.
+     *
+     * @param onDone Run once no commit is in flight, whether the commits succeeded or failed.
+     */
+    public void flush(Runnable onDone) {
+        flush();
+        if (committing.isEmpty()) {
+            onDone.run();
+        } else {
+            flushCallbacks.add(onDone);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled && !pending.isEmpty()) {
+            flushScheduled = true;
+            mainThread.postDelayed(flushTask, FLUSH_DELAY_MS); // Not pushed back by later toggles
+        }
+    }
+
+    private void commit(List<Change> changes) {
+        for (Change change : changes) {
+            committing.put(key(change), change);
+        }
+        commits++;
+        writes += changes.size();
+
+        committer.commit(changes, () -> {
+            for (Change change : changes) {
+                committing.remove(key(change), change);
+                for (Listener listener : listeners) {
+                    listener.onSaved(change.list, change.bookId, change.wanted);
+                }
+            }
+            onCommitFinished();
+        }, () -> {
+            for (Change change : changes) {
+                committing.remove(key(change), change);
+                rollBack(change);
+            }
+            onCommitFinished();
+        });
+    }
+
+    private void onCommitFinished() {
+        if (!committing.isEmpty() || flushCallbacks.isEmpty()) {
+            return;
+        }
+        List<Runnable> callbacks = new ArrayList<>(flushCallbacks);
+        flushCallbacks.clear();
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Undoes a failed change. A newer change of the same book now starts from the saved state,
+     * and if the user already toggled back there is nothing to show.
+     * Listeners are only told when no newer change of the book exists.
+     */
+    private void rollBack(Change failed) {
+        String key = key(failed);
+        Change newer = pending.get(key);
+        if (newer != null) {
+            newer.saved = failed.saved;
+            if (newer.wanted == newer.saved) {
+                pending.remove(key);
+            }
+            return;
+        }
+        if (committing.containsKey(key)) {
+            return; // A newer change is being written and decides the state
+        }
+        for (Listener listener : listeners) {
+            listener.onRolledBack(failed.list, failed.bookId, failed.saved);
+        }
+    }
+
+    private static String key(UserList list, String bookId) {
+        return list.getCollection() + "/" + bookId;
+    }
+
+    private static String key(Change change) {
+        return key(change.list, change.bookId);
+    }
+
+    @Override
+    public String toString() {
+        return "List toggles: " + toggles + ", writes: " + writes + ", batches: " + commits;
+    }
+}
@@ -0,0 +1,125 @@
+package com.lujsom.booknest.utils;
+
+import android.util.Log;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * MembershipIndex keeps the IDs of the books in the user's favorites, reading list and shopping cart
+ * in memory, so checking whether a book is in a list needs no Firestore read. Each list is kept up
+ * to date by one snapshot listener on its collection, which also reports local writes right away.
+ * Each {@link UserSession} owns one index, which is cleared when the user logs out.
+ * All methods must be called from the main thread.
+ */
+public class MembershipIndex {
+
+    private static final String TAG = "MembershipIndex";
+
+    private final FirebaseFirestore db;
+    private final String userId;
+    private final Map<ListWriteQueue.UserList, IdHashSet> lists = new EnumMap<>(ListWriteQueue.UserList.class); // Lists loaded so far
+    private final List<ListenerRegistration> registrations = new ArrayList<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private boolean started = false;
+    private boolean cleared = false;
+
+    /**
+     * Creates the index of a user's lists. Nothing is loaded before {@link #start()}.
+     *
+     * @param db     The Firestore instance.
+     * @param userId The ID of the user, or null if no user is logged in.
+     */
+    MembershipIndex(FirebaseFirestore db, String userId) {
+        this.db = db;
+        this.userId = userId;
+    }
+
+    /**
+     * Looks up whether a book is in one of the user's lists.
+     *
+     * @param list   The list.
+     * @param bookId The ID of the book.
+     * @return True or false, or null if the list is not loaded yet and Firestore must be asked.
+     */
+    public Boolean contains(ListWriteQueue.UserList list, String bookId) {
+        start();
+        return peek(list, bookId);
+    }
+
+    /**
+     * Looks up whether a book is in one of the user's lists, without starting the listeners.
+     * Each listener reads its whole collection, so screens that page through a list themselves
+     * use this instead of {@link #contains}.
+     *
+     * @param list   The list.
+     * @param bookId The ID of the book.
+     * @return True or false, or null if the list is not loaded.
+     */
+    public Boolean peek(ListWriteQueue.UserList list, String bookId) {
+        IdHashSet ids = lists.get(list);
+        return ids != null ? ids.contains(bookId) : null;
+    }
+
+    /**
+     * Starts listening to the user's lists, if that has not happened yet.
+     */
+    public void start() {
+        if (started || cleared || userId == null) {
+            return;
+        }
+        started = true;
+        for (ListWriteQueue.UserList list : ListWriteQueue.UserList.values()) {
+            registrations.add(db.collection("users").document(userId).collection(list.getCollection())
+                    .addSnapshotListener((snapshot, error) -> {
+                        if (cleared) {
+                            return; // A late snapshot after logout
+                        }
+                        if (error != null || snapshot == null) {
+                            Log.e(TAG, "Error listening to " + list.getCollection(), error);
+                            lists.remove(list); // Fall back to reading Firestore
+                            return;
+                        }
+                        List<String> ids = new ArrayList<>(snapshot.size());
+                        for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                            ids.add(doc.getId());
+                        }
+                        lists.put(list, IdHashSet.of(ids));
+                        for (Runnable listener : listeners) {
+                            listener.run();
+                        }
+                    }));
+        }
+    }
+
+    /**
+     * Registers a callback that runs whenever one of the lists changes.
+     *
+     * @param listener The callback.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stops listening and forgets the lists for good, used when the session ends.
+     */
+    void clear() {
+        cleared = true;
+        for (ListenerRegistration registration : registrations) {
+            registration.remove();
+        }
+        registrations.clear();
+        lists.clear();
+        listeners.clear();
+    }
+}
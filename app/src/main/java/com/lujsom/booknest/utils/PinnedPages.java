@@ -0,0 +1,200 @@
+package com.lujsom.booknest.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * PinnedPages keeps the pages of a list that is read a page at a time in a fixed order, and one
+ * listener per page. A full page is pinned to the range it covers, from after the last document
+ * of the page before up to and including its own last document, so documents added or removed
+ * inside it neither get lost nor show up twice. The last page stays open-ended with a limit.
+ * The queries are run by a {@link Source}, which is Firestore in {@link SavedListPager} and a fake in tests.
+ * All methods must be called from the main thread.
+ *
+ * @param <D> The type of the documents, which are also the cursors of the queries.
+ */
+class PinnedPages<D> {
+
+    /**
+     * Runs the queries of the pages.
+     */
+    interface Source<D> {
+        /**
+         * Reads the first page from the local cache only. A cache miss calls nothing.
+         */
+        void readCachedFirstPage(int limit, Consumer<List<D>> onCached);
+
+        /**
+         * Listens to a range of the list.
+         *
+         * @param after    The document the range starts after, or null to start at the beginning.
+         * @param end      The last document of the range, or null for an open-ended range of {@code limit} documents.
+         * @param limit    The number of documents of an open-ended range.
+         * @param listener Receives the documents of the range.
+         * @return Stops listening.
+         */
+        Runnable listen(D after, D end, int limit, Listener<D> listener);
+    }
+
+    /**
+     * Receives the snapshots of one range.
+     */
+    interface Listener<D> {
+        /**
+         * @param documents The documents of the range, in order.
+         * @param fromCache True if the snapshot was not confirmed by the server yet.
+         * @param changed   False if only the metadata changed and the documents are the same as before.
+         */
+        void onSnapshot(List<D> documents, boolean fromCache, boolean changed);
+
+        void onError();
+    }
+
+    /**
+     * Receives the documents of all loaded pages.
+     */
+    interface Watcher<D> {
+        void onDocuments(List<D> documents);
+
+        void onFreshness(boolean fromCache);
+
+        void onError();
+    }
+
+    /**
+     * One loaded page and its listener.
+     */
+    private static class Page<D> {
+        final D after; // Null for the first page
+        D end; // Last document once the page is pinned, null while it is the last page
+        List<D> documents = Collections.emptyList();
+        Runnable registration;
+        boolean loaded = false;
+        boolean fromCache = true;
+
+        Page(D after) {
+            this.after = after;
+        }
+    }
+
+    private final Source<D> source;
+    private final int pageSize;
+    private final Watcher<D> watcher;
+    private final List<Page<D>> pages = new ArrayList<>();
+    private boolean delivered = false; // The watcher received documents
+    private Boolean lastFromCache = null;
+    private boolean removed = false;
+
+    PinnedPages(Source<D> source, int pageSize, Watcher<D> watcher) {
+        this.source = source;
+        this.pageSize = pageSize;
+        this.watcher = watcher;
+    }
+
+    /**
+     * Shows the first page from the local cache, if it is there, and starts listening to it.
+     */
+    void start() {
+        source.readCachedFirstPage(pageSize, cached -> {
+            if (!removed && !delivered && !cached.isEmpty()) {
+                watcher.onDocuments(cached);
+                watcher.onFreshness(true);
+            }
+        }); // A cache miss only means waiting for the listener
+        addPage(null);
+    }
+
+    /**
+     * Loads the next page, unless one is loading or the end of the list was reached.
+     */
+    void loadMore() {
+        if (removed || !hasMore()) {
+            return;
+        }
+        Page<D> last = pages.get(pages.size() - 1);
+        if (!last.loaded) {
+            return; // Still loading
+        }
+        // Pin the page to the documents it holds, then continue after them
+        last.end = last.documents.get(last.documents.size() - 1);
+        listen(last);
+        addPage(last.end);
+    }
+
+    /**
+     * @return False once the last page came back shorter than a full page.
+     */
+    boolean hasMore() {
+        Page<D> last = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+        return last != null && (!last.loaded || last.documents.size() >= pageSize);
+    }
+
+    /**
+     * Stops listening to every page.
+     */
+    void remove() {
+        removed = true;
+        for (Page<D> page : pages) {
+            if (page.registration != null) {
+                page.registration.run();
+            }
+        }
+        pages.clear();
+    }
+
+    private void addPage(D after) {
+        Page<D> page = new Page<>(after);
+        pages.add(page);
+        listen(page);
+    }
+
+    /**
+     * (Re)starts the listener of a page for its current range.
+     */
+    private void listen(Page<D> page) {
+        if (page.registration != null) {
+            page.registration.run(); // Its documents are kept until the new listener answers
+        }
+        page.registration = source.listen(page.after, page.end, pageSize, new Listener<D>() {
+            @Override
+            public void onSnapshot(List<D> documents, boolean fromCache, boolean changed) {
+                if (removed) {
+                    return;
+                }
+                page.fromCache = fromCache;
+                // Snapshots that only change the metadata carry the same documents
+                if ((changed || !page.loaded) && !(fromCache && documents.isEmpty() && !delivered)) { // Nothing cached yet, wait for the server
+                    page.documents = documents;
+                    page.loaded = true;
+                    deliver();
+                }
+                boolean anyFromCache = false;
+                for (Page<D> loaded : pages) {
+                    anyFromCache |= loaded.fromCache;
+                }
+                if (!Boolean.valueOf(anyFromCache).equals(lastFromCache)) {
+                    lastFromCache = anyFromCache;
+                    watcher.onFreshness(anyFromCache);
+                }
+            }
+
+            @Override
+            public void onError() {
+                if (!removed && !delivered) {
+                    watcher.onError();
+                }
+            }
+        });
+    }
+
+    private void deliver() {
+        List<D> documents = new ArrayList<>();
+        for (Page<D> page : pages) {
+            documents.addAll(page.documents);
+        }
+        delivered = true;
+        watcher.onDocuments(documents);
+    }
+}
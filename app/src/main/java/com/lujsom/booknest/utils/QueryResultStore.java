@@ -0,0 +1,299 @@
+package com.lujsom.booknest.utils;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.lujsom.booknest.api.BookQueryCoalescer;
+import com.lujsom.booknest.models.Book;
+import com.lujsom.booknest.models.BookRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * QueryResultStore keeps the first page of recent searches in a local SQLite database,
+ * so results can be shown right away (even offline) while they are refreshed from the API.
+ * Each query is stored with its books, the time it was fetched and a hash of its content,
+ * which tells whether a refresh actually changed anything. Entries older than their
+ * {@link QueryClass} TTL are stale, and only the most recently used queries are kept.
+ * Database work runs on a single background thread and callbacks arrive on the main thread.
+ */
+public class QueryResultStore extends SQLiteOpenHelper {
+
+    private static final String TAG = "QueryResultStore";
+    private static final String DATABASE_NAME = "query_results.db";
+    private static final int DATABASE_VERSION = 1;
+
+    // Store limits
+    public static final int DEFAULT_MAX_QUERIES = 50; // Least recently used queries beyond this are dropped
+    public static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(7); // Older entries are not shown at all
+
+    private static final String TABLE_QUERIES = "queries";
+    private static final String TABLE_BOOKS = "query_books";
+
+    /**
+     * How long the results of a kind of query stay fresh.
+     */
+    public enum QueryClass {
+        CATEGORY(TimeUnit.HOURS.toMillis(6)), // Filter buttons, whose results change slowly
+        FREE_TEXT(TimeUnit.MINUTES.toMillis(30)); // Typed searches
+
+        private final long ttlMillis;
+
+        QueryClass(long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+        }
+
+        public long getTtlMillis() { return ttlMillis; }
+    }
+
+    /**
+     * The stored results of one query.
+     */
+    public static class Entry {
+        private final List<Book> books;
+        private final long fetchedAt;
+        private final int contentHash;
+        private final QueryClass queryClass;
+        private final LongSupplier clock;
+
+        Entry(List<Book> books, long fetchedAt, int contentHash, QueryClass queryClass, LongSupplier clock) {
+            this.books = Collections.unmodifiableList(books);
+            this.fetchedAt = fetchedAt;
+            this.contentHash = contentHash;
+            this.queryClass = queryClass;
+            this.clock = clock;
+        }
+
+        public List<Book> getBooks() { return books; }
+
+        public long getAgeMillis() { return Math.max(0, clock.getAsLong() - fetchedAt); }
+
+        public int getContentHash() { return contentHash; }
+
+        /**
+         * @return True if the TTL of the query's class has passed and the results should be refreshed.
+         */
+        public boolean isStale() { return getAgeMillis() >= queryClass.getTtlMillis(); }
+    }
+
+    private static QueryResultStore instance;
+
+    private final int maxQueries;
+    private final LongSupplier clock;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Returns the shared store.
+     *
+     * @param context Any context, the application context is kept.
+     * @return The QueryResultStore instance.
+     */
+    public static synchronized QueryResultStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new QueryResultStore(context.getApplicationContext(), DATABASE_NAME, DEFAULT_MAX_QUERIES,
+                    System::currentTimeMillis);
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a store. Tests use an in-memory database and a fake clock.
+     *
+     * @param context      The application context.
+     * @param databaseName The database file, or null for a database in memory.
+     * @param maxQueries   The number of queries kept.
+     * @param clock        Returns the current time in milliseconds.
+     */
+    QueryResultStore(Context context, String databaseName, int maxQueries, LongSupplier clock) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        this.maxQueries = Math.max(1, maxQueries);
+        this.clock = clock;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_QUERIES + " ("
+                + "query_key TEXT PRIMARY KEY, "
+                + "query_class TEXT NOT NULL, "
+                + "fetched_at INTEGER NOT NULL, "
+                + "last_used INTEGER NOT NULL, "
+                + "content_hash INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_BOOKS + " ("
+                + "query_key TEXT NOT NULL, "
+                + "position INTEGER NOT NULL, "
+                + "book_id TEXT, title TEXT, author TEXT, published_year TEXT, genre TEXT, rating TEXT, "
+                + "description TEXT, image_url TEXT, google_books_url TEXT, pdf_url TEXT, reading_url TEXT, "
+                + "PRIMARY KEY (query_key, position))");
+        db.execSQL("CREATE INDEX idx_queries_last_used ON " + TABLE_QUERIES + " (last_used)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The store only holds copies of API results, so it is simply rebuilt
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_QUERIES);
+        onCreate(db);
+    }
+
+    /**
+     * Looks up the stored results of a query.
+     *
+     * @param query    The search text, normalized before lookup.
+     * @param callback Receives the entry, or null if the query is not stored or too old to show.
+     */
+    public void get(String query, Consumer<Entry> callback) {
+        String key = BookQueryCoalescer.normalize(query);
+        executor.execute(() -> {
+            Entry entry = null;
+            try {
+                entry = read(key);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error reading stored results for " + key, e);
+            }
+            Entry result = entry;
+            handler.post(() -> callback.accept(result));
+        });
+    }
+
+    /**
+     * Stores the results of a query, replacing any previous results, and drops the least
+     * recently used queries beyond the limit.
+     *
+     * @param query      The search text, normalized before storing.
+     * @param queryClass Decides how long the results stay fresh.
+     * @param books      The books of the first page.
+     */
+    public void put(String query, QueryClass queryClass, List<Book> books) {
+        String key = BookQueryCoalescer.normalize(query);
+        List<Book> copy = new ArrayList<>(books);
+        executor.execute(() -> {
+            try {
+                write(key, queryClass, copy);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error storing results for " + key, e);
+            }
+        });
+    }
+
+    private Entry read(String key) {
+        SQLiteDatabase db = getWritableDatabase();
+        QueryClass queryClass;
+        long fetchedAt;
+        int contentHash;
+        try (Cursor cursor = db.query(TABLE_QUERIES, new String[]{"query_class", "fetched_at", "content_hash"},
+                "query_key = ?", new String[]{key}, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            queryClass = QueryClass.valueOf(cursor.getString(0));
+            fetchedAt = cursor.getLong(1);
+            contentHash = cursor.getInt(2);
+        }
+        if (clock.getAsLong() - fetchedAt > MAX_AGE_MS) {
+            delete(db, key);
+            return null;
+        }
+
+        List<Book> books = new ArrayList<>();
+        try (Cursor cursor = db.query(TABLE_BOOKS, new String[]{"book_id", "title", "author", "published_year",
+                        "genre", "rating", "description", "image_url", "google_books_url", "pdf_url", "reading_url"},
+                "query_key = ?", new String[]{key}, null, null, "position")) {
+            while (cursor.moveToNext()) {
+                // Restored as saved: the constructor's defaults differ from the parser's and would change the content
+                books.add(Book.restore(cursor.getString(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getString(3), cursor.getString(4), cursor.getString(5), cursor.getString(6),
+                        cursor.getString(7), cursor.getString(8), cursor.getString(9), cursor.getString(10)));
+            }
+        }
+
+        ContentValues used = new ContentValues();
+        used.put("last_used", clock.getAsLong());
+        db.update(TABLE_QUERIES, used, "query_key = ?", new String[]{key});
+        // A stored copy is older than a book the screens already share, so it never replaces it
+        List<Book> shared = new ArrayList<>(books.size());
+        for (Book book : books) {
+            shared.add(BookRegistry.getInstance().registerIfAbsent(book));
+        }
+        return new Entry(shared, fetchedAt, contentHash, queryClass, clock);
+    }
+
+    private void write(String key, QueryClass queryClass, List<Book> books) {
+        SQLiteDatabase db = getWritableDatabase();
+        long now = clock.getAsLong();
+        db.beginTransaction();
+        try {
+            delete(db, key);
+
+            ContentValues query = new ContentValues();
+            query.put("query_key", key);
+            query.put("query_class", queryClass.name());
+            query.put("fetched_at", now);
+            query.put("last_used", now);
+            query.put("content_hash", contentHash(books));
+            db.insert(TABLE_QUERIES, null, query);
+
+            ContentValues row = new ContentValues();
+            for (int i = 0; i < books.size(); i++) {
+                Book book = books.get(i);
+                row.clear();
+                row.put("query_key", key);
+                row.put("position", i);
+                row.put("book_id", book.getBookId());
+                row.put("title", book.getTitle());
+                row.put("author", book.getAuthor());
+                row.put("published_year", book.getPublishedYear());
+                row.put("genre", book.getGenre());
+                row.put("rating", book.getRating());
+                row.put("description", book.getDescription());
+                row.put("image_url", book.getImageUrl());
+                row.put("google_books_url", book.getGoogleBooksUrl());
+                row.put("pdf_url", book.getPdfUrl());
+                row.put("reading_url", book.getReadingUrl());
+                db.insert(TABLE_BOOKS, null, row);
+            }
+
+            // Keep only the most recently used queries
+            db.execSQL("DELETE FROM " + TABLE_BOOKS + " WHERE query_key IN (SELECT query_key FROM "
+                    + TABLE_QUERIES + " ORDER BY last_used DESC LIMIT -1 OFFSET " + maxQueries + ")");
+            db.execSQL("DELETE FROM " + TABLE_QUERIES + " WHERE query_key IN (SELECT query_key FROM "
+                    + TABLE_QUERIES + " ORDER BY last_used DESC LIMIT -1 OFFSET " + maxQueries + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void delete(SQLiteDatabase db, String key) {
+        db.delete(TABLE_BOOKS, "query_key = ?", new String[]{key});
+        db.delete(TABLE_QUERIES, "query_key = ?", new String[]{key});
+    }
+
+    /**
+     * Hashes the displayed content of a list of books, used to tell whether a refresh changed anything.
+     *
+     * @param books The books, in display order.
+     * @return A hash of every field of every book.
+     */
+    public static int contentHash(List<Book> books) {
+        int hash = 1;
+        for (Book book : books) {
+            hash = 31 * hash + Objects.hash(book.getBookId(), book.getTitle(), book.getAuthor(),
+                    book.getPublishedYear(), book.getGenre(), book.getRating(), book.getDescription(),
+                    book.getImageUrl(), book.getGoogleBooksUrl(), book.getPdfUrl(), book.getReadingUrl());
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,171 @@
+package com.lujsom.booknest.utils;
+
+import android.util.Log;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.lujsom.booknest.models.Review;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * ReviewFeed loads the reviews of a book a page at a time, sorted on the server.
+ * Only the first page has a snapshot listener, so new, edited and deleted reviews at the top
+ * show up live. Older pages are read once, with {@code startAfter} the last review shown, when
+ * the user scrolls down. Once an older page is loaded, the first page is pinned to the reviews
+ * it holds ({@code endAt}), so a new review grows it instead of pushing a review out of it
+ * and out of sight, see {@link FeedPages}. The rating sorts need the composite indexes in
+ * {@code firestore.indexes.json}.
+ * All methods must be called from the main thread.
+ */
+public class ReviewFeed {
+
+    private static final String TAG = "ReviewFeed";
+
+    // Reviews per page, a few screens of the list
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    // Load the next page when this many reviews are left to scroll
+    public static final int PREFETCH_DISTANCE = 5;
+
+    /**
+     * The orders reviews can be shown in. Ties are broken by time, newest first, and then by
+     * document ID, so every review has a single place and page cursors never skip or repeat one.
+     */
+    public enum SortMode {
+        NEWEST,
+        HIGHEST_RATED,
+        LOWEST_RATED;
+
+        Query apply(Query query) {
+            switch (this) {
+                case HIGHEST_RATED:
+                    query = query.orderBy("rating", Query.Direction.DESCENDING);
+                    break;
+                case LOWEST_RATED:
+                    query = query.orderBy("rating", Query.Direction.ASCENDING);
+                    break;
+                default:
+                    break;
+            }
+            return query.orderBy("timestamp", Query.Direction.DESCENDING)
+                    .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+        }
+    }
+
+    /**
+     * Receives the reviews loaded so far.
+     */
+    public interface Listener {
+        /**
+         * Called whenever the reviews change or another page is loaded.
+         *
+         * @param reviews The reviews of all loaded pages, in the sort order.
+         */
+        void onReviews(List<Review> reviews);
+
+        /**
+         * Called if a page cannot be loaded.
+         */
+        void onError();
+    }
+
+    private final FeedPages<DocumentSnapshot> pages;
+
+    /**
+     * Creates the feed of a book's reviews. Nothing is loaded before {@link #start()}.
+     *
+     * @param reviews  The reviews collection of the book.
+     * @param sortMode The order of the reviews.
+     * @param pageSize The number of reviews per page.
+     * @param listener Receives the reviews.
+     */
+    public ReviewFeed(CollectionReference reviews, SortMode sortMode, int pageSize, Listener listener) {
+        this.pages = new FeedPages<>(new FirestoreSource(reviews, sortMode), DocumentSnapshot::getId, pageSize,
+                documents -> listener.onReviews(toReviews(documents)), listener::onError);
+    }
+
+    /**
+     * Starts listening to the first page.
+     */
+    public void start() {
+        pages.start();
+    }
+
+    /**
+     * Reads the next older page, unless one is loading or every review is shown.
+     */
+    public void loadMore() {
+        pages.loadMore();
+    }
+
+    /**
+     * Drops a review that was deleted from this device, in case it is on an older page,
+     * which has no listener to report it.
+     *
+     * @param reviewId The ID of the deleted review.
+     */
+    public void forget(String reviewId) {
+        pages.forget(reviewId);
+    }
+
+    /**
+     * Stops listening. Called when the screen is closed or another sort order is chosen.
+     */
+    public void stop() {
+        pages.stop();
+    }
+
+    private static List<Review> toReviews(List<DocumentSnapshot> documents) {
+        List<Review> reviews = new ArrayList<>(documents.size());
+        for (DocumentSnapshot doc : documents) {
+            Review review = doc.toObject(Review.class);
+            if (review != null) {
+                reviews.add(review);
+            }
+        }
+        return reviews;
+    }
+
+    /**
+     * Runs the page queries on a book's reviews, in the chosen order.
+     */
+    private static class FirestoreSource implements FeedPages.Source<DocumentSnapshot> {
+        private final CollectionReference reviews;
+        private final SortMode sortMode;
+
+        FirestoreSource(CollectionReference reviews, SortMode sortMode) {
+            this.reviews = reviews;
+            this.sortMode = sortMode;
+        }
+
+        @Override
+        public Runnable listenFirstPage(DocumentSnapshot end, int limit, Consumer<List<DocumentSnapshot>> onPage,
+                                        Runnable onError) {
+            Query query = sortMode.apply(reviews);
+            query = end != null ? query.endAt(end) : query.limit(limit);
+            ListenerRegistration registration = query.addSnapshotListener((snapshot, e) -> {
+                if (e != null || snapshot == null) {
+                    Log.e(TAG, "Error listening to the newest reviews", e);
+                    onError.run();
+                    return;
+                }
+                onPage.accept(snapshot.getDocuments());
+            });
+            return registration::remove;
+        }
+
+        @Override
+        public void readAfter(DocumentSnapshot cursor, int limit, Consumer<List<DocumentSnapshot>> onPage,
+                              Runnable onError) {
+            sortMode.apply(reviews).startAfter(cursor).limit(limit).get()
+                    .addOnSuccessListener(page -> onPage.accept(page.getDocuments()))
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Error loading older reviews", e);
+                        onError.run();
+                    });
+        }
+    }
+}
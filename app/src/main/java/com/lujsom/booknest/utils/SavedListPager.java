@@ -0,0 +1,143 @@
+package com.lujsom.booknest.utils;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.Source;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * SavedListPager loads one of the user's lists a page at a time instead of all at once.
+ * Documents are ordered by their ID, which every saved book has and which never changes, and each
+ * page is read with {@code limit} after the last document of the page before ({@code startAfter}).
+ * Only the loaded pages are listened to: a full page is pinned to the range it covers
+ * ({@code startAfter} .. {@code endAt}), so books added or removed inside it neither get lost nor
+ * show up twice, and the last page stays open-ended with a limit, see {@link PinnedPages}.
+ * The first page is shown from Firestore's local cache before the server answers.
+ * All methods must be called from the main thread.
+ */
+public class SavedListPager {
+
+    private static final String TAG = "SavedListPager";
+
+    // Books per page, a few screens of the grid
+    public static final int DEFAULT_PAGE_SIZE = 30;
+    // Load the next page when this many books are left to scroll
+    public static final int PREFETCH_DISTANCE = 6;
+
+    private final PinnedPages<DocumentSnapshot> pages;
+
+    SavedListPager(CollectionReference collection, int pageSize, FirestoreHelper.ListWatcher watcher) {
+        this.pages = new PinnedPages<>(new FirestoreSource(collection), pageSize, new PinnedPages.Watcher<DocumentSnapshot>() {
+            @Override
+            public void onDocuments(List<DocumentSnapshot> documents) {
+                watcher.onDocuments(documents);
+            }
+
+            @Override
+            public void onFreshness(boolean fromCache) {
+                watcher.onFreshness(fromCache);
+            }
+
+            @Override
+            public void onError() {
+                watcher.onError();
+            }
+        });
+    }
+
+    /**
+     * Shows the first page from the local cache, if it is there, and starts listening to it.
+     */
+    void start() {
+        pages.start();
+    }
+
+    /**
+     * Loads the next page, unless one is loading or the end of the list was reached.
+     */
+    public void loadMore() {
+        pages.loadMore();
+    }
+
+    /**
+     * @return False once the last page came back shorter than a full page.
+     */
+    public boolean hasMore() {
+        return pages.hasMore();
+    }
+
+    /**
+     * Loads the next page whenever the list is scrolled close to its end.
+     *
+     * @param recyclerView The list showing the books, with a {@link LinearLayoutManager} or a subclass.
+     */
+    public void loadMoreWhenNearEnd(RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (dy > 0 && layoutManager != null
+                        && layoutManager.findLastVisibleItemPosition() >= layoutManager.getItemCount() - PREFETCH_DISTANCE) {
+                    loadMore();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops listening to every page. Called when the screen is closed.
+     */
+    public void remove() {
+        pages.remove();
+    }
+
+    /**
+     * Runs the page queries on a collection, ordered by document ID.
+     */
+    private static class FirestoreSource implements PinnedPages.Source<DocumentSnapshot> {
+        private final CollectionReference collection;
+
+        FirestoreSource(CollectionReference collection) {
+            this.collection = collection;
+        }
+
+        @Override
+        public void readCachedFirstPage(int limit, Consumer<List<DocumentSnapshot>> onCached) {
+            ordered().limit(limit).get(Source.CACHE)
+                    .addOnSuccessListener(cached -> onCached.accept(cached.getDocuments()));
+        }
+
+        @Override
+        public Runnable listen(DocumentSnapshot after, DocumentSnapshot end, int limit,
+                               PinnedPages.Listener<DocumentSnapshot> listener) {
+            Query query = ordered();
+            if (after != null) {
+                query = query.startAfter(after);
+            }
+            query = end != null ? query.endAt(end) : query.limit(limit);
+            ListenerRegistration registration = query.addSnapshotListener(MetadataChanges.INCLUDE, (snapshot, error) -> {
+                if (error != null || snapshot == null) {
+                    Log.e(TAG, "Error loading a page of " + collection.getId(), error);
+                    listener.onError();
+                    return;
+                }
+                listener.onSnapshot(snapshot.getDocuments(), snapshot.getMetadata().isFromCache(),
+                        !snapshot.getDocumentChanges().isEmpty());
+            });
+            return registration::remove;
+        }
+
+        private Query ordered() {
+            return collection.orderBy(FieldPath.documentId());
+        }
+    }
+}
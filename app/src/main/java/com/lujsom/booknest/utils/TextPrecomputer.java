@@ -0,0 +1,165 @@
+package com.lujsom.booknest.utils;
+
+import android.text.Spanned;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.core.text.HtmlCompat;
+import androidx.core.text.PrecomputedTextCompat;
+import com.lujsom.booknest.models.Book;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * TextPrecomputer prepares the text of book titles and descriptions off the main thread.
+ * Descriptions from Google Books often contain HTML, which is converted to spans, and both kinds
+ * of text are measured and laid out with {@link PrecomputedTextCompat} on a background thread.
+ * Views receive the result through {@code AppCompatTextView.setTextFuture}, so binding a grid
+ * item or opening the details screen no longer measures text. Prepared text is cached per book
+ * and per text style, and repeated requests share the same work.
+ */
+public class TextPrecomputer {
+
+    private static final String TAG = "TextPrecomputer";
+
+    // Characters of prepared text kept in memory, a long description is a few thousand
+    private static final int MAX_CACHED_CHARS = 256 * 1024;
+    // Anything that looks like a tag or an entity is parsed as HTML
+    private static final Pattern HTML = Pattern.compile("<[a-zA-Z/][^>]*>|&[a-zA-Z#0-9]+;");
+
+    private static TextPrecomputer instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Finished text, sized by its length; guards inFlight as well
+    private final LruCache<String, PrecomputedTextCompat> cache =
+            new LruCache<String, PrecomputedTextCompat>(MAX_CACHED_CHARS) {
+                @Override
+                protected int sizeOf(String key, PrecomputedTextCompat value) {
+                    return Math.max(1, value.length());
+                }
+            };
+    private final Map<String, CompletableFuture<PrecomputedTextCompat>> inFlight = new HashMap<>(); // Text still being prepared
+    private volatile PrecomputedTextCompat.Params descriptionParams; // Style of the details screen, once it was shown
+
+    /**
+     * Returns the shared precomputer.
+     *
+     * @return The TextPrecomputer instance.
+     */
+    public static synchronized TextPrecomputer getInstance() {
+        if (instance == null) {
+            instance = new TextPrecomputer();
+        }
+        return instance;
+    }
+
+    private TextPrecomputer() {
+        // Singleton
+    }
+
+    /**
+     * Prepares a book title for a text view with the given style.
+     *
+     * @param bookId The ID of the book.
+     * @param title  The title.
+     * @param params The text metrics of the target view, from {@code TextViewCompat.getTextMetricsParams}.
+     * @return The prepared title, possibly still being computed.
+     */
+    public Future<PrecomputedTextCompat> prepareTitle(String bookId, String title, PrecomputedTextCompat.Params params) {
+        return prepare("title|" + bookId + "|" + title, title, false, params);
+    }
+
+    /**
+     * Prepares a book description, converting its HTML to spans, for a text view with the given style.
+     * The style is remembered so later descriptions can be prepared before the details screen opens.
+     *
+     * @param bookId      The ID of the book.
+     * @param description The description, plain text or HTML.
+     * @param params      The text metrics of the target view, from {@code TextViewCompat.getTextMetricsParams}.
+     * @return The prepared description, possibly still being computed.
+     */
+    public Future<PrecomputedTextCompat> prepareDescription(String bookId, String description,
+                                                            PrecomputedTextCompat.Params params) {
+        descriptionParams = params;
+        return prepare("description|" + bookId, description, true, params);
+    }
+
+    /**
+     * Starts preparing the description of a book the user is likely to open. Does nothing until
+     * the details screen was shown once, because the style of its text view is not known before.
+     *
+     * @param book The book.
+     */
+    public void prewarmDescription(Book book) {
+        PrecomputedTextCompat.Params params = descriptionParams;
+        String description = book.getDescription();
+        if (params != null && description != null && !description.isEmpty()) {
+            prepare("description|" + book.getBookId(), description, true, params);
+        }
+    }
+
+    /**
+     * Converts description HTML to spans. Plain text is returned as is.
+     *
+     * @param description The description.
+     * @return The text to show.
+     */
+    public static CharSequence parseDescription(String description) {
+        if (!HTML.matcher(description).find()) {
+            return description;
+        }
+        Spanned spanned = HtmlCompat.fromHtml(description, HtmlCompat.FROM_HTML_MODE_COMPACT);
+        // Trailing paragraph breaks would add empty lines below the text
+        int end = spanned.length();
+        while (end > 0 && Character.isWhitespace(spanned.charAt(end - 1))) {
+            end--;
+        }
+        return spanned.subSequence(0, end);
+    }
+
+    private Future<PrecomputedTextCompat> prepare(String key, String text, boolean html,
+                                                  PrecomputedTextCompat.Params params) {
+        String cacheKey = key + "|" + params.hashCode(); // A text laid out for one style cannot be shown with another
+        synchronized (cache) {
+            PrecomputedTextCompat cached = cache.get(cacheKey);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+            CompletableFuture<PrecomputedTextCompat> pending = inFlight.get(cacheKey);
+            if (pending != null) {
+                return pending;
+            }
+            CompletableFuture<PrecomputedTextCompat> future = new CompletableFuture<>();
+            inFlight.put(cacheKey, future);
+            executor.execute(() -> {
+                CharSequence source = text;
+                if (html) {
+                    try {
+                        source = parseDescription(text);
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "Could not parse the HTML of " + key + ", showing it as text", e);
+                    }
+                }
+                try {
+                    PrecomputedTextCompat prepared = PrecomputedTextCompat.create(source, params);
+                    synchronized (cache) {
+                        inFlight.remove(cacheKey);
+                        cache.put(cacheKey, prepared);
+                    }
+                    future.complete(prepared);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Could not prepare " + key, e);
+                    synchronized (cache) {
+                        inFlight.remove(cacheKey); // The next request tries again
+                    }
+                    future.completeExceptionally(e);
+                }
+            });
+            return future;
+        }
+    }
+}
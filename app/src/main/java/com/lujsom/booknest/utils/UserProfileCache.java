@@ -0,0 +1,152 @@
+package com.lujsom.booknest.utils;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.lujsom.booknest.User;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * UserProfileCache keeps the logged-in user's profile document ({@code users/{uid}}) in memory,
+ * so screens read the username synchronously instead of fetching the document every time they are shown.
+ * The profile is also saved in {@link SharedPreferences}, so it is known right away after a cold start,
+ * and it is only refreshed by a snapshot listener, which reads the document once and then receives changes.
+ * Each {@link UserSession} owns one cache.
+ * All methods must be called from the main thread.
+ */
+public class UserProfileCache {
+
+    private static final String TAG = "UserProfileCache";
+
+    // Preferences holding the profile of the last user, for cold starts
+    static final String PREFS_NAME = "user_profile";
+    private static final String KEY_USER_ID = "user_id";
+    private static final String KEY_USERNAME = "username";
+    private static final String KEY_EMAIL = "email";
+
+    private final FirebaseFirestore db;
+    private final String userId;
+    private final SharedPreferences prefs;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private ListenerRegistration registration;
+    private User user; // Null until it is known
+    private boolean cleared = false;
+
+    /**
+     * Creates the profile cache of a user and loads the saved profile, if it belongs to the same user.
+     *
+     * @param db     The Firestore instance.
+     * @param userId The ID of the user, or null if no user is logged in.
+     * @param prefs  The preferences the profile is saved in, or null to keep it in memory only.
+     */
+    UserProfileCache(FirebaseFirestore db, String userId, SharedPreferences prefs) {
+        this.db = db;
+        this.userId = userId;
+        this.prefs = prefs;
+        if (userId != null && prefs != null && userId.equals(prefs.getString(KEY_USER_ID, null))) {
+            user = new User(userId, prefs.getString(KEY_USERNAME, null), prefs.getString(KEY_EMAIL, null));
+        }
+    }
+
+    /**
+     * Returns the username, starting the listener if it is not running yet.
+     *
+     * @return The username, or null if it is not known yet (or nobody is logged in).
+     */
+    public String getUserName() {
+        start();
+        return user != null ? user.getUsername() : null;
+    }
+
+    /**
+     * Returns the whole profile, starting the listener if it is not running yet.
+     *
+     * @return The profile, or null if it is not known yet (or nobody is logged in).
+     */
+    public User getUser() {
+        start();
+        return user;
+    }
+
+    /**
+     * Starts listening to the profile document, if that has not happened yet.
+     */
+    public void start() {
+        if (registration != null || cleared || userId == null) {
+            return;
+        }
+        registration = db.collection("users").document(userId).addSnapshotListener((snapshot, error) -> {
+            if (cleared) {
+                return; // A late snapshot after logout
+            }
+            if (error != null || snapshot == null || !snapshot.exists()) {
+                Log.e(TAG, "Error listening to the user profile", error);
+                return; // Keep what is known
+            }
+            User loaded = snapshot.toObject(User.class);
+            if (loaded == null || sameProfile(user, loaded)) {
+                return;
+            }
+            loaded.setUserId(userId);
+            user = loaded;
+            save(loaded);
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        });
+    }
+
+    /**
+     * Registers a callback that runs whenever the profile changes.
+     *
+     * @param listener The callback.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stops listening. The saved profile is kept for the next start of the same user.
+     */
+    void clear() {
+        cleared = true;
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        listeners.clear();
+    }
+
+    /**
+     * Stops listening and deletes the saved profile, used when the user logs out.
+     */
+    void forget() {
+        clear();
+        user = null;
+        if (prefs != null) {
+            prefs.edit().clear().apply();
+        }
+    }
+
+    private void save(User profile) {
+        if (prefs != null) {
+            prefs.edit()
+                    .clear() // Only the last user is kept
+                    .putString(KEY_USER_ID, userId)
+                    .putString(KEY_USERNAME, profile.getUsername())
+                    .putString(KEY_EMAIL, profile.getEmail())
+                    .apply();
+        }
+    }
+
+    private static boolean sameProfile(User a, User b) {
+        return a != null && Objects.equals(a.getUsername(), b.getUsername()) && Objects.equals(a.getEmail(), b.getEmail());
+    }
+}
@@ -0,0 +1,213 @@
+package com.lujsom.booknest.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.lujsom.booknest.models.Book;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * UserSession holds everything that belongs to the logged-in user: the {@link FirestoreHelper},
+ * the {@link UserProfileCache}, the {@link MembershipIndex} of the user's lists, the {@link ListWriteQueue}
+ * of unsaved changes, and the books of the favorites, reading list and shopping cart as last loaded. All screens share
+ * the same session, so going back and forth between them reuses what is already in memory instead
+ * of reading it again. A new session is created whenever the signed-in user changes, and
+ * {@link #logout(Runnable)} ends the current one in a single step, so nothing of the old user is shown to the next.
+ * All methods must be called from the main thread.
+ */
+public class UserSession {
+
+    private static final String TAG = "UserSession";
+
+    // How long a logout waits for pending list changes before signing out anyway, e.g. when offline
+    public static final long LOGOUT_FLUSH_TIMEOUT_MS = 3000;
+
+    private static UserSession current;
+    private static SharedPreferences profilePrefs; // Set by install()
+    private static boolean loggingOut = false;
+
+    private final String userId;
+    private final MembershipIndex membershipIndex;
+    private final ListWriteQueue listWriteQueue;
+    private final FirestoreHelper firestoreHelper;
+    private final UserProfileCache profileCache;
+    private final Map<ListWriteQueue.UserList, List<Book>> savedBooks = new EnumMap<>(ListWriteQueue.UserList.class);
+    private boolean ended = false;
+
+    /**
+     * Returns the session of the user that is logged in. If nobody is, the session has no user ID
+     * and every lookup in it answers as for a guest.
+     *
+     * @return The current session, never null.
+     */
+    public static UserSession get() {
+        String userId = FirebaseAuth.getInstance().getUid();
+        if (current != null && !Objects.equals(current.userId, userId)) {
+            switchUser(); // Signed in before the auth listener was told
+        }
+        if (current == null) {
+            current = new UserSession(FirebaseFirestore.getInstance(), userId);
+        }
+        return current;
+    }
+
+    /**
+     * Starts following sign-ins and sign-outs, so the session always belongs to the current user.
+     * Called once when the app starts.
+     *
+     * @param context Any context, used to open the saved profile.
+     */
+    public static void install(Context context) {
+        // Opened early so the saved profile is loaded in the background before a screen needs it
+        profilePrefs = context.getApplicationContext().getSharedPreferences(UserProfileCache.PREFS_NAME, Context.MODE_PRIVATE);
+        FirebaseAuth.getInstance().addAuthStateListener(auth -> {
+            if (current != null && !Objects.equals(current.userId, auth.getUid())) {
+                switchUser();
+            }
+        });
+    }
+
+    /**
+     * Logs the user out. The session's listeners, caches and prefetches are dropped right away,
+     * and the user is only signed out once the list changes that were still waiting have been
+     * committed, or after {@link #LOGOUT_FLUSH_TIMEOUT_MS} if they cannot be, so the commits and
+     * their listeners still run as this user. A second call while waiting is ignored.
+     *
+     * @param onLoggedOut Run on the main thread once the user is signed out.
+     */
+    public static void logout(Runnable onLoggedOut) {
+        if (loggingOut) {
+            return;
+        }
+        loggingOut = true;
+        UserSession ending = get();
+        ending.end();
+        ending.profileCache.forget(); // The next user of the device must not see it
+
+        Handler handler = new Handler(Looper.getMainLooper());
+        Runnable signOut = new Runnable() {
+            private boolean done = false;
+
+            @Override
+            public void run() {
+                if (done) {
+                    return;
+                }
+                done = true;
+                handler.removeCallbacks(this);
+                current = new UserSession(FirebaseFirestore.getInstance(), null);
+                FirebaseAuth.getInstance().signOut();
+                loggingOut = false;
+                onLoggedOut.run();
+            }
+        };
+        handler.postDelayed(signOut, LOGOUT_FLUSH_TIMEOUT_MS);
+        ending.listWriteQueue.flush(signOut); // Sent as this user, before the sign-out
+    }
+
+    private static void switchUser() {
+        Log.d(TAG, "User changed, starting a new session");
+        current.end();
+        current = null; // Created on first use
+    }
+
+    private UserSession(FirebaseFirestore db, String userId) {
+        this.userId = userId;
+        this.membershipIndex = new MembershipIndex(db, userId);
+        this.listWriteQueue = new ListWriteQueue(db, userId);
+        this.firestoreHelper = new FirestoreHelper(db, userId, membershipIndex, listWriteQueue);
+        this.profileCache = new UserProfileCache(db, userId, profilePrefs);
+        listWriteQueue.addListener(new ListWriteQueue.Listener() {
+            @Override
+            public void onRolledBack(ListWriteQueue.UserList list, String bookId, boolean saved) {
+                // Screens showing the book roll it back themselves
+            }
+
+            @Override
+            public void onSaved(ListWriteQueue.UserList list, String bookId, boolean saved) {
+                List<Book> books = savedBooks.get(list);
+                if (!saved && books != null) {
+                    books.removeIf(book -> bookId.equals(book.getBookId())); // Not shown again before the list is reloaded
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The ID of the user, or null if nobody is logged in.
+     */
+    public String getUserId() { return userId; }
+
+    public boolean isLoggedIn() { return userId != null; }
+
+    public FirestoreHelper getFirestoreHelper() { return firestoreHelper; }
+
+    public UserProfileCache getProfileCache() { return profileCache; }
+
+    public MembershipIndex getMembershipIndex() { return membershipIndex; }
+
+    public ListWriteQueue getListWriteQueue() { return listWriteQueue; }
+
+    /**
+     * Returns the books of a list as they were last loaded in this session, so a screen can show
+     * them while it loads the list again. Books removed from this device since then are left out.
+     * Books removed on another device are only left out if the membership index is already running:
+     * it is not started here, because its listeners read whole collections and the list screens
+     * only read the pages they show. Such books disappear once the page holding them is read again.
+     *
+     * @param list The list.
+     * @return A copy of the books, or null if the list was not loaded in this session.
+     */
+    public List<Book> getSavedBooks(ListWriteQueue.UserList list) {
+        List<Book> books = savedBooks.get(list);
+        if (books == null) {
+            return null;
+        }
+        List<Book> present = new ArrayList<>(books.size());
+        for (Book book : books) {
+            Boolean unsaved = listWriteQueue.getUnsavedState(list, book.getBookId());
+            Boolean indexed = membershipIndex.peek(list, book.getBookId());
+            if (unsaved != null ? unsaved : !Boolean.FALSE.equals(indexed)) {
+                present.add(book);
+            }
+        }
+        return present;
+    }
+
+    /**
+     * Keeps the books of a list after they were loaded.
+     *
+     * @param list  The list.
+     * @param books The books.
+     */
+    public void putSavedBooks(ListWriteQueue.UserList list, List<Book> books) {
+        if (!ended && userId != null) {
+            savedBooks.put(list, new ArrayList<>(books));
+        }
+    }
+
+    /**
+     * Ends the session: pending list changes are committed, and listeners, cached lists and
+     * unclaimed prefetches are dropped. Commits still in flight finish in the background.
+     * The saved profile is only deleted by {@link #logout(Runnable)}.
+     */
+    private void end() {
+        if (ended) {
+            return;
+        }
+        ended = true;
+        listWriteQueue.flush(); // Still sent as this user
+        membershipIndex.clear();
+        profileCache.clear();
+        savedBooks.clear();
+        DetailsPrefetcher.cancelAll();
+    }
+}
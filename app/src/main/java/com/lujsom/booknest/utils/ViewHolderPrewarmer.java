@@ -0,0 +1,116 @@
+package com.lujsom.booknest.utils;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * ViewHolderPrewarmer inflates list items ahead of time, while the main thread is idle,
+ * and keeps them in a {@link RecyclerView.RecycledViewPool}. When the first results arrive,
+ * the lists of the screen take their views from the pool instead of inflating them in the
+ * middle of the response callback. One item is inflated per idle pass, so input and drawing
+ * are never held up by more than a single inflation.
+ * Every list of a screen can share the pool, as long as each item layout has its own view type.
+ * All methods must be called from the main thread.
+ */
+public class ViewHolderPrewarmer {
+
+    private static final String TAG = "ViewHolderPrewarmer";
+
+    // RecyclerView keeps this many holders of a view type by default
+    private static final int DEFAULT_MAX_RECYCLED = 5;
+
+    /**
+     * Holders still to be created for one adapter.
+     */
+    private static class Request {
+        final RecyclerView parent;
+        final RecyclerView.Adapter<?> adapter;
+        final int viewType;
+        int remaining;
+
+        Request(RecyclerView parent, RecyclerView.Adapter<?> adapter, int viewType, int count) {
+            this.parent = parent;
+            this.adapter = adapter;
+            this.viewType = viewType;
+            this.remaining = count;
+        }
+    }
+
+    private final RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+    private final Deque<Request> requests = new ArrayDeque<>();
+    private MessageQueue.IdleHandler idleHandler;
+    private int created = 0;
+
+    /**
+     * Returns the pool the prewarmed holders are put in. Lists of the same screen should use it
+     * with {@link RecyclerView#setRecycledViewPool}.
+     *
+     * @return The shared pool.
+     */
+    public RecyclerView.RecycledViewPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Schedules the creation of item holders for a list, one per idle pass.
+     *
+     * @param parent   The list the holders are created for, it must use the shared pool.
+     * @param adapter  The adapter that creates the holders.
+     * @param viewType The view type of the holders, unique to the item layout.
+     * @param count    The number of holders to create, usually the items visible at once.
+     */
+    public void prewarm(RecyclerView parent, RecyclerView.Adapter<?> adapter, int viewType, int count) {
+        if (count <= 0) {
+            return;
+        }
+        pool.setMaxRecycledViews(viewType, Math.max(DEFAULT_MAX_RECYCLED, count));
+        requests.add(new Request(parent, adapter, viewType, count));
+        if (idleHandler == null) {
+            idleHandler = this::createNext;
+            Looper.myQueue().addIdleHandler(idleHandler);
+        }
+    }
+
+    /**
+     * Stops prewarming. Holders already in the pool stay there.
+     */
+    public void cancel() {
+        requests.clear();
+        if (idleHandler != null) {
+            Looper.myQueue().removeIdleHandler(idleHandler);
+            idleHandler = null;
+        }
+    }
+
+    /**
+     * Creates one holder. Runs while the main thread is idle.
+     *
+     * @return True to be called again on the next idle pass.
+     */
+    private boolean createNext() {
+        Request request = requests.peek();
+        if (request == null) {
+            idleHandler = null;
+            return false;
+        }
+        if (request.parent.getChildCount() > 0 || request.parent.getRecycledViewPool() != pool) {
+            requests.poll(); // The list already laid out its items, it no longer needs a head start
+        } else {
+            pool.putRecycledView(request.adapter.createViewHolder(request.parent, request.viewType));
+            created++;
+            if (--request.remaining <= 0) {
+                requests.poll();
+            }
+        }
+        if (requests.isEmpty()) {
+            Log.d(TAG, "Prewarmed " + created + " view holders");
+            idleHandler = null;
+            return false;
+        }
+        return true;
+    }
+}
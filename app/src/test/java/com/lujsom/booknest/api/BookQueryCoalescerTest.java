@@ -0,0 +1,230 @@
+package com.lujsom.booknest.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.lujsom.booknest.models.Book;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.Retrofit;
+
+/**
+ * Runs {@link BookQueryCoalescer} against a local server. Work posted to the main thread
+ * only runs when the test says so, and delayed work runs on a fake clock.
+ */
+public class BookQueryCoalescerTest {
+
+    // A page without books, so nothing has to be registered
+    private static final String EMPTY_PAGE = "{\"totalItems\":0}";
+
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final FakeMainThread mainThread = new FakeMainThread();
+    private final List<RequestLane> lanes = Collections.synchronizedList(new ArrayList<>());
+    private BookQueryCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        BookApiService service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .callbackExecutor(mainThread::post)
+                .build()
+                .create(BookApiService.class);
+        coalescer = new BookQueryCoalescer("key", lane -> {
+            lanes.add(lane);
+            return service;
+        }, mainThread, Runnable::run);
+    }
+
+    @Test
+    public void identicalFetches_shareOneCall() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        RecordingSubscriber first = new RecordingSubscriber();
+        RecordingSubscriber second = new RecordingSubscriber();
+
+        coalescer.fetch("Dune", 0, 20, RequestLane.INTERACTIVE, first);
+        coalescer.fetch("  dune ", 0, 20, RequestLane.INTERACTIVE, second);
+        mainThread.runUntil(() -> first.completed > 0 && second.completed > 0);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, coalescer.getNetworkCallCount());
+        assertEquals(1, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void interactiveFetch_movesWaitingBackgroundCallToInteractiveLane() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        server.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        RecordingSubscriber prefetch = new RecordingSubscriber();
+        RecordingSubscriber search = new RecordingSubscriber();
+
+        coalescer.fetch("dune", 0, 20, RequestLane.BACKGROUND, prefetch);
+        coalescer.fetch("dune", 0, 20, RequestLane.INTERACTIVE, search);
+        mainThread.runUntil(() -> prefetch.completed > 0 && search.completed > 0);
+
+        assertEquals(Arrays.asList(RequestLane.BACKGROUND, RequestLane.INTERACTIVE), lanes);
+        assertEquals(1, prefetch.completed);
+        assertEquals(1, search.completed);
+        assertEquals(0, prefetch.errors + search.errors);
+    }
+
+    @Test
+    public void backgroundFetch_joinsInteractiveCallAsIs() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        RecordingSubscriber search = new RecordingSubscriber();
+        RecordingSubscriber prefetch = new RecordingSubscriber();
+
+        coalescer.fetch("dune", 0, 20, RequestLane.INTERACTIVE, search);
+        coalescer.fetch("dune", 0, 20, RequestLane.BACKGROUND, prefetch);
+        mainThread.runUntil(() -> search.completed > 0 && prefetch.completed > 0);
+
+        assertEquals(Collections.singletonList(RequestLane.INTERACTIVE), lanes);
+    }
+
+    @Test
+    public void detachedCall_isRejoinedWithinGracePeriod() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        RecordingSubscriber rotated = new RecordingSubscriber();
+        RecordingSubscriber recreated = new RecordingSubscriber();
+
+        coalescer.fetch("dune", 0, 20, RequestLane.INTERACTIVE, rotated).detach();
+        mainThread.advance(BookQueryCoalescer.DETACH_GRACE_MS - 1);
+        coalescer.fetch("dune", 0, 20, RequestLane.INTERACTIVE, recreated);
+        mainThread.advance(BookQueryCoalescer.DETACH_GRACE_MS); // The cancel was withdrawn
+        mainThread.runUntil(() -> recreated.completed > 0);
+
+        assertEquals(1, coalescer.getNetworkCallCount());
+        assertEquals(0, rotated.completed);
+    }
+
+    @Test
+    public void detachedCall_isCancelledAfterGracePeriod() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        server.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        RecordingSubscriber left = new RecordingSubscriber();
+        RecordingSubscriber later = new RecordingSubscriber();
+
+        coalescer.fetch("dune", 0, 20, RequestLane.INTERACTIVE, left).detach();
+        mainThread.advance(BookQueryCoalescer.DETACH_GRACE_MS);
+        coalescer.fetch("dune", 0, 20, RequestLane.INTERACTIVE, later);
+        mainThread.runUntil(() -> later.completed > 0);
+
+        assertEquals(2, coalescer.getNetworkCallCount());
+        assertEquals(0, left.completed + left.errors);
+    }
+
+    @Test
+    public void cancelledCall_thatCompletesLate_keepsNewerCallOfSameQuery() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        server.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        RecordingSubscriber cancelled = new RecordingSubscriber();
+        RecordingSubscriber retried = new RecordingSubscriber();
+        RecordingSubscriber joined = new RecordingSubscriber();
+
+        BookQueryCoalescer.Handle handle = coalescer.fetch("dune", 0, 20, RequestLane.INTERACTIVE, cancelled);
+        mainThread.runNext(); // The response arrives and is parsed, its completion is posted
+        handle.cancel();
+        coalescer.fetch("dune", 0, 20, RequestLane.INTERACTIVE, retried);
+        mainThread.runNext(); // The completion of the cancelled call
+        coalescer.fetch("dune", 0, 20, RequestLane.INTERACTIVE, joined);
+        mainThread.runUntil(() -> retried.completed > 0 && joined.completed > 0);
+
+        assertEquals(2, coalescer.getNetworkCallCount());
+        assertEquals(0, cancelled.completed);
+    }
+
+    /**
+     * Counts the callbacks of a fetch.
+     */
+    private static class RecordingSubscriber implements BookQueryCoalescer.Subscriber {
+        int completed = 0;
+        int errors = 0;
+
+        @Override
+        public void onBooks(List<Book> batch) {
+        }
+
+        @Override
+        public void onComplete(List<Book> books) {
+            completed++;
+        }
+
+        @Override
+        public void onError(String message) {
+            errors++;
+        }
+    }
+
+    /**
+     * Collects posted work until the test runs it on the test thread.
+     */
+    private static class FakeMainThread implements BookQueryCoalescer.MainThread {
+        private final BlockingQueue<Runnable> posted = new LinkedBlockingQueue<>();
+        private final Map<Runnable, Long> delayed = new LinkedHashMap<>();
+        private long now = 0;
+
+        @Override
+        public void post(Runnable task) {
+            posted.add(task);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            delayed.put(task, now + delayMs);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            posted.remove(task);
+            delayed.remove(task);
+        }
+
+        /**
+         * Waits for the next posted task and runs it.
+         */
+        void runNext() throws InterruptedException {
+            Runnable task = posted.poll(5, TimeUnit.SECONDS);
+            assertNotNull("Nothing was posted", task);
+            task.run();
+        }
+
+        void runUntil(BooleanSupplier done) throws InterruptedException {
+            while (!done.getAsBoolean()) {
+                runNext();
+            }
+        }
+
+        /**
+         * Moves the clock forward and runs the delayed work that became due.
+         */
+        void advance(long millis) {
+            now += millis;
+            List<Runnable> due = new ArrayList<>();
+            for (Iterator<Map.Entry<Runnable, Long>> it = delayed.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Runnable, Long> entry = it.next();
+                if (entry.getValue() <= now) {
+                    due.add(entry.getKey());
+                    it.remove();
+                }
+            }
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+}
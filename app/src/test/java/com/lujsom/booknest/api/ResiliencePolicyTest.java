@@ -0,0 +1,290 @@
+package com.lujsom.booknest.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs {@link ResiliencePolicy} against a local server that injects faults.
+ * Waits are recorded instead of slept, with the slices of one wait added up,
+ * and the breaker runs on a fake clock.
+ */
+public class ResiliencePolicyTest {
+
+    private static final int FAILURE_THRESHOLD = 2;
+    private static final long OPEN_MS = 30_000;
+
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Long> slices = new ArrayList<>();
+    private final Map<Integer, Long> waits = new LinkedHashMap<>(); // By requests sent before the wait
+    private Call cancelWhileWaiting;
+    private long now = 0;
+    private CircuitBreaker breaker;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        breaker = new CircuitBreaker(FAILURE_THRESHOLD, OPEN_MS, () -> now);
+        ResiliencePolicy policy = new ResiliencePolicy(3, 100, 1000, 5000, breaker,
+                millis -> {
+                    slices.add(millis);
+                    waits.merge(server.getRequestCount(), millis, Long::sum);
+                    if (cancelWhileWaiting != null) {
+                        cancelWhileWaiting.cancel();
+                    }
+                }, new Random(42));
+        client = new OkHttpClient.Builder()
+                .cache(new Cache(folder.newFolder("http"), 1024 * 1024))
+                .readTimeout(500, TimeUnit.MILLISECONDS)
+                .addInterceptor(policy.interceptor())
+                .build();
+    }
+
+    @Test
+    public void serverError_isRetriedWithGrowingBackoff() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        try (Response response = get("/volumes")) {
+            assertEquals(200, response.code());
+            assertEquals("ok", response.body().string());
+        }
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2, sleeps().size());
+        assertTrue(sleeps().get(0) >= 50 && sleeps().get(0) <= 100);
+        assertTrue(sleeps().get(1) >= 100 && sleeps().get(1) <= 200);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void clientError_isNotRetried() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        try (Response response = get("/volumes")) {
+            assertEquals(404, response.code());
+        }
+        assertEquals(1, server.getRequestCount());
+        assertTrue(sleeps().isEmpty());
+    }
+
+    @Test
+    public void timeout_isRetried() throws IOException {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        try (Response response = get("/volumes")) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, sleeps().size());
+    }
+
+    @Test
+    public void retryAfter_isHonored() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "2"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        try (Response response = get("/volumes")) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(1, sleeps().size());
+        assertEquals(2000L, (long) sleeps().get(0));
+    }
+
+    @Test
+    public void longRetryAfter_opensBreakerWithoutWaiting() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "120"));
+
+        try (Response response = get("/volumes")) {
+            assertEquals(429, response.code());
+        }
+        assertEquals(1, server.getRequestCount());
+        assertTrue(sleeps().isEmpty());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(120_000L, breaker.getRemainingOpenMillis());
+    }
+
+    @Test
+    public void longRetryAfter_fallsBackToCachedCopy() throws IOException {
+        server.enqueue(new MockResponse().setBody("cached").setHeader("Cache-Control", "max-age=0"));
+        try (Response response = get("/volumes?q=cached")) {
+            response.body().string();
+        }
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "120"));
+
+        try (Response response = get("/volumes?q=cached")) {
+            assertEquals(200, response.code());
+            assertEquals("cached", response.body().string());
+        }
+        assertEquals(2, server.getRequestCount());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void cancelWhileWaiting_stopsTheRetry() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "2"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        Call call = client.newCall(new Request.Builder().url(server.url("/volumes")).build());
+        cancelWhileWaiting = call;
+
+        try (Response ignored = call.execute()) {
+            fail("Expected the cancelled call to fail");
+        } catch (IOException expected) {
+            assertEquals("Canceled", expected.getMessage());
+        }
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, slices.size()); // Not the whole Retry-After
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void openBreaker_servesCachedCopyOrFailsFast() throws IOException {
+        server.enqueue(new MockResponse().setBody("cached").setHeader("Cache-Control", "max-age=0"));
+        try (Response response = get("/volumes?q=cached")) {
+            response.body().string();
+        }
+        tripBreaker();
+        int requests = server.getRequestCount();
+
+        try (Response response = get("/volumes?q=cached")) {
+            assertEquals("cached", response.body().string());
+        }
+        try (Response ignored = get("/volumes?q=other")) {
+            fail("Expected the request to fail fast");
+        } catch (ApiUnavailableException expected) {
+            assertEquals(OPEN_MS, expected.getRetryAfterMillis());
+        }
+        assertEquals(requests, server.getRequestCount()); // Nothing reached the server
+    }
+
+    @Test
+    public void successfulProbe_closesBreaker() throws IOException {
+        tripBreaker();
+        now += OPEN_MS;
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        try (Response response = get("/volumes")) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedProbe_reopensBreakerAfterOneAttempt() throws IOException {
+        tripBreaker();
+        now += OPEN_MS;
+        int requests = server.getRequestCount();
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        try (Response response = get("/volumes")) {
+            assertEquals(500, response.code());
+        }
+        assertEquals(requests + 1, server.getRequestCount());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTimesOpened());
+    }
+
+    @Test
+    public void cancelledProbe_releasesProbeSlot() throws IOException {
+        tripBreaker();
+        now += OPEN_MS;
+        Call probe = client.newCall(new Request.Builder().url(server.url("/volumes")).build());
+        probe.cancel();
+
+        try (Response ignored = probe.execute()) {
+            fail("Expected the cancelled probe to fail");
+        } catch (IOException expected) {
+            // Cancelled before it was sent
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(0L, breaker.getRemainingOpenMillis());
+
+        // The next call becomes the probe instead of failing fast
+        server.enqueue(new MockResponse().setBody("ok"));
+        try (Response response = get("/volumes")) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void cacheServedProbe_releasesProbeSlot() throws IOException {
+        server.enqueue(new MockResponse().setBody("cached").setHeader("Cache-Control", "max-age=600"));
+        try (Response response = get("/volumes?q=cached")) {
+            response.body().string();
+        }
+        tripBreaker();
+        now += OPEN_MS;
+        int requests = server.getRequestCount();
+
+        try (Response response = get("/volumes?q=cached")) {
+            assertEquals("cached", response.body().string());
+            assertNull(response.networkResponse());
+        }
+        assertEquals(requests, server.getRequestCount());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        try (Response response = get("/volumes?q=other")) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void retryAfterDate_isConvertedToDelay() {
+        long date = 1445412480000L; // Wed, 21 Oct 2015 07:28:00 GMT
+        assertEquals(10_000L, ResiliencePolicy.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", date - 10_000));
+        assertEquals(-1L, ResiliencePolicy.parseRetryAfter("soon", date));
+        assertEquals(-1L, ResiliencePolicy.parseRetryAfter(null, date));
+    }
+
+    /**
+     * Fails enough requests, each with all its retries, to open the breaker.
+     */
+    private void tripBreaker() throws IOException {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            for (int attempt = 0; attempt < 3; attempt++) {
+                server.enqueue(new MockResponse().setResponseCode(500));
+            }
+            try (Response response = get("/volumes?q=failing")) {
+                assertEquals(500, response.code());
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private List<Long> sleeps() {
+        return new ArrayList<>(waits.values());
+    }
+
+    private Response get(String path) throws IOException {
+        return client.newCall(new Request.Builder().url(server.url(path)).build()).execute();
+    }
+}
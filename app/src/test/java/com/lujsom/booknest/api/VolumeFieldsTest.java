@@ -0,0 +1,114 @@
+package com.lujsom.booknest.api;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.gson.annotations.SerializedName;
+import com.lujsom.booknest.models.BookItem;
+import com.lujsom.booknest.models.BookResponse;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/**
+ * Checks that the partial-response masks in {@link VolumeFields} request exactly
+ * the properties the API models map, no more and no less.
+ */
+public class VolumeFieldsTest {
+
+    private static final String MODELS_PACKAGE = "com.lujsom.booknest.models";
+
+    @Test
+    public void volumeMask_matchesBookItem() {
+        assertEquals(modelPaths(BookItem.class, ""), maskPaths(VolumeFields.VOLUME));
+    }
+
+    @Test
+    public void volumeListMask_matchesBookResponse() {
+        assertEquals(modelPaths(BookResponse.class, ""), maskPaths(VolumeFields.VOLUME_LIST));
+    }
+
+    /**
+     * Lists the leaf paths (such as "volumeInfo/imageLinks/thumbnail") that a model maps with @SerializedName.
+     */
+    private static Set<String> modelPaths(Class<?> model, String prefix) {
+        Set<String> paths = new TreeSet<>();
+        for (Field field : model.getDeclaredFields()) {
+            SerializedName name = field.getAnnotation(SerializedName.class);
+            if (name == null || Modifier.isStatic(field.getModifiers())) continue;
+
+            String path = prefix + name.value();
+            Class<?> nested = modelType(field.getGenericType());
+            if (nested != null) {
+                paths.addAll(modelPaths(nested, path + "/"));
+            } else {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the model class a field holds, looking inside lists, or null for plain values.
+     */
+    private static Class<?> modelType(Type type) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            return arguments.length == 1 ? modelType(arguments[0]) : null;
+        }
+        if (type instanceof Class && ((Class<?>) type).getName().startsWith(MODELS_PACKAGE)) {
+            return (Class<?>) type;
+        }
+        return null;
+    }
+
+    /**
+     * Expands a Google fields mask such as "a,b(c,d/e)" into its leaf paths.
+     */
+    private static Set<String> maskPaths(String mask) {
+        Set<String> paths = new TreeSet<>();
+        MaskParser parser = new MaskParser(mask);
+        parser.parseList("", paths);
+        assertEquals("Unparsed mask input", mask.length(), parser.pos);
+        return paths;
+    }
+
+    private static class MaskParser {
+        private final String mask;
+        private int pos = 0;
+
+        MaskParser(String mask) {
+            this.mask = mask;
+        }
+
+        void parseList(String prefix, Set<String> paths) {
+            parseTerm(prefix, paths);
+            while (pos < mask.length() && mask.charAt(pos) == ',') {
+                pos++;
+                parseTerm(prefix, paths);
+            }
+        }
+
+        void parseTerm(String prefix, Set<String> paths) {
+            int start = pos;
+            while (pos < mask.length() && ",()/".indexOf(mask.charAt(pos)) < 0) {
+                pos++;
+            }
+            String path = prefix + mask.substring(start, pos);
+            if (pos < mask.length() && mask.charAt(pos) == '/') {
+                pos++;
+                parseTerm(path + "/", paths);
+            } else if (pos < mask.length() && mask.charAt(pos) == '(') {
+                pos++;
+                parseList(path + "/", paths);
+                assertEquals(')', mask.charAt(pos));
+                pos++;
+            } else {
+                paths.add(path);
+            }
+        }
+    }
+}
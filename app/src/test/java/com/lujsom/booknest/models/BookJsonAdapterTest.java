@@ -0,0 +1,116 @@
+package com.lujsom.booknest.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.List;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Checks that the hand-written adapters map responses exactly like Gson's reflective adapter,
+ * and compares the speed of both paths.
+ */
+public class BookJsonAdapterTest {
+
+    private static final String RESPONSE = "{"
+            + "\"kind\":\"books#volumes\",\"totalItems\":1234,\"items\":["
+            + "{\"kind\":\"books#volume\",\"id\":\"abc\",\"etag\":\"x\","
+            + "\"volumeInfo\":{\"title\":\"Dune\",\"authors\":[\"Frank Herbert\",\"Someone Else\"],"
+            + "\"publishedDate\":\"1965\",\"categories\":[\"Fiction\"],\"averageRating\":4.5,"
+            + "\"description\":\"Desert planet.\",\"industryIdentifiers\":[{\"type\":\"ISBN_10\",\"identifier\":\"1\"}],"
+            + "\"imageLinks\":{\"smallThumbnail\":\"http://s\",\"thumbnail\":\"http://t\"},"
+            + "\"previewLink\":\"http://p\"},"
+            + "\"accessInfo\":{\"country\":\"US\",\"pdf\":{\"isAvailable\":true,\"downloadLink\":\"http://d\"}}},"
+            + "{\"id\":\"def\",\"volumeInfo\":{\"title\":null,\"averageRating\":3},\"accessInfo\":{\"pdf\":{\"isAvailable\":false}}},"
+            + "{\"id\":null}"
+            + "]}";
+
+    private final Gson reflective = new Gson();
+    private final Gson generated = new GsonBuilder()
+            .registerTypeAdapter(BookResponse.class, new BookResponse.JsonAdapter())
+            .registerTypeAdapter(BookItem.class, new BookItem.JsonAdapter())
+            .create();
+
+    @Test
+    public void adapters_matchReflectiveMapping() {
+        BookResponse expected = reflective.fromJson(RESPONSE, BookResponse.class);
+        BookResponse actual = generated.fromJson(RESPONSE, BookResponse.class);
+
+        assertEquals(expected.getTotalItems(), actual.getTotalItems());
+        assertEquals(expected.getItems().size(), actual.getItems().size());
+        List<Book> expectedBooks = expected.toBookList();
+        List<Book> actualBooks = actual.toBookList();
+        for (int i = 0; i < expectedBooks.size(); i++) {
+            assertBookEquals(expectedBooks.get(i), actualBooks.get(i));
+        }
+    }
+
+    @Test
+    public void adapters_applyGetterFallbacks() {
+        BookItem item = generated.fromJson("{\"id\":\"only-id\"}", BookItem.class);
+
+        assertEquals("only-id", item.getId());
+        assertEquals("Unknown Title", item.getVolumeInfo().getTitle());
+        assertEquals("Unknown Author", item.getVolumeInfo().getAuthor());
+        assertEquals("N/A", item.getVolumeInfo().getRating());
+        assertEquals("", item.getAccessInfo().getPdf().getDownloadLink());
+        assertNull(generated.fromJson("null", BookItem.class));
+    }
+
+    @Test
+    public void adapters_roundTrip() {
+        BookResponse first = generated.fromJson(RESPONSE, BookResponse.class);
+        BookResponse second = generated.fromJson(generated.toJson(first), BookResponse.class);
+
+        assertEquals(first.getTotalItems(), second.getTotalItems());
+        for (int i = 0; i < first.getItems().size(); i++) {
+            assertBookEquals(new Book(first.getItems().get(i)), new Book(second.getItems().get(i)));
+        }
+    }
+
+    /**
+     * Rough JVM benchmark of both paths. Prints the time per response and does not fail on speed,
+     * since timings on shared build machines are too noisy to assert on. Ignored in the normal
+     * suite; remove the annotation to run it by hand.
+     */
+    @Ignore("benchmark, run manually")
+    @Test
+    public void benchmark_generatedVersusReflective() {
+        int warmup = 2_000;
+        int iterations = 20_000;
+        measure(reflective, warmup);
+        measure(generated, warmup);
+
+        long reflectiveNanos = measure(reflective, iterations);
+        long generatedNanos = measure(generated, iterations);
+        System.out.printf("BookResponse parse: reflective %d ns/op, generated %d ns/op%n",
+                reflectiveNanos / iterations, generatedNanos / iterations);
+    }
+
+    private static long measure(Gson gson, int iterations) {
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += gson.fromJson(RESPONSE, BookResponse.class).getItems().size();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(3 * iterations, sink);
+        return elapsed;
+    }
+
+    private static void assertBookEquals(Book expected, Book actual) {
+        assertEquals(expected.getBookId(), actual.getBookId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getAuthor(), actual.getAuthor());
+        assertEquals(expected.getPublishedYear(), actual.getPublishedYear());
+        assertEquals(expected.getGenre(), actual.getGenre());
+        assertEquals(expected.getRating(), actual.getRating());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getImageUrl(), actual.getImageUrl());
+        assertEquals(expected.getGoogleBooksUrl(), actual.getGoogleBooksUrl());
+        assertEquals(expected.getReadingUrl(), actual.getReadingUrl());
+    }
+}
@@ -0,0 +1,81 @@
+package com.lujsom.booknest.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import com.lujsom.booknest.models.Book;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Checks that {@link BookPageWindow} never shows the same book twice.
+ */
+public class BookPageWindowTest {
+
+    @Test
+    public void append_skipsBooksAlreadyInTheWindow() {
+        BookPageWindow window = new BookPageWindow(3);
+        window.append(0, books("a", "b", "c"));
+        window.append(1, books("c", "d"));
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(window.getBooks()));
+    }
+
+    @Test
+    public void append_keepsTheFirstOfRepeatedBooksWithinAPage() {
+        BookPageWindow window = new BookPageWindow(3);
+        window.append(0, Arrays.asList(book("N/A", "Dune"), book("N/A", "Dune"), book("a", "Emma")));
+
+        assertEquals(2, window.getBooks().size());
+    }
+
+    @Test
+    public void booksOfAnEvictedPage_canBeShownAgain() {
+        BookPageWindow window = new BookPageWindow(1);
+        window.append(0, books("a", "b"));
+        int evicted = window.append(1, books("b", "c"));
+
+        assertEquals(2, evicted);
+        assertEquals(Arrays.asList("b", "c"), ids(window.getBooks()));
+
+        evicted = window.prepend(0, books("a", "b"));
+
+        assertEquals(2, evicted);
+        assertEquals(Arrays.asList("a", "b"), ids(window.getBooks()));
+    }
+
+    @Test
+    public void addToLastPage_skipsBooksAlreadyInTheWindow() {
+        BookPageWindow window = new BookPageWindow(2);
+        window.addToLastPage(books("a", "b"));
+        window.addToLastPage(books("b", "c"));
+
+        assertEquals(Arrays.asList("a", "b", "c"), ids(window.getBooks()));
+
+        window.reset();
+        window.addToLastPage(books("a"));
+
+        assertEquals(Arrays.asList("a"), ids(window.getBooks()));
+    }
+
+    private static List<Book> books(String... ids) {
+        List<Book> books = new ArrayList<>();
+        for (String id : ids) {
+            books.add(book(id, "Title " + id));
+        }
+        return books;
+    }
+
+    private static Book book(String id, String title) {
+        return new Book(id, title, null, null, null, null, null, null, null, null, null);
+    }
+
+    private static List<String> ids(List<Book> books) {
+        List<String> ids = new ArrayList<>();
+        for (Book book : books) {
+            ids.add(book.getBookId());
+        }
+        return ids;
+    }
+}
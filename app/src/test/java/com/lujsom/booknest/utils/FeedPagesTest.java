@@ -0,0 +1,186 @@
+package com.lujsom.booknest.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+/**
+ * Checks how {@link FeedPages} loads the reviews of a book, with reviews named by their position
+ * in the sort order and a fake query source.
+ */
+public class FeedPagesTest {
+
+    private static final int PAGE_SIZE = 3;
+
+    private final FakeSource source = new FakeSource();
+    private final List<List<String>> delivered = new ArrayList<>();
+    private int errors = 0;
+    private final FeedPages<String> feed = new FeedPages<>(source, id -> id, PAGE_SIZE, delivered::add, () -> errors++);
+
+    @Test
+    public void loadMore_pinsTheFirstPageAndReadsAfterIt() {
+        feed.start();
+        source.firstPages.get(0).onPage.accept(docs("r1", "r2", "r3"));
+
+        feed.loadMore();
+
+        assertTrue(source.firstPages.get(0).removed);
+        assertEquals("r3", source.firstPages.get(1).end);
+        assertEquals("r3", source.reads.get(0).cursor);
+    }
+
+    @Test
+    public void newReview_growsThePinnedFirstPage() {
+        feed.start();
+        source.firstPages.get(0).onPage.accept(docs("r1", "r2", "r3"));
+        feed.loadMore();
+        source.reads.get(0).onPage.accept(docs("r4", "r5", "r6"));
+
+        source.firstPages.get(1).onPage.accept(docs("r0", "r1", "r2", "r3"));
+
+        assertEquals(docs("r0", "r1", "r2", "r3", "r4", "r5", "r6"), last());
+    }
+
+    @Test
+    public void reviewInBothParts_isShownOnce() {
+        feed.start();
+        source.firstPages.get(0).onPage.accept(docs("r1", "r2", "r3"));
+        feed.loadMore();
+
+        // The older page was read from the old end of the first page, which a later answer repeats
+        source.reads.get(0).onPage.accept(docs("r3", "r4"));
+        source.firstPages.get(1).onPage.accept(docs("r0", "r1", "r2", "r3"));
+
+        assertEquals(docs("r0", "r1", "r2", "r3", "r4"), last());
+    }
+
+    @Test
+    public void shortPages_endTheFeed() {
+        feed.start();
+        source.firstPages.get(0).onPage.accept(docs("r1", "r2"));
+
+        feed.loadMore();
+
+        assertEquals(1, source.firstPages.size());
+        assertTrue(source.reads.isEmpty());
+
+        FeedPages<String> longer = new FeedPages<>(source, id -> id, PAGE_SIZE, delivered::add, () -> errors++);
+        longer.start();
+        source.firstPages.get(1).onPage.accept(docs("r1", "r2", "r3"));
+        longer.loadMore();
+        source.reads.get(0).onPage.accept(docs("r4"));
+
+        longer.loadMore();
+
+        assertEquals(1, source.reads.size());
+    }
+
+    @Test
+    public void loadMore_readsOnePageAtATime() {
+        feed.start();
+        source.firstPages.get(0).onPage.accept(docs("r1", "r2", "r3"));
+
+        feed.loadMore();
+        feed.loadMore();
+
+        assertEquals(1, source.reads.size());
+        source.reads.get(0).onPage.accept(docs("r4", "r5", "r6"));
+
+        feed.loadMore();
+
+        assertEquals("r6", source.reads.get(1).cursor);
+    }
+
+    @Test
+    public void failedRead_canBeRetried() {
+        feed.start();
+        source.firstPages.get(0).onPage.accept(docs("r1", "r2", "r3"));
+        feed.loadMore();
+
+        source.reads.get(0).onError.run();
+        feed.loadMore();
+
+        assertEquals(1, errors);
+        assertEquals(2, source.reads.size());
+    }
+
+    @Test
+    public void forget_dropsADeletedReviewOfAnOlderPage() {
+        feed.start();
+        source.firstPages.get(0).onPage.accept(docs("r1", "r2", "r3"));
+        feed.loadMore();
+        source.reads.get(0).onPage.accept(docs("r4", "r5"));
+
+        feed.forget("r4");
+        source.firstPages.get(1).onPage.accept(docs("r1", "r2", "r3"));
+
+        assertEquals(docs("r1", "r2", "r3", "r5"), last());
+    }
+
+    @Test
+    public void stop_ignoresLateAnswers() {
+        feed.start();
+        source.firstPages.get(0).onPage.accept(docs("r1", "r2", "r3"));
+        feed.loadMore();
+        int deliveries = delivered.size();
+
+        feed.stop();
+        source.reads.get(0).onPage.accept(docs("r4"));
+
+        assertTrue(source.firstPages.get(1).removed);
+        assertEquals(deliveries, delivered.size());
+    }
+
+    private List<String> last() {
+        return delivered.get(delivered.size() - 1);
+    }
+
+    private static List<String> docs(String... ids) {
+        return Arrays.asList(ids);
+    }
+
+    private static class FirstPage {
+        final String end;
+        final Consumer<List<String>> onPage;
+        boolean removed = false;
+
+        FirstPage(String end, Consumer<List<String>> onPage) {
+            this.end = end;
+            this.onPage = onPage;
+        }
+    }
+
+    private static class Read {
+        final String cursor;
+        final Consumer<List<String>> onPage;
+        final Runnable onError;
+
+        Read(String cursor, Consumer<List<String>> onPage, Runnable onError) {
+            this.cursor = cursor;
+            this.onPage = onPage;
+            this.onError = onError;
+        }
+    }
+
+    private static class FakeSource implements FeedPages.Source<String> {
+        final List<FirstPage> firstPages = new ArrayList<>();
+        final List<Read> reads = new ArrayList<>();
+
+        @Override
+        public Runnable listenFirstPage(String end, int limit, Consumer<List<String>> onPage, Runnable onError) {
+            FirstPage page = new FirstPage(end, onPage);
+            firstPages.add(page);
+            return () -> page.removed = true;
+        }
+
+        @Override
+        public void readAfter(String cursor, int limit, Consumer<List<String>> onPage, Runnable onError) {
+            reads.add(new Read(cursor, onPage, onError));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.lujsom.booknest.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Checks the lookups of {@link IdHashSet}.
+ */
+public class IdHashSetTest {
+
+    @Test
+    public void contains_findsEveryIdAndNothingElse() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add("vol" + i + "AAAAJ");
+        }
+        IdHashSet set = IdHashSet.of(ids);
+
+        for (String id : ids) {
+            assertTrue(id, set.contains(id));
+        }
+        assertFalse(set.contains("vol500AAAAJ"));
+        assertFalse(set.contains(""));
+        assertFalse(set.contains(null));
+    }
+
+    @Test
+    public void of_dropsDuplicates() {
+        IdHashSet set = IdHashSet.of(Arrays.asList("zyTCAlFPjgYC", "zyTCAlFPjgYC", "wrOQLV6xB-wC"));
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains("wrOQLV6xB-wC"));
+    }
+
+    @Test
+    public void empty_containsNothing() {
+        assertFalse(IdHashSet.of(Collections.emptyList()).contains("zyTCAlFPjgYC"));
+        assertEquals(0, IdHashSet.EMPTY.size());
+    }
+}
@@ -0,0 +1,213 @@
+package com.lujsom.booknest.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.lujsom.booknest.utils.ListWriteQueue.UserList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks how {@link ListWriteQueue} collapses toggles into their net effect and rolls back failed
+ * commits, with a fake committer and a main thread that runs the delayed flush on demand.
+ */
+public class ListWriteQueueTest {
+
+    private final FakeMainThread mainThread = new FakeMainThread();
+    private final FakeCommitter committer = new FakeCommitter();
+    private final RecordingListener listener = new RecordingListener();
+    private final ListWriteQueue queue = new ListWriteQueue("user", committer, mainThread);
+
+    @Before
+    public void setUp() {
+        queue.addListener(listener);
+    }
+
+    @Test
+    public void toggledBack_writesNothing() {
+        add("b1");
+        remove("b1");
+
+        queue.flush();
+
+        assertTrue(committer.batches.isEmpty());
+        assertNull(queue.getUnsavedState(UserList.FAVORITES, "b1"));
+    }
+
+    @Test
+    public void repeatedToggles_commitTheirNetEffect() {
+        add("b1");
+        remove("b1");
+        add("b1");
+
+        queue.flush();
+
+        assertEquals(1, committer.batches.size());
+        List<ListWriteQueue.Change> changes = committer.batches.get(0).changes;
+        assertEquals(1, changes.size());
+        assertEquals("b1", changes.get(0).bookId);
+        assertTrue(changes.get(0).wanted);
+    }
+
+    @Test
+    public void changes_areCommittedTogetherAfterTheDelay() {
+        add("b1");
+        add("b2");
+
+        assertEquals(1, mainThread.scheduled.size());
+        assertEquals(ListWriteQueue.FLUSH_DELAY_MS, mainThread.delayMs);
+        mainThread.runScheduled();
+
+        assertEquals(1, committer.batches.size());
+        assertEquals(2, committer.batches.get(0).changes.size());
+        assertEquals(Boolean.TRUE, queue.getUnsavedState(UserList.FAVORITES, "b2")); // Until the commit answers
+    }
+
+    @Test
+    public void savedChange_isReported() {
+        add("b1");
+        queue.flush();
+
+        committer.batches.get(0).onSuccess.run();
+
+        assertEquals(1, listener.saved.size());
+        assertNull(queue.getUnsavedState(UserList.FAVORITES, "b1"));
+        assertTrue(listener.rolledBack.isEmpty());
+    }
+
+    @Test
+    public void failedCommit_rollsBackToTheSavedState() {
+        add("b1");
+        queue.flush();
+
+        committer.batches.get(0).onFailure.run();
+
+        assertEquals(1, listener.rolledBack.size());
+        assertFalse(listener.rolledBack.get(0));
+        assertNull(queue.getUnsavedState(UserList.FAVORITES, "b1"));
+    }
+
+    @Test
+    public void failedCommit_ofABookToggledBackSince_leavesNothingToWrite() {
+        add("b1");
+        queue.flush();
+        remove("b1"); // Waits in the queue, starting from the state the failed commit assumed
+
+        committer.batches.get(0).onFailure.run();
+        queue.flush();
+
+        assertTrue(listener.rolledBack.isEmpty());
+        assertEquals(1, committer.batches.size());
+        assertNull(queue.getUnsavedState(UserList.FAVORITES, "b1"));
+    }
+
+    @Test
+    public void failedCommit_withANewerCommitInFlight_isNotRolledBack() {
+        add("b1");
+        queue.flush();
+        remove("b1");
+        queue.flush();
+
+        committer.batches.get(0).onFailure.run();
+
+        assertTrue(listener.rolledBack.isEmpty());
+        assertEquals(Boolean.FALSE, queue.getUnsavedState(UserList.FAVORITES, "b1"));
+    }
+
+    @Test
+    public void flushCallback_waitsForEveryCommitInFlight() {
+        add("b1");
+        queue.flush();
+        add("b2");
+        int[] done = {0};
+
+        queue.flush(() -> done[0]++);
+        committer.batches.get(1).onSuccess.run();
+        assertEquals(0, done[0]);
+
+        committer.batches.get(0).onFailure.run();
+        assertEquals(1, done[0]);
+    }
+
+    @Test
+    public void flushCallback_runsRightAwayWithNothingToCommit() {
+        int[] done = {0};
+
+        queue.flush(() -> done[0]++);
+
+        assertEquals(1, done[0]);
+        assertTrue(committer.batches.isEmpty());
+    }
+
+    private void add(String bookId) {
+        assertTrue(queue.set(UserList.FAVORITES, bookId, true, "Title", null, null));
+    }
+
+    private void remove(String bookId) {
+        assertTrue(queue.set(UserList.FAVORITES, bookId, false, null, null, null));
+    }
+
+    private static class Batch {
+        final List<ListWriteQueue.Change> changes;
+        final Runnable onSuccess;
+        final Runnable onFailure;
+
+        Batch(List<ListWriteQueue.Change> changes, Runnable onSuccess, Runnable onFailure) {
+            this.changes = new ArrayList<>(changes);
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+    }
+
+    private static class FakeCommitter implements ListWriteQueue.Committer {
+        final List<Batch> batches = new ArrayList<>();
+
+        @Override
+        public void commit(List<ListWriteQueue.Change> changes, Runnable onSuccess, Runnable onFailure) {
+            batches.add(new Batch(changes, onSuccess, onFailure));
+        }
+    }
+
+    private static class FakeMainThread implements ListWriteQueue.MainThread {
+        final List<Runnable> scheduled = new ArrayList<>();
+        long delayMs;
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            scheduled.add(task);
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            scheduled.remove(task);
+        }
+
+        void runScheduled() {
+            List<Runnable> tasks = new ArrayList<>(scheduled);
+            scheduled.clear();
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements ListWriteQueue.Listener {
+        final List<Boolean> rolledBack = new ArrayList<>();
+        final List<Boolean> saved = new ArrayList<>();
+
+        @Override
+        public void onRolledBack(UserList list, String bookId, boolean saved) {
+            rolledBack.add(saved);
+        }
+
+        @Override
+        public void onSaved(UserList list, String bookId, boolean saved) {
+            this.saved.add(saved);
+        }
+    }
+}
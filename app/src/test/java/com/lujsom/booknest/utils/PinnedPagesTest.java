@@ -0,0 +1,206 @@
+package com.lujsom.booknest.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+/**
+ * Checks how {@link PinnedPages} pins the pages of a saved list, with documents named by their
+ * position in the list and a fake query source.
+ */
+public class PinnedPagesTest {
+
+    private static final int PAGE_SIZE = 3;
+
+    private final FakeSource source = new FakeSource();
+    private final RecordingWatcher watcher = new RecordingWatcher();
+    private final PinnedPages<String> pages = new PinnedPages<>(source, PAGE_SIZE, watcher);
+
+    @Test
+    public void loadMore_pinsTheFullPageAndContinuesAfterIt() {
+        pages.start();
+        source.ranges.get(0).answer(docs("b01", "b02", "b03"), false);
+
+        pages.loadMore();
+
+        assertTrue(source.ranges.get(0).removed);
+        Range pinned = source.ranges.get(1);
+        assertNull(pinned.after);
+        assertEquals("b03", pinned.end);
+        Range next = source.ranges.get(2);
+        assertEquals("b03", next.after);
+        assertNull(next.end); // Open-ended with a limit
+        assertFalse(pinned.removed || next.removed);
+    }
+
+    @Test
+    public void pinnedPage_growsWithoutPushingBooksToTheNextPage() {
+        pages.start();
+        source.ranges.get(0).answer(docs("b01", "b02", "b03"), false);
+        pages.loadMore();
+        Range pinned = source.ranges.get(1);
+        Range next = source.ranges.get(2);
+        pinned.answer(docs("b01", "b02", "b03"), false);
+        next.answer(docs("b04", "b05"), false);
+
+        pinned.answer(docs("b01", "b015", "b02", "b03"), false); // Added inside the pinned range
+
+        assertEquals(docs("b01", "b015", "b02", "b03", "b04", "b05"), watcher.last);
+    }
+
+    @Test
+    public void loadMore_afterThePinnedPageWasRepinned_continuesAfterTheLastPage() {
+        pages.start();
+        source.ranges.get(0).answer(docs("b01", "b02", "b03"), false);
+        pages.loadMore();
+        source.ranges.get(2).answer(docs("b04", "b05", "b06"), false);
+
+        pages.loadMore();
+
+        assertTrue(source.ranges.get(2).removed);
+        assertEquals("b03", source.ranges.get(3).after);
+        assertEquals("b06", source.ranges.get(3).end);
+        assertEquals("b06", source.ranges.get(4).after);
+        assertFalse(source.ranges.get(1).removed); // The first page stays pinned as it was
+    }
+
+    @Test
+    public void shortLastPage_endsTheList() {
+        pages.start();
+        assertTrue(pages.hasMore()); // Still loading
+
+        source.ranges.get(0).answer(docs("b01", "b02"), false);
+        pages.loadMore();
+
+        assertFalse(pages.hasMore());
+        assertEquals(1, source.ranges.size());
+    }
+
+    @Test
+    public void loadMore_waitsForTheLastPage() {
+        pages.start();
+
+        pages.loadMore();
+
+        assertEquals(1, source.ranges.size());
+    }
+
+    @Test
+    public void emptyCachedSnapshot_waitsForTheServer() {
+        pages.start();
+
+        source.ranges.get(0).answer(Collections.emptyList(), true);
+        assertEquals(0, watcher.deliveries);
+
+        source.ranges.get(0).answer(docs("b01"), false);
+        assertEquals(docs("b01"), watcher.last);
+    }
+
+    @Test
+    public void cachedFirstPage_isShownUntilTheListenerAnswers() {
+        source.cached = docs("b01", "b02");
+
+        pages.start();
+
+        assertEquals(docs("b01", "b02"), watcher.last);
+        assertEquals(Collections.singletonList(true), watcher.freshness);
+    }
+
+    @Test
+    public void freshness_isReportedWhenEveryPageCameFromTheServer() {
+        pages.start();
+        source.ranges.get(0).answer(docs("b01", "b02", "b03"), true);
+        pages.loadMore();
+        source.ranges.get(1).answer(docs("b01", "b02", "b03"), false);
+        source.ranges.get(2).answer(docs("b04"), true);
+        source.ranges.get(2).answer(docs("b04"), false);
+
+        assertEquals(Arrays.asList(true, false), watcher.freshness);
+    }
+
+    @Test
+    public void remove_stopsEveryListener() {
+        pages.start();
+        source.ranges.get(0).answer(docs("b01", "b02", "b03"), false);
+        pages.loadMore();
+        int deliveries = watcher.deliveries;
+
+        pages.remove();
+        source.ranges.get(2).answer(docs("b04"), false);
+
+        assertTrue(source.ranges.get(1).removed && source.ranges.get(2).removed);
+        assertEquals(deliveries, watcher.deliveries);
+    }
+
+    private static List<String> docs(String... ids) {
+        return Arrays.asList(ids);
+    }
+
+    /**
+     * One range that was listened to.
+     */
+    private static class Range {
+        final String after;
+        final String end;
+        final PinnedPages.Listener<String> listener;
+        boolean removed = false;
+
+        Range(String after, String end, PinnedPages.Listener<String> listener) {
+            this.after = after;
+            this.end = end;
+            this.listener = listener;
+        }
+
+        void answer(List<String> documents, boolean fromCache) {
+            listener.onSnapshot(documents, fromCache, true);
+        }
+    }
+
+    private static class FakeSource implements PinnedPages.Source<String> {
+        final List<Range> ranges = new ArrayList<>();
+        List<String> cached = Collections.emptyList();
+
+        @Override
+        public void readCachedFirstPage(int limit, Consumer<List<String>> onCached) {
+            if (!cached.isEmpty()) {
+                onCached.accept(cached);
+            }
+        }
+
+        @Override
+        public Runnable listen(String after, String end, int limit, PinnedPages.Listener<String> listener) {
+            Range range = new Range(after, end, listener);
+            ranges.add(range);
+            return () -> range.removed = true;
+        }
+    }
+
+    private static class RecordingWatcher implements PinnedPages.Watcher<String> {
+        List<String> last;
+        int deliveries = 0;
+        final List<Boolean> freshness = new ArrayList<>();
+
+        @Override
+        public void onDocuments(List<String> documents) {
+            last = documents;
+            deliveries++;
+        }
+
+        @Override
+        public void onFreshness(boolean fromCache) {
+            freshness.add(fromCache);
+        }
+
+        @Override
+        public void onError() {
+        }
+    }
+}